@@ -2,45 +2,217 @@ package bf;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collector;
 
-public class BigFileReader implements Runnable {
-    private static int now;
-    private static File file = new File("F:\\githubpro\\java-jdk-study-demo\\concurret-ex\\src\\bf\\bigFile.txt");
-    static RandomAccessFile raf = null;
-    final int len = 256;
+/**
+ * 并行读大文件：
+ * 1. 按 chunkSize 把文件切成若干段，每段的结尾对齐到换行符，记录不会被切断
+ * 2. 每段用 FileChannel.map 映射到内存，不再 seek + read，也不再共享一个 RandomAccessFile
+ * 3. 每段交给线程池里的一个线程处理，结果通过回调（LineHandler）或 Collector 返回
+ * <p>
+ * 回调拿到的 ByteBuffer 是映射区的一个视图，没有拷贝；只在回调里有效，不要保存
+ */
+public class BigFileReader {
 
-    public BigFileReader() throws IOException {
-        raf = new RandomAccessFile(file, "rw");
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private static final byte LF = '\n';
+
+    private static final byte CR = '\r';
+
+    private final File file;
+
+    private final int chunkSize;
+
+    private final int threads;
+
+    /**
+     * 每行的回调，多个线程同时调用，实现要线程安全
+     */
+    public interface LineHandler {
+        void handle(ByteBuffer line);
     }
 
-    @Override
-    public void run() {
+    public BigFileReader(File file) {
+        this(file, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
 
-        while (true) {
+    /**
+     * @param file      文件
+     * @param chunkSize 每段的大小（字节），实际段长会延长到下一个换行符
+     * @param threads   工作线程数
+     */
+    public BigFileReader(File file, int chunkSize, int threads) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /**
+     * 逐行回调，行不含换行符
+     */
+    public void read(LineHandler handler) throws IOException {
+        read(Collector.<ByteBuffer, LineHandler>of(() -> handler, LineHandler::handle, (a, b) -> a));
+    }
+
+    /**
+     * 每段用 collector 的 supplier 建一个容器，段内逐行 accumulate，
+     * 最后按段的顺序 combine，再 finish
+     */
+    public <A, R> R read(Collector<ByteBuffer, A, R> collector) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<long[]> segments = split(channel);
+            if (segments.isEmpty()) {
+                return collector.finisher().apply(collector.supplier().get());
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, segments.size()), new NamedThreadFactory());
             try {
-                synchronized (raf) {
-                    byte[] b = new byte[len];
-                    raf.seek(now);
-                    int tmp = raf.read(b);
-                    if (tmp == -1) {
-                        return;
-                    }
-                    now += tmp;
-                    System.out.println(new String(b));
-                    System.out.println("--end-");
+                List<Future<A>> futures = new ArrayList<>(segments.size());
+                for (long[] segment : segments) {
+                    futures.add(pool.submit(() -> readSegment(channel, segment[0], segment[1], collector)));
+                }
+                A result = null;
+                for (Future<A> future : futures) {
+                    A part = future.get();
+                    result = (result == null ? part : collector.combiner().apply(result, part));
+                }
+                return collector.finisher().apply(result);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while reading " + file, e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                throw new IOException("failed to read " + file, cause);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * 切段：从 pos + chunkSize 往后找第一个换行符，段包含这个换行符
+     *
+     * @return 每段的 {start, length}
+     */
+    List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> segments = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(8 * 1024);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + chunkSize, size);
+            //找换行符
+            while (end < size) {
+                probe.clear();
+                int n = channel.read(probe, end);
+                if (n <= 0) {
+                    end = size;
+                    break;
+                }
+                int i = 0;
+                while (i < n && probe.get(i) != LF) {
+                    i++;
                 }
-            } catch (Exception e) {
+                if (i < n) {
+                    end += i + 1;
+                    break;
+                }
+                end += n;
+            }
+            end = Math.min(end, size);
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("line longer than 2GB near offset " + start);
+            }
+            segments.add(new long[]{start, end - start});
+            start = end;
+        }
+        return segments;
+    }
 
+    private static <A> A readSegment(FileChannel channel, long start, long length,
+                                     Collector<ByteBuffer, A, ?> collector) {
+        MappedByteBuffer segment;
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        A container = collector.supplier().get();
+        BiConsumer<A, ByteBuffer> accumulator = collector.accumulator();
+        //一个视图复用到底，每行只改 position/limit
+        ByteBuffer line = segment.duplicate();
+        int limit = segment.limit();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            if (segment.get(i) == LF) {
+                int lineEnd = (i > lineStart && segment.get(i - 1) == CR ? i - 1 : i);
+                line.limit(lineEnd).position(lineStart);
+                accumulator.accept(container, line);
+                line.limit(limit);
+                lineStart = i + 1;
             }
         }
+        //最后一段可能没有结尾的换行符
+        if (lineStart < limit) {
+            line.limit(limit).position(lineStart);
+            accumulator.accept(container, line);
+        }
+        return container;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+        private final int poolSeq = POOL_SEQ.incrementAndGet();
+        private final AtomicInteger threadSeq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "big-file-reader-" + poolSeq + "-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
     }
 
     public static void main(String[] args) throws Exception {
-        BigFileReader fileReader = new BigFileReader();
+        File file = new File(args.length > 0 ? args[0] : "concurret-ex/src/bf/bigFile.txt");
+        BigFileReader fileReader = new BigFileReader(file, 1024, 3);
+
+        // 回调：打印每一行
+        fileReader.read(line -> {
+            byte[] b = new byte[line.remaining()];
+            line.get(b);
+            System.out.println(Thread.currentThread().getName() + ": " + new String(b));
+        });
 
-        new Thread(fileReader).start();
-        new Thread(fileReader).start();
-        new Thread(fileReader).start();
+        // Collector：统计行数
+        long lines = fileReader.read(Collector.of(() -> new long[1], (c, line) -> c[0]++,
+                (a, b) -> {
+                    a[0] += b[0];
+                    return a;
+                }, c -> c[0]));
+        System.out.println("lines:" + lines);
     }
 }
@@ -0,0 +1,117 @@
+package bf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collector;
+
+/**
+ * BigFileReader 的基准：
+ * args: [文件路径] [文件大小 MB，文件不存在时生成，默认 4096]
+ * 对比：
+ * 1. 旧版：一个 RandomAccessFile，synchronized(raf) 每次读 256 字节
+ * 2. 新版：按行切段 + FileChannel.map，1/2/4/.../N 个线程，不同 chunkSize
+ */
+public class BigFileReaderBenchmark {
+
+    private static final int OLD_LEN = 256;
+
+    public static void main(String[] args) throws Exception {
+        File file = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir") + "/big-file-bench.txt");
+        long sizeMb = args.length > 1 ? Long.parseLong(args[1]) : 4096;
+        if (!file.exists()) {
+            generate(file, sizeMb * 1024 * 1024);
+        }
+        System.out.printf("file:%s size:%dMB%n", file, file.length() / 1024 / 1024);
+
+        // 先跑一遍，让文件进 page cache
+        countLines(file, BigFileReader.DEFAULT_CHUNK_SIZE, 1);
+
+        long st = System.currentTimeMillis();
+        long bytes = oldStyle(file, 4);
+        report("old synchronized raf, 4 threads", file, bytes, System.currentTimeMillis() - st);
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (int chunkMb : new int[]{8, 64, 256}) {
+            for (int threads = 1; threads <= cpus; threads *= 2) {
+                st = System.currentTimeMillis();
+                long lines = countLines(file, chunkMb * 1024 * 1024, threads);
+                report(String.format("mapped chunk=%dMB threads=%d lines=%d", chunkMb, threads, lines),
+                        file, file.length(), System.currentTimeMillis() - st);
+            }
+        }
+    }
+
+    private static long countLines(File file, int chunkSize, int threads) throws IOException {
+        return new BigFileReader(file, chunkSize, threads).read(Collector.of(() -> new long[1], (c, line) -> {
+            c[0]++;
+            // 读一遍字节，不让 JIT 把循环优化掉
+            int sum = 0;
+            for (int i = line.position(); i < line.limit(); i++) {
+                sum += line.get(i);
+            }
+            if (sum == Integer.MIN_VALUE) {
+                System.out.println();
+            }
+        }, (a, b) -> {
+            a[0] += b[0];
+            return a;
+        }, c -> c[0]));
+    }
+
+    /**
+     * 旧版的读法，去掉打印：共享一个 raf，锁里 seek + read 256 字节，每次 new byte[] 和 String
+     */
+    private static long oldStyle(File file, int threads) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        long[] now = new long[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                while (true) {
+                    try {
+                        synchronized (raf) {
+                            byte[] b = new byte[OLD_LEN];
+                            raf.seek(now[0]);
+                            int tmp = raf.read(b);
+                            if (tmp == -1) {
+                                return;
+                            }
+                            now[0] += tmp;
+                            if (new String(b).isEmpty()) {
+                                System.out.println();
+                            }
+                        }
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        raf.close();
+        return now[0];
+    }
+
+    private static void generate(File file, long size) throws IOException {
+        System.out.println("generating " + file + " ...");
+        byte[] line = "2020-07-05 12:00:00,000 INFO  order-service - order 1234567890 paid, amount=99.99\n"
+                .getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024)) {
+            for (long written = 0; written < size; written += line.length) {
+                out.write(line);
+            }
+        }
+    }
+
+    private static void report(String name, File file, long bytes, long millis) {
+        System.out.printf("%-60s %6dms %8.1fMB/s%n", name, millis, bytes / 1024.0 / 1024.0 / Math.max(millis, 1) * 1000);
+    }
+}
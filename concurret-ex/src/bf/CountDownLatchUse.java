@@ -1,7 +1,37 @@
 package bf;
 
+import java.util.concurrent.TimeUnit;
+
 /**
- *
+ * 用 StartupOrchestrator 编排服务启动：
+ * config 先加载；db、cache、key 都只依赖 config，并行初始化；web 等它们都好了才启动
+ * 串行要 200+300+250+100+150 ms，并行后只要关键路径 config -> db -> web 的时间
+ * 第二次演示：cache 超时，依赖它的 web 被跳过，和它无关的 db、key 照常完成
  */
 public class CountDownLatchUse {
+
+    public static void main(String[] args) throws InterruptedException {
+        StartupOrchestrator.Report ok = startup(100).run(4);
+        System.out.println(ok);
+        System.out.println("success=" + ok.isSuccess());
+        System.out.println();
+
+        StartupOrchestrator.Report failed = startup(1000).run(4);
+        System.out.println(failed);
+        System.out.println("success=" + failed.isSuccess() + " failures=" + failed.getFailures().size());
+    }
+
+    private static StartupOrchestrator startup(long cacheMillis) {
+        return StartupOrchestrator.builder()
+                .task("config", () -> sleep(200))
+                .task("db", 2, TimeUnit.SECONDS, () -> sleep(300), "config")
+                .task("cache", 500, TimeUnit.MILLISECONDS, () -> sleep(cacheMillis), "config")
+                .task("key", () -> sleep(250), "config")
+                .task("web", () -> sleep(150), "db", "cache")
+                .build();
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(millis);
+    }
 }
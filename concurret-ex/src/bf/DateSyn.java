@@ -1,10 +1,12 @@
 package bf;
 
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import bf.login.LastSeenStore;
 
+/**
+ * 最后登录时间
+ * 原来是 Collections.synchronizedMap(new HashMap<String, Date>())：所有登录抢同一把锁，还存着可变的 Date
+ * 现在用 LastSeenStore：ConcurrentHashMap + long 毫秒数，带批量过期和近似活跃用户数
+ */
 public class DateSyn {
-    private static Map<String, Date> lastLogin = Collections.synchronizedMap(new HashMap<>());
+    private static LastSeenStore lastLogin = new LastSeenStore(1 << 16, 60);
 }
@@ -1,30 +1,126 @@
 package bf;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 订单的处理权用租约（Lease）表示，状态只有一个字段 lease，全部用 CAS 迁移：
+ * FREE --claim--> 某个 Lease --complete--> DONE
+ * 某个 Lease --release/过期回收--> FREE
+ * 每次 claim 都是一个新的 Lease 对象，按引用比较，不会有 ABA
+ */
 public class Order {
-    private boolean lock = true;
-    private String token = "";
 
-    public boolean getLock(String token) {
-        if (lock) {
-            synchronized (this) {
-                if (lock) {
-                    this.lock = false;
-                    this.token = token;
-                    return true;
-                } else {
-                    System.out.println("被别人抢走了");
-                }
-            }
+    private static final AtomicLong LEASE_SEQ = new AtomicLong();
+
+    private static final Lease FREE = new Lease(0, "", Long.MAX_VALUE);
+    private static final Lease DONE = new Lease(-1, "", Long.MAX_VALUE);
+
+    private static final AtomicReferenceFieldUpdater<Order, Lease> LEASE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Order.class, Lease.class, "lease");
+
+    private final long id;
+
+    private volatile Lease lease = FREE;
+
+    public Order() {
+        this(0);
+    }
+
+    public Order(long id) {
+        this.id = id;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * 租约：谁、到什么时候之前拥有这个订单
+     */
+    public static final class Lease {
+        private final long id;
+        private final String owner;
+        private final long expiresAt;
+
+        Lease(long id, String owner, long expiresAt) {
+            this.id = id;
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public boolean isExpired(long nowMillis) {
+            return nowMillis >= expiresAt;
         }
-        return lock;
     }
 
-    public void unlock(String newToken) {
+    /**
+     * 抢订单
+     *
+     * @param owner       持有者
+     * @param leaseMillis 租约时长，过期后订单可以被回收
+     * @return 抢到返回租约，否则 null
+     */
+    public Lease claim(String owner, long leaseMillis) {
+        long expiresAt = leaseMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + leaseMillis;
+        Lease newLease = new Lease(LEASE_SEQ.incrementAndGet(), owner, expiresAt);
+        return LEASE_UPDATER.compareAndSet(this, FREE, newLease) ? newLease : null;
+    }
+
+    /**
+     * 处理成功：只有当前租约的持有者能完成，租约已被回收则返回 false
+     */
+    public boolean complete(Lease held) {
+        return LEASE_UPDATER.compareAndSet(this, held, DONE);
+    }
+
+    /**
+     * 处理失败：还回去，别人可以再抢
+     */
+    public boolean release(Lease held) {
+        return LEASE_UPDATER.compareAndSet(this, held, FREE);
+    }
+
+    /**
+     * 回收过期的租约（持有者挂了或者太慢）
+     */
+    public boolean reclaimIfExpired(long nowMillis) {
+        Lease current = lease;
+        return current != FREE && current != DONE && current.isExpired(nowMillis)
+                && LEASE_UPDATER.compareAndSet(this, current, FREE);
+    }
+
+    public boolean isFree() {
+        return lease == FREE;
+    }
 
-        if (!token.equals(newToken) || lock) {
+    public boolean isDone() {
+        return lease == DONE;
+    }
+
+    public Lease currentLease() {
+        Lease current = lease;
+        return current == FREE || current == DONE ? null : current;
+    }
+
+    // ---- 旧接口：token 作为持有者，不过期
+
+    public boolean getLock(String token) {
+        return claim(token, Long.MAX_VALUE) != null;
+    }
+
+    public void unlock(String newToken) {
+        Lease current = currentLease();
+        if (current == null || !current.getOwner().equals(newToken) || !release(current)) {
             System.out.println("error");
-        } else {
-            lock = true;
         }
     }
 }
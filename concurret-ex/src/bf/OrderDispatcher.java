@@ -0,0 +1,178 @@
+package bf;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 订单分发：
+ * 1. 待处理订单放在一个无锁队列里，worker 从队头取，不再每次从头扫描整个列表
+ * 2. 取到后用 Order.claim 做 CAS 抢租约，抢到才处理
+ * 3. 处理成功 complete，失败 release 并重新入队
+ * 4. 后台线程定期回收过期租约（worker 挂了/卡住），订单重新入队
+ */
+public class OrderDispatcher {
+
+    private final ConcurrentLinkedQueue<Order> ready = new ConcurrentLinkedQueue<>();
+
+    // 正在处理的订单和它的租约，回收线程只扫描这里
+    private final Map<Order, Order.Lease> inFlight = new ConcurrentHashMap<>();
+
+    private final Consumer<Order> handler;
+
+    private final long leaseMillis;
+
+    private final Thread[] workers;
+
+    private final ScheduledExecutorService reaper;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private final AtomicLong lostLeases = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param workerCount worker 线程数
+     * @param leaseMillis 租约时长，要比单个订单的最长处理时间长
+     * @param handler     订单处理逻辑，抛异常表示处理失败
+     */
+    public OrderDispatcher(int workerCount, long leaseMillis, Consumer<Order> handler) {
+        this.handler = handler;
+        this.leaseMillis = leaseMillis;
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::work, "order-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-lease-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, leaseMillis / 2);
+        reaper.scheduleWithFixedDelay(this::reclaimExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void submit(Order order) {
+        pending.incrementAndGet();
+        ready.offer(order);
+    }
+
+    private void work() {
+        String owner = Thread.currentThread().getName();
+        int idle = 0;
+        while (running) {
+            Order order = ready.poll();
+            if (order == null) {
+                // 没活干：先自旋几次，再逐步 park
+                if (++idle > 64) {
+                    LockSupport.parkNanos(Math.min(idle, 1000) * 1000L);
+                } else {
+                    Thread.onSpinWait();
+                }
+                continue;
+            }
+            idle = 0;
+            Order.Lease lease = order.claim(owner, leaseMillis);
+            if (lease == null) {
+                // 已完成或者被别人持有（回收后重复入队）
+                continue;
+            }
+            inFlight.put(order, lease);
+            try {
+                handler.accept(order);
+                if (order.complete(lease)) {
+                    processed.incrementAndGet();
+                    pending.decrementAndGet();
+                } else {
+                    // 处理太久，租约已被回收，订单会被别人重新处理
+                    lostLeases.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                releaseAndRequeue(order, lease);
+            } catch (Error e) {
+                // Error 会让 worker 退出，退出前先把租约还回去，否则订单永远卡在处理中
+                failed.incrementAndGet();
+                releaseAndRequeue(order, lease);
+                throw e;
+            } finally {
+                // 只删自己的租约，订单可能已被回收并被别人重新抢到
+                inFlight.remove(order, lease);
+            }
+        }
+    }
+
+    private void releaseAndRequeue(Order order, Order.Lease lease) {
+        if (order.release(lease)) {
+            ready.offer(order);
+        }
+    }
+
+    private void reclaimExpired() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Order, Order.Lease> entry : inFlight.entrySet()) {
+            Order order = entry.getKey();
+            if (order.reclaimIfExpired(now)) {
+                inFlight.remove(order, entry.getValue());
+                reclaimed.incrementAndGet();
+                ready.offer(order);
+            }
+        }
+    }
+
+    /**
+     * 等所有提交的订单处理完
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pending.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(100_000L);
+        }
+        return true;
+    }
+
+    public void shutdown() {
+        running = false;
+        reaper.shutdownNow();
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getReclaimed() {
+        return reclaimed.get();
+    }
+
+    public long getLostLeases() {
+        return lostLeases.get();
+    }
+
+    public long getPending() {
+        return pending.get();
+    }
+}
@@ -0,0 +1,429 @@
+package bf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 启动任务编排（把 CountDownArticle 里手写的 CountDownLatch(3)、Main 里挨个 join 推广开）：
+ * 1. 每个初始化任务声明依赖，依赖全部成功后马上在线程池里执行，互不依赖的任务并行
+ * 2. 每个任务可以有超时，超时就中断它并当作失败
+ * 3. 失败往下传：依赖了失败任务的任务不再执行（SKIPPED），和它无关的任务照常执行
+ * 4. 记录每个任务的开始、结束时间，算出关键路径：启动耗时取决于最长的那条依赖链，而不是所有步骤之和
+ * 每个任务结束（不管成功失败）都 countDown 一次，run() 就是在这个 CountDownLatch 上 await
+ */
+public class StartupOrchestrator {
+
+    /**
+     * 初始化任务，抛异常算失败；超时的时候会被中断
+     */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    public enum State {
+        PENDING, RUNNING, SUCCESS, FAILED, TIMED_OUT, SKIPPED
+    }
+
+    private static final class Node {
+        final String name;
+        final List<String> deps;
+        final long timeoutNanos;
+        final Task task;
+        final List<Node> dependents = new ArrayList<>();
+
+        Node(String name, List<String> deps, long timeoutNanos, Task task) {
+            this.name = name;
+            this.deps = deps;
+            this.timeoutNanos = timeoutNanos;
+            this.task = task;
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+        public Builder task(String name, Task task, String... deps) {
+            return task(name, 0, TimeUnit.NANOSECONDS, task, deps);
+        }
+
+        /**
+         * @param timeout 0 表示不限时
+         */
+        public Builder task(String name, long timeout, TimeUnit unit, Task task, String... deps) {
+            if (nodes.containsKey(name)) {
+                throw new IllegalArgumentException("duplicate task: " + name);
+            }
+            nodes.put(name, new Node(name, Arrays.asList(deps), unit.toNanos(timeout), task));
+            return this;
+        }
+
+        public StartupOrchestrator build() {
+            for (Node node : nodes.values()) {
+                for (String dep : node.deps) {
+                    Node d = nodes.get(dep);
+                    if (d == null) {
+                        throw new IllegalArgumentException(node.name + " depends on unknown task " + dep);
+                    }
+                    d.dependents.add(node);
+                }
+            }
+            checkAcyclic(nodes);
+            return new StartupOrchestrator(new ArrayList<>(nodes.values()));
+        }
+
+        // 拓扑排序（Kahn），排不完说明有环
+        private static void checkAcyclic(Map<String, Node> nodes) {
+            Map<Node, Integer> inDegree = new HashMap<>();
+            List<Node> ready = new ArrayList<>();
+            for (Node node : nodes.values()) {
+                inDegree.put(node, node.deps.size());
+                if (node.deps.isEmpty()) {
+                    ready.add(node);
+                }
+            }
+            int visited = 0;
+            while (!ready.isEmpty()) {
+                Node node = ready.remove(ready.size() - 1);
+                visited++;
+                for (Node d : node.dependents) {
+                    if (inDegree.merge(d, -1, Integer::sum) == 0) {
+                        ready.add(d);
+                    }
+                }
+            }
+            if (visited != nodes.size()) {
+                List<String> cycle = new ArrayList<>();
+                inDegree.forEach((node, degree) -> {
+                    if (degree > 0) {
+                        cycle.add(node.name);
+                    }
+                });
+                throw new IllegalArgumentException("dependency cycle among " + cycle);
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final List<Node> nodes;
+
+    private StartupOrchestrator(List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * 一次执行里每个任务的状态
+     */
+    private final class Execution {
+        final Map<Node, Run> runs = new HashMap<>();
+        final CountDownLatch done;
+        final ExecutorService executor;
+        final ScheduledExecutorService timer;
+        final long origin = System.nanoTime();
+
+        Execution(ExecutorService executor, ScheduledExecutorService timer) {
+            this.executor = executor;
+            this.timer = timer;
+            for (Node node : nodes) {
+                runs.put(node, new Run(node));
+            }
+            this.done = new CountDownLatch(nodes.size());
+        }
+
+        void start() {
+            for (Run run : runs.values()) {
+                if (run.node.deps.isEmpty()) {
+                    submit(run);
+                }
+            }
+        }
+
+        void submit(Run run) {
+            if (!run.state.compareAndSet(State.PENDING.ordinal(), State.RUNNING.ordinal())) {
+                return;
+            }
+            Future<?> future = executor.submit(() -> {
+                // 排队时已经超时：不再执行，开始时间已经由 finish 记下
+                if (run.state.get() != State.RUNNING.ordinal() || !run.startNanos.compareAndSet(0, System.nanoTime())) {
+                    return;
+                }
+                run.thread = Thread.currentThread().getName();
+                try {
+                    run.node.task.run();
+                    finish(run, State.SUCCESS, null);
+                } catch (Throwable e) {
+                    finish(run, State.FAILED, e);
+                }
+            });
+            if (run.node.timeoutNanos > 0) {
+                // 从提交算起：线程池排队的时间也算在超时里
+                timer.schedule(() -> {
+                    if (finish(run, State.TIMED_OUT, new TimeoutException(
+                            run.node.name + " timed out after " + TimeUnit.NANOSECONDS.toMillis(run.node.timeoutNanos) + "ms"))) {
+                        future.cancel(true);
+                    }
+                }, run.node.timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * 状态只能从 PENDING/RUNNING 变成结束状态一次：超时和正常结束同时发生时只有一个生效
+         */
+        boolean finish(Run run, State state, Throwable error) {
+            int current = run.state.get();
+            while (current == State.PENDING.ordinal() || current == State.RUNNING.ordinal()) {
+                if (run.state.compareAndSet(current, state.ordinal())) {
+                    long now = System.nanoTime();
+                    // 还没开始就结束（超时、跳过）：开始时间记成现在；和工作线程抢着记时只有一个生效，
+                    // 工作线程可能在 now 之后才取的时间，结束时间不早于开始时间
+                    run.startNanos.compareAndSet(0, now);
+                    run.endNanos = Math.max(now, run.startNanos.get());
+                    run.error = error;
+                    for (Node d : run.node.dependents) {
+                        Run dependent = runs.get(d);
+                        if (state == State.SUCCESS) {
+                            if (dependent.remainingDeps.decrementAndGet() == 0) {
+                                submit(dependent);
+                            }
+                        } else {
+                            finish(dependent, State.SKIPPED, null);
+                        }
+                    }
+                    done.countDown();
+                    return true;
+                }
+                current = run.state.get();
+            }
+            return false;
+        }
+    }
+
+    private static final class Run {
+        final Node node;
+        final AtomicInteger remainingDeps;
+        final AtomicInteger state = new AtomicInteger(State.PENDING.ordinal());
+        // 0 表示还没开始
+        final AtomicLong startNanos = new AtomicLong();
+        volatile long endNanos;
+        volatile String thread;
+        volatile Throwable error;
+
+        Run(Node node) {
+            this.node = node;
+            this.remainingDeps = new AtomicInteger(node.deps.size());
+        }
+    }
+
+    /**
+     * 用 threads 个线程执行所有任务，等全部结束（成功、失败、超时或跳过）后返回报告
+     */
+    public Report run(int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "startup-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "startup-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Execution execution = new Execution(executor, timer);
+            execution.start();
+            execution.done.await();
+            return report(execution);
+        } finally {
+            // 超时的任务如果不响应中断，会一直占着线程；daemon 线程不会拖住 JVM 退出
+            executor.shutdownNow();
+            timer.shutdownNow();
+        }
+    }
+
+    private Report report(Execution execution) {
+        long end = System.nanoTime();
+        List<Entry> entries = new ArrayList<>();
+        Map<Node, Entry> byNode = new HashMap<>();
+        for (Node node : nodes) {
+            Run run = execution.runs.get(node);
+            Entry e = new Entry(node.name, State.values()[run.state.get()], run.thread,
+                    run.startNanos.get() - execution.origin, run.endNanos - execution.origin, run.error);
+            entries.add(e);
+            byNode.put(node, e);
+        }
+        // 关键路径：从结束最晚的任务开始，每次往回找结束最晚的那个依赖
+        Node last = null;
+        for (Node node : nodes) {
+            if (last == null || byNode.get(node).endNanos > byNode.get(last).endNanos) {
+                last = node;
+            }
+        }
+        List<String> path = new ArrayList<>();
+        Map<String, Node> byName = new HashMap<>();
+        for (Node node : nodes) {
+            byName.put(node.name, node);
+        }
+        for (Node node = last; node != null; ) {
+            path.add(node.name);
+            Node next = null;
+            for (String dep : node.deps) {
+                Node d = byName.get(dep);
+                if (next == null || byNode.get(d).endNanos > byNode.get(next).endNanos) {
+                    next = d;
+                }
+            }
+            node = next;
+        }
+        Collections.reverse(path);
+        return new Report(entries, path, end - execution.origin);
+    }
+
+    /**
+     * 一个任务的时间线，时间都是相对于 run() 开始的纳秒数
+     */
+    public static final class Entry {
+        private final String name;
+        private final State state;
+        private final String thread;
+        private final long startNanos;
+        private final long endNanos;
+        private final Throwable error;
+
+        Entry(String name, State state, String thread, long startNanos, long endNanos, Throwable error) {
+            this.name = name;
+            this.state = state;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public long getStartMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(startNanos);
+        }
+
+        public long getEndMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(endNanos);
+        }
+
+        public long getDurationMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    public static final class Report {
+        private final List<Entry> entries;
+        private final List<String> criticalPath;
+        private final long totalNanos;
+
+        Report(List<Entry> entries, List<String> criticalPath, long totalNanos) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.criticalPath = Collections.unmodifiableList(criticalPath);
+            this.totalNanos = totalNanos;
+        }
+
+        public boolean isSuccess() {
+            for (Entry e : entries) {
+                if (e.state != State.SUCCESS) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        public List<Entry> getFailures() {
+            List<Entry> failures = new ArrayList<>();
+            for (Entry e : entries) {
+                if (e.state == State.FAILED || e.state == State.TIMED_OUT) {
+                    failures.add(e);
+                }
+            }
+            return failures;
+        }
+
+        public List<String> getCriticalPath() {
+            return criticalPath;
+        }
+
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+        }
+
+        /**
+         * 所有执行过的任务耗时之和，也就是一个一个串行执行大概要多久
+         */
+        public long getSumMillis() {
+            long sum = 0;
+            for (Entry e : entries) {
+                if (e.state != State.SKIPPED) {
+                    sum += e.endNanos - e.startNanos;
+                }
+            }
+            return TimeUnit.NANOSECONDS.toMillis(sum);
+        }
+
+        /**
+         * 每个任务一行，后面画一条按时间比例的横条
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            int width = 50;
+            double scale = totalNanos == 0 ? 0 : (double) width / totalNanos;
+            for (Entry e : entries) {
+                int from = (int) (e.startNanos * scale);
+                int to = Math.max(from + 1, (int) (e.endNanos * scale));
+                char[] bar = new char[width + 1];
+                Arrays.fill(bar, ' ');
+                Arrays.fill(bar, from, Math.min(to, width + 1), e.state == State.SUCCESS ? '#' : 'x');
+                sb.append(String.format("%-12s %-9s %5dms ~ %5dms %-10s |%s|", e.name, e.state, e.getStartMillis(),
+                        e.getEndMillis(), e.thread == null ? "-" : e.thread, new String(bar)));
+                if (e.error != null) {
+                    sb.append(' ').append(e.error);
+                }
+                sb.append('\n');
+            }
+            sb.append(String.format("total=%dms sum=%dms critical path=%s", getTotalMillis(), getSumMillis(),
+                    String.join(" -> ", criticalPath)));
+            return sb.toString();
+        }
+    }
+}
@@ -4,63 +4,117 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 对比两种抢单方式，每秒处理的订单数：
+ * 1. 旧版：100 个线程每次从头扫描 CopyOnWriteArrayList，抢到后 remove（每次复制整个数组），O(n²)
+ * 2. OrderDispatcher：无锁队列 + CAS 租约 + 过期回收
+ * args: [订单数，默认 20000] [每单处理耗时 ms，默认 0]
+ */
 public class UpdateOrderStatus {
 
     private static int MAX_THREAD = 100;
-    private static List<Order> orders = new CopyOnWriteArrayList<>();
 
-    public static void main(String[] args) {
-        Long t = System.currentTimeMillis();
+    public static void main(String[] args) throws Exception {
+        int orderCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long workMillis = args.length > 1 ? Long.parseLong(args[1]) : 0;
 
-        final CyclicBarrier cb = new CyclicBarrier(MAX_THREAD + 1);
-        for (int i = 0; i < MAX_THREAD; i++) {
-
-            new Thread(
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            while (!orders.isEmpty()) {
-
-
-                                Order order = null;
-                                String token = UUID.randomUUID().toString();
-                                int i = 0;
-                                for (Order item : orders) {
-                                    i++;
-                                    if (item.getLock(token)) {
-                                        order = item;
-                                        break;
-                                    }
-
-                                }
-                                // 获取到可处理的订单
-                                if (order != null) {
-                                    System.out.println(Thread.currentThread().getName());
-                                    // 模拟订单处理功能
-                                    try {
-                                        Thread.sleep(100);
-                                        //处理成功后移除
-                                        orders.remove(order);
-                                    } catch (Exception e) {
+        long t = System.currentTimeMillis();
+        legacy(orderCount, workMillis);
+        report("CopyOnWriteArrayList scan", orderCount, System.currentTimeMillis() - t);
 
-                                    } finally {
-                                        //无论成功还是失败，解锁订单
-                                        order.unlock(token);
-                                    }
-                                }
+        t = System.currentTimeMillis();
+        OrderDispatcher dispatcher = new OrderDispatcher(MAX_THREAD, 1000, order -> work(workMillis));
+        for (int i = 0; i < orderCount; i++) {
+            dispatcher.submit(new Order(i));
+        }
+        dispatcher.awaitCompletion(1, TimeUnit.HOURS);
+        report("OrderDispatcher", dispatcher.getProcessed(), System.currentTimeMillis() - t);
+        dispatcher.shutdown();
 
-                            }
-                            try {
-                                cb.await();
-                            } catch (Exception e) {
+        crashedWorkerDemo();
+    }
 
-                            }
+    /**
+     * 旧版逻辑，去掉了打印
+     */
+    private static void legacy(int orderCount, long workMillis) throws Exception {
+        List<Order> orders = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < orderCount; i++) {
+            orders.add(new Order(i));
+        }
+        final CyclicBarrier cb = new CyclicBarrier(MAX_THREAD + 1);
+        for (int i = 0; i < MAX_THREAD; i++) {
+            new Thread(() -> {
+                while (!orders.isEmpty()) {
+                    Order order = null;
+                    String token = UUID.randomUUID().toString();
+                    for (Order item : orders) {
+                        if (item.getLock(token)) {
+                            order = item;
+                            break;
                         }
-
                     }
-            ).start();
+                    // 获取到可处理的订单
+                    if (order != null) {
+                        try {
+                            work(workMillis);
+                            //处理成功后移除
+                            orders.remove(order);
+                        } finally {
+                            //无论成功还是失败，解锁订单
+                            order.unlock(token);
+                        }
+                    }
+                }
+                try {
+                    cb.await();
+                } catch (Exception e) {
+
+                }
+            }).start();
+        }
+        cb.await();
+    }
 
+    /**
+     * 第一个处理的 worker “挂了”（卡住不返回），租约过期后订单被别的 worker 接手
+     */
+    private static void crashedWorkerDemo() throws Exception {
+        Object stuck = new Object();
+        boolean[] first = {true};
+        OrderDispatcher dispatcher = new OrderDispatcher(4, 200, order -> {
+            boolean hang;
+            synchronized (stuck) {
+                hang = first[0];
+                first[0] = false;
+            }
+            if (hang) {
+                work(Long.MAX_VALUE);
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            dispatcher.submit(new Order(i));
         }
+        boolean done = dispatcher.awaitCompletion(5, TimeUnit.SECONDS);
+        System.out.println("crashed worker demo: done=" + done + " processed=" + dispatcher.getProcessed()
+                + " reclaimed=" + dispatcher.getReclaimed());
+        dispatcher.shutdown();
+    }
+
+    private static void work(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void report(String name, long orders, long millis) {
+        System.out.printf("%-28s orders:%d time:%dms  %.0f orders/s%n", name, orders, millis, orders * 1000.0 / Math.max(millis, 1));
     }
 }
@@ -7,6 +7,7 @@ import java.util.concurrent.Executors;
 
 /**
  * 用代码进行压测
+ * 屏障的实际用法（分轮计算、屏障处合并）见 bsp.BspJob
  */
 public class ConcurrencyCyclicBarriarRunnableTest {
     // 达到5个才继续
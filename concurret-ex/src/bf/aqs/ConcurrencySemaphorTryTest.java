@@ -8,6 +8,7 @@ import java.util.concurrent.TimeUnit;
 /**
  * 用代码进行压测
  * 一块一块的输出
+ * 不阻塞的限流、舱壁见 throttle 包
  */
 public class ConcurrencySemaphorTryTest {
 
@@ -25,9 +26,16 @@ public class ConcurrencySemaphorTryTest {
                 try {
                     //获取许可，每次获取3个,可丢弃一些请求
                     //semaphore.tryAcquire(3);
-                    semaphore.tryAcquire(2, TimeUnit.MILLISECONDS);
-                    add(threadNum);
-                    semaphore.release(3);
+                    // 拿到了才能还：拿不到还 release 的话，许可会越放越多
+                    if (semaphore.tryAcquire(3, 2, TimeUnit.MILLISECONDS)) {
+                        try {
+                            add(threadNum);
+                        } finally {
+                            semaphore.release(3);
+                        }
+                    } else {
+                        System.out.println("thread num:" + threadNum + " 被丢弃");
+                    }
                 } catch (Exception e) {
                     System.out.println("exeception");
                 }
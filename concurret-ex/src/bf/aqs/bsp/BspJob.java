@@ -0,0 +1,333 @@
+package bf.aqs.bsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 整体同步并行（BSP）计算（ConcurrencyCyclicBarriarTest 里"凑齐 5 个再继续"的实际用法）：
+ * 1. 数据分成 partitions 块，每一轮（superstep）每块算出一个局部结果 P，算的时候只读上一轮的全局状态 S
+ * 2. 所有块算完在屏障处汇合，merge 把局部结果合成下一轮的 S（屏障动作，只有一个线程执行）
+ * 3. 结束条件：halt 判断收敛、到达 maxSteps、所有块都 voteToHalt、或者有块抛了异常
+ * 两种跑法：
+ * - run：CyclicBarrier，固定 threads 个线程，第 w 个线程负责第 w, w+threads, ... 块
+ * - runPhased：Phaser，块按 AtomicInteger 动态领取（算得快的线程多领），线程启动时 register，
+ * 活跃的块少于线程数时多出来的线程 arriveAndDeregister 退出；onAdvance 里 merge，返回 true 就结束
+ */
+public class BspJob<S, P> {
+
+    /**
+     * 一块在一轮里的计算
+     */
+    public interface Compute<S, P> {
+        P compute(int step, int partition, S state, Context context) throws Exception;
+    }
+
+    public interface Merge<S, P> {
+        /**
+         * @param partials 每块的局部结果，已经 voteToHalt 的块是它最后一次的结果
+         */
+        S merge(int step, S state, List<P> partials);
+    }
+
+    public interface Halt<S> {
+        boolean halt(int step, S previous, S next);
+    }
+
+    /**
+     * 块在计算时可以投票：以后不用再算我了
+     */
+    public static final class Context {
+        private boolean halt;
+
+        public void voteToHalt() {
+            halt = true;
+        }
+    }
+
+    public enum Outcome {
+        CONVERGED, MAX_STEPS, ALL_HALTED, FAILED
+    }
+
+    private final int partitions;
+    private final int maxSteps;
+    private final Compute<S, P> compute;
+    private final Merge<S, P> merge;
+    private final Halt<S> halt;
+
+    private BspJob(Builder<S, P> b) {
+        this.partitions = b.partitions;
+        this.maxSteps = b.maxSteps;
+        this.compute = b.compute;
+        this.merge = b.merge;
+        this.halt = b.halt;
+    }
+
+    public static <S, P> Builder<S, P> builder(int partitions, Compute<S, P> compute, Merge<S, P> merge) {
+        return new Builder<>(partitions, compute, merge);
+    }
+
+    public static final class Builder<S, P> {
+        private final int partitions;
+        private final Compute<S, P> compute;
+        private final Merge<S, P> merge;
+        private int maxSteps = Integer.MAX_VALUE;
+        private Halt<S> halt = (step, previous, next) -> false;
+
+        private Builder(int partitions, Compute<S, P> compute, Merge<S, P> merge) {
+            if (partitions <= 0) {
+                throw new IllegalArgumentException("partitions must be > 0");
+            }
+            this.partitions = partitions;
+            this.compute = compute;
+            this.merge = merge;
+        }
+
+        public Builder<S, P> maxSteps(int maxSteps) {
+            this.maxSteps = maxSteps;
+            return this;
+        }
+
+        public Builder<S, P> haltWhen(Halt<S> halt) {
+            this.halt = halt;
+            return this;
+        }
+
+        public BspJob<S, P> build() {
+            return new BspJob<>(this);
+        }
+    }
+
+    /**
+     * 一次执行的状态；屏障前后有 happens-before，所以普通数组、普通字段就够了
+     */
+    private final class Execution {
+        final Object[] partials = new Object[partitions];
+        final boolean[] halted = new boolean[partitions];
+        final List<Long> stepNanos = new ArrayList<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        volatile S state;
+        volatile boolean stop;
+        int step;
+        int active = partitions;
+        Outcome outcome;
+        long stepStart = System.nanoTime();
+
+        Execution(S initial) {
+            this.state = initial;
+        }
+
+        void computePartition(int p) {
+            if (halted[p] || error.get() != null) {
+                return;
+            }
+            Context context = new Context();
+            try {
+                partials[p] = compute.compute(step, p, state, context);
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+            }
+            halted[p] = context.halt;
+        }
+
+        /**
+         * 屏障动作：合并、判断要不要结束；返回 true 表示结束
+         */
+        @SuppressWarnings("unchecked")
+        boolean advance() {
+            long now = System.nanoTime();
+            stepNanos.add(now - stepStart);
+            stepStart = now;
+            if (error.get() != null) {
+                outcome = Outcome.FAILED;
+                return stop = true;
+            }
+            S previous = state;
+            List<P> list = new ArrayList<>(partitions);
+            for (Object p : partials) {
+                list.add((P) p);
+            }
+            S next;
+            try {
+                next = merge.merge(step, previous, Collections.unmodifiableList(list));
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+                outcome = Outcome.FAILED;
+                return stop = true;
+            }
+            state = next;
+            step++;
+            active = 0;
+            for (boolean h : halted) {
+                if (!h) {
+                    active++;
+                }
+            }
+            // 屏障动作里抛出去：CyclicBarrier 只会报 BrokenBarrierException，Phaser 的 onAdvance 则永远推进不了
+            boolean converged;
+            try {
+                converged = halt.halt(step - 1, previous, next);
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+                outcome = Outcome.FAILED;
+                return stop = true;
+            }
+            if (converged) {
+                outcome = Outcome.CONVERGED;
+            } else if (active == 0) {
+                outcome = Outcome.ALL_HALTED;
+            } else if (step >= maxSteps) {
+                outcome = Outcome.MAX_STEPS;
+            }
+            return stop = outcome != null;
+        }
+
+        Result<S> result() {
+            return new Result<>(state, step, outcome, stepNanos, error.get());
+        }
+    }
+
+    /**
+     * CyclicBarrier 版本：threads 个线程，每轮在屏障处汇合，屏障动作里 merge
+     */
+    public Result<S> run(S initial, int threads) throws InterruptedException {
+        int n = Math.min(threads, partitions);
+        Execution execution = new Execution(initial);
+        CyclicBarrier barrier = new CyclicBarrier(n, execution::advance);
+        CountDownLatch done = new CountDownLatch(n);
+        for (int w = 0; w < n; w++) {
+            int worker = w;
+            Thread t = new Thread(() -> {
+                try {
+                    while (!execution.stop) {
+                        for (int p = worker; p < partitions; p += n) {
+                            execution.computePartition(p);
+                        }
+                        barrier.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    execution.error.compareAndSet(null, e);
+                    barrier.reset();
+                } finally {
+                    done.countDown();
+                }
+            }, "bsp-" + w);
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+        if (execution.outcome == null) {
+            execution.outcome = Outcome.FAILED;
+        }
+        return execution.result();
+    }
+
+    /**
+     * Phaser 版本：块动态领取，活跃的块变少后多余的线程注销退出
+     */
+    public Result<S> runPhased(S initial, int threads) throws InterruptedException {
+        Execution execution = new Execution(initial);
+        AtomicInteger next = new AtomicInteger();
+        // 每轮开始时本轮还需要几个线程：活跃的块数和线程数取小
+        int[] wanted = {Math.min(threads, partitions)};
+        // 主线程先注册一个，保证 worker 都注册完之前第 0 轮不会结束
+        Phaser phaser = new Phaser(1) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                if (registeredParties == 0 || execution.advance()) {
+                    return true;
+                }
+                next.set(0);
+                wanted[0] = Math.max(1, Math.min(registeredParties, execution.active));
+                return false;
+            }
+        };
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int w = 0; w < threads; w++) {
+            int worker = w;
+            phaser.register();
+            Thread t = new Thread(() -> {
+                try {
+                    while (!phaser.isTerminated()) {
+                        // 编号大的先退：剩下的线程编号总是 0 ~ wanted-1
+                        if (worker >= wanted[0]) {
+                            phaser.arriveAndDeregister();
+                            return;
+                        }
+                        for (int p; (p = next.getAndIncrement()) < partitions; ) {
+                            execution.computePartition(p);
+                        }
+                        phaser.arriveAndAwaitAdvance();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "bsp-phased-" + w);
+            t.setDaemon(true);
+            t.start();
+        }
+        phaser.arriveAndDeregister();
+        done.await();
+        if (execution.outcome == null) {
+            execution.outcome = Outcome.FAILED;
+        }
+        return execution.result();
+    }
+
+    public static final class Result<S> {
+        private final S state;
+        private final int steps;
+        private final Outcome outcome;
+        private final List<Long> stepNanos;
+        private final Throwable error;
+
+        Result(S state, int steps, Outcome outcome, List<Long> stepNanos, Throwable error) {
+            this.state = state;
+            this.steps = steps;
+            this.outcome = outcome;
+            this.stepNanos = Collections.unmodifiableList(stepNanos);
+            this.error = error;
+        }
+
+        public S getState() {
+            return state;
+        }
+
+        public int getSteps() {
+            return steps;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * 每一轮（包括屏障等待）的耗时，毫秒
+         */
+        public long[] getStepMillis() {
+            long[] millis = new long[stepNanos.size()];
+            for (int i = 0; i < millis.length; i++) {
+                millis[i] = TimeUnit.NANOSECONDS.toMillis(stepNanos.get(i));
+            }
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return "outcome=" + outcome + " steps=" + steps + " stepMillis=" + Arrays.toString(getStepMillis())
+                    + (error == null ? "" : " error=" + error);
+        }
+    }
+}
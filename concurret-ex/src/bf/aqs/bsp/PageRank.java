@@ -0,0 +1,181 @@
+package bf.aqs.bsp;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 用 BspJob 算 PageRank：
+ * 图按节点编号切成若干块，每块每轮用入边（CSR 格式）和上一轮的 rank 算出本块的新 rank，
+ * 写进 next 数组里自己那一段（各块写的范围不重叠，不用加锁），局部结果是本块 rank 的变化量
+ * 屏障处交换 cur / next，变化量之和小于 epsilon 就收敛
+ * 对比单线程、CyclicBarrier、Phaser 三种跑法的耗时和结果
+ * args: [节点数，默认 200000] [每个节点平均出边数，默认 10] [线程数，默认 CPU 核数]
+ */
+public class PageRank {
+
+    private static final double DAMPING = 0.85;
+
+    /**
+     * 图：inStart[v] ~ inStart[v+1] 是指向 v 的节点
+     */
+    static final class Graph {
+        final int nodes;
+        final int[] inStart;
+        final int[] inFrom;
+        final int[] outDegree;
+
+        Graph(int nodes, int[] inStart, int[] inFrom, int[] outDegree) {
+            this.nodes = nodes;
+            this.inStart = inStart;
+            this.inFrom = inFrom;
+            this.outDegree = outDegree;
+        }
+
+        // 出边指向的节点偏向编号小的，rank 分布不均匀一些
+        static Graph random(int nodes, int avgDegree, long seed) {
+            Random r = new Random(seed);
+            int edges = nodes * avgDegree;
+            int[] from = new int[edges];
+            int[] to = new int[edges];
+            int[] outDegree = new int[nodes];
+            int[] inCount = new int[nodes + 1];
+            for (int e = 0; e < edges; e++) {
+                from[e] = r.nextInt(nodes);
+                double x = r.nextDouble();
+                to[e] = (int) (x * x * nodes);
+                outDegree[from[e]]++;
+                inCount[to[e] + 1]++;
+            }
+            for (int v = 0; v < nodes; v++) {
+                inCount[v + 1] += inCount[v];
+            }
+            int[] inFrom = new int[edges];
+            int[] fill = Arrays.copyOf(inCount, nodes);
+            for (int e = 0; e < edges; e++) {
+                inFrom[fill[to[e]]++] = from[e];
+            }
+            return new Graph(nodes, inCount, inFrom, outDegree);
+        }
+    }
+
+    static final class Ranks {
+        double[] cur;
+        double[] next;
+        double delta = Double.MAX_VALUE;
+        // 没有出边的节点的 rank 平均分给所有节点
+        double danglingShare;
+
+        Ranks(int nodes) {
+            this.cur = new double[nodes];
+            this.next = new double[nodes];
+            Arrays.fill(cur, 1.0 / nodes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Graph g = Graph.random(nodes, degree, 42);
+        // 块比线程多，Phaser 版本动态领取时负载更均衡
+        int partitions = threads * 8;
+        BspJob<Ranks, Double> job = job(g, partitions, 1e-6, 100);
+
+        for (int round = 0; round < 3; round++) {
+            long st = System.nanoTime();
+            BspJob.Result<Ranks> seq = job.run(init(g), 1);
+            long t1 = System.nanoTime();
+            BspJob.Result<Ranks> barrier = job.run(init(g), threads);
+            long t2 = System.nanoTime();
+            BspJob.Result<Ranks> phased = job.runPhased(init(g), threads);
+            long t3 = System.nanoTime();
+            System.out.printf("round %d: 1 thread %dms, barrier(%d) %dms, phaser(%d) %dms%n", round,
+                    (t1 - st) / 1_000_000, threads, (t2 - t1) / 1_000_000, threads, (t3 - t2) / 1_000_000);
+            if (round == 2) {
+                System.out.println("1 thread: " + seq.getOutcome() + " steps=" + seq.getSteps());
+                System.out.println("barrier:  " + barrier);
+                System.out.println("phaser:   " + phased);
+                System.out.printf("max diff barrier/phaser vs 1 thread: %.2e / %.2e%n",
+                        maxDiff(seq.getState().cur, barrier.getState().cur),
+                        maxDiff(seq.getState().cur, phased.getState().cur));
+                System.out.println("top 5: " + top(seq.getState().cur, 5));
+            }
+        }
+    }
+
+    static BspJob<Ranks, Double> job(Graph g, int partitions, double epsilon, int maxSteps) {
+        int chunk = (g.nodes + partitions - 1) / partitions;
+        return BspJob.<Ranks, Double>builder(partitions, (step, p, ranks, ctx) -> {
+            int from = p * chunk;
+            int to = Math.min(g.nodes, from + chunk);
+            double base = (1 - DAMPING) / g.nodes + DAMPING * ranks.danglingShare;
+            double delta = 0;
+            for (int v = from; v < to; v++) {
+                double sum = 0;
+                for (int e = g.inStart[v]; e < g.inStart[v + 1]; e++) {
+                    int u = g.inFrom[e];
+                    sum += ranks.cur[u] / g.outDegree[u];
+                }
+                double rank = base + DAMPING * sum;
+                ranks.next[v] = rank;
+                delta += Math.abs(rank - ranks.cur[v]);
+            }
+            return delta;
+        }, (step, ranks, partials) -> {
+            double[] t = ranks.cur;
+            ranks.cur = ranks.next;
+            ranks.next = t;
+            ranks.delta = sum(partials);
+            ranks.danglingShare = danglingShare(g, ranks.cur);
+            return ranks;
+        }).haltWhen((step, previous, next) -> next.delta < epsilon)
+                .maxSteps(maxSteps)
+                .build();
+    }
+
+    static Ranks init(Graph g) {
+        Ranks ranks = new Ranks(g.nodes);
+        ranks.danglingShare = danglingShare(g, ranks.cur);
+        return ranks;
+    }
+
+    private static double danglingShare(Graph g, double[] rank) {
+        double dangling = 0;
+        for (int v = 0; v < g.nodes; v++) {
+            if (g.outDegree[v] == 0) {
+                dangling += rank[v];
+            }
+        }
+        return dangling / g.nodes;
+    }
+
+    private static double sum(List<Double> values) {
+        double s = 0;
+        for (Double v : values) {
+            s += v;
+        }
+        return s;
+    }
+
+    private static double maxDiff(double[] a, double[] b) {
+        double max = 0;
+        for (int i = 0; i < a.length; i++) {
+            max = Math.max(max, Math.abs(a[i] - b[i]));
+        }
+        return max;
+    }
+
+    private static String top(double[] rank, int k) {
+        Integer[] idx = new Integer[rank.length];
+        for (int i = 0; i < idx.length; i++) {
+            idx[i] = i;
+        }
+        Arrays.sort(idx, (a, b) -> Double.compare(rank[b], rank[a]));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < k; i++) {
+            sb.append(String.format("%d=%.5f ", idx[i], rank[idx[i]]));
+        }
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,152 @@
+package bf.aqs.throttle;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 并发舱壁：同时最多 maxConcurrent 个调用在进行（对比 ConcurrencySemaphorTryTest：
+ * tryAcquire 失败了还 release(3)，许可越放越多；这里许可只能通过 Permit 归还，而且只能还一次）
+ * 1. tryAcquire：不等，拿不到返回 null
+ * 2. acquireAsync：拿不到就排队，返回的 CompletableFuture 在有许可的时候完成，不占线程等
+ * 3. 归还许可时，如果有人在排队，直接把许可交给排在最前面的；排队的 future 被取消或超时了就跳过
+ * 4. 许可计数是一个 AtomicInteger，拿和还都是 CAS
+ * 5. 完成排队的 future 会在当前线程上同步执行它的后续（比如 execute 里的调用），后续里又还许可时不递归分配，
+ * 只记一笔，由外层正在分配的那次循环接着分，调用栈的深度和排队长度无关
+ */
+public class Bulkhead {
+
+    private final int maxConcurrent;
+
+    private final AtomicInteger available;
+
+    private final Queue<CompletableFuture<Permit>> waiters = new ConcurrentLinkedQueue<>();
+
+    // 正在分配许可的次数 + 分配期间又被要求分配的次数；不为 0 时别人只加一，由正在分配的那个线程多循环一轮
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    public Bulkhead(int maxConcurrent) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be > 0");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.available = new AtomicInteger(maxConcurrent);
+    }
+
+    /**
+     * 一个许可，close() 归还；重复 close 没有影响
+     */
+    public final class Permit implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                available.incrementAndGet();
+                drain();
+            }
+        }
+    }
+
+    public Permit tryAcquire() {
+        return tryTake() ? new Permit() : null;
+    }
+
+    /**
+     * 有许可就返回已完成的 future，否则排队
+     */
+    public CompletableFuture<Permit> acquireAsync() {
+        if (waiters.isEmpty() && tryTake()) {
+            return CompletableFuture.completedFuture(new Permit());
+        }
+        CompletableFuture<Permit> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        // 入队前后可能刚好有许可被还回来，还回来的那一方没看到我们，这里再分一次
+        drain();
+        return waiter;
+    }
+
+    /**
+     * 排队最多等 timeout，超时 future 以 TimeoutException 结束
+     */
+    public CompletableFuture<Permit> acquireAsync(long timeout, TimeUnit unit) {
+        CompletableFuture<Permit> waiter = acquireAsync();
+        if (!waiter.isDone()) {
+            waiter.orTimeout(timeout, unit);
+        }
+        return waiter;
+    }
+
+    /**
+     * 拿到许可后执行 call，call 返回的 future 结束时归还许可
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+        return acquireAsync().thenCompose(permit -> {
+            CompletableFuture<T> f;
+            try {
+                f = call.get();
+            } catch (Throwable e) {
+                permit.close();
+                CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            return f.whenComplete((v, e) -> permit.close());
+        });
+    }
+
+    private boolean tryTake() {
+        for (;;) {
+            int n = available.get();
+            if (n <= 0) {
+                return false;
+            }
+            if (available.compareAndSet(n, n - 1)) {
+                return true;
+            }
+        }
+    }
+
+    // 有许可又有人排队，就拿一个许可交给队头；队头已经取消或超时就把许可还回去继续
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        for (;;) {
+            while (!waiters.isEmpty() && tryTake()) {
+                CompletableFuture<Permit> waiter = waiters.poll();
+                Permit permit = new Permit();
+                if (waiter == null || !waiter.complete(permit)) {
+                    available.incrementAndGet();
+                }
+            }
+            requests = drainRequests.addAndGet(-requests);
+            if (requests == 0) {
+                return;
+            }
+        }
+    }
+
+    public int availablePermits() {
+        return Math.max(0, available.get());
+    }
+
+    public int inUse() {
+        return maxConcurrent - available.get();
+    }
+
+    /**
+     * 排队的个数（包括已经超时、还没被清出去的）
+     */
+    public int queued() {
+        return waiters.size();
+    }
+}
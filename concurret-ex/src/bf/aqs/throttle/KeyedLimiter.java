@@ -0,0 +1,94 @@
+package bf.aqs.throttle;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 按 key 限流（每个用户、每个 IP 一个限流器）：
+ * 1. key 按哈希分到若干段，每段一个 ConcurrentHashMap；常见路径是一次 get，没有才 computeIfAbsent 建一个
+ * 2. 每个条目记最后访问时间，evictIdle 清掉长时间没访问的 key，map 不会无限长大
+ * 3. 限流器用工厂创建，TokenBucket、SlidingWindowLimiter 都可以
+ */
+public class KeyedLimiter<K> {
+
+    private static final class Entry {
+        final RateLimiter limiter;
+        // 只用来判断空闲，不需要精确
+        volatile long lastAccess;
+
+        Entry(RateLimiter limiter, long now) {
+            this.limiter = limiter;
+            this.lastAccess = now;
+        }
+    }
+
+    private final Map<K, Entry>[] stripes;
+
+    private final int mask;
+
+    private final Function<? super K, ? extends RateLimiter> factory;
+
+    @SuppressWarnings("unchecked")
+    public KeyedLimiter(int stripes, Function<? super K, ? extends RateLimiter> factory) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = (Map<K, Entry>[]) new Map<?, ?>[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new ConcurrentHashMap<>();
+        }
+        this.mask = n - 1;
+        this.factory = factory;
+    }
+
+    public KeyedLimiter(Function<? super K, ? extends RateLimiter> factory) {
+        this(Runtime.getRuntime().availableProcessors() * 4, factory);
+    }
+
+    public boolean tryAcquire(K key) {
+        return tryAcquire(key, 1);
+    }
+
+    public boolean tryAcquire(K key, int permits) {
+        long now = System.nanoTime();
+        Map<K, Entry> stripe = stripeOf(key);
+        Entry e = stripe.get(key);
+        if (e == null) {
+            e = stripe.computeIfAbsent(key, k -> new Entry(factory.apply(k), now));
+        } else if (now - e.lastAccess > 1_000_000) {
+            // 最多每毫秒写一次，热点 key 不会每次都写同一个缓存行
+            e.lastAccess = now;
+        }
+        return e.limiter.tryAcquire(permits);
+    }
+
+    private Map<K, Entry> stripeOf(K key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    /**
+     * 清掉超过 idleNanos 没访问的 key，返回清掉几个
+     */
+    public int evictIdle(long idleNanos) {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Map<K, Entry> stripe : stripes) {
+            for (Iterator<Entry> it = stripe.values().iterator(); it.hasNext(); ) {
+                if (now - it.next().lastAccess > idleNanos) {
+                    it.remove();
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Map<K, Entry> stripe : stripes) {
+            n += stripe.size();
+        }
+        return n;
+    }
+}
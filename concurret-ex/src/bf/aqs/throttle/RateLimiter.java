@@ -0,0 +1,16 @@
+package bf.aqs.throttle;
+
+/**
+ * 限流器：只做决定，不阻塞
+ */
+public interface RateLimiter {
+
+    /**
+     * 现在能不能放行 permits 个请求，能就扣掉并返回 true
+     */
+    boolean tryAcquire(int permits);
+
+    default boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+}
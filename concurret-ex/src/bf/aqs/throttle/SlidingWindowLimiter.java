@@ -0,0 +1,89 @@
+package bf.aqs.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滑动窗口限流：任意一个 window 长的时间段里最多放行 limit 个
+ * 1. 窗口切成 slots 个格子，每格一个 long：高 24 位是这格属于第几个格子周期（epoch），低 40 位是计数，
+ * 换周期和计数在同一次 CAS 里完成，不会出现"刚清零又被别人加上去的计数被清掉"的问题
+ * 2. 判断时先把计数 CAS 加到当前格子上，再把还在窗口里的格子加起来，超过 limit 就减回去并拒绝，不会因为并发多放行
+ * 3. 精度是一个格子的长度：格子越多越准，每次判断要加的格子也越多
+ */
+public class SlidingWindowLimiter implements RateLimiter {
+
+    private static final int COUNT_BITS = 40;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long EPOCH_MASK = (1L << (64 - COUNT_BITS)) - 1;
+
+    private final long limit;
+
+    private final int slots;
+
+    private final long slotNanos;
+
+    private final AtomicLongArray cells;
+
+    public SlidingWindowLimiter(long limit, long window, TimeUnit unit, int slots) {
+        if (limit <= 0 || limit > COUNT_MASK || window <= 0 || slots <= 0) {
+            throw new IllegalArgumentException("limit, window and slots must be > 0");
+        }
+        if (slots > EPOCH_MASK) {
+            // 周期号回绕一圈要比窗口长，否则分不清格子是不是当前窗口的
+            throw new IllegalArgumentException("slots must be <= " + EPOCH_MASK);
+        }
+        this.limit = limit;
+        this.slots = slots;
+        this.slotNanos = Math.max(1, unit.toNanos(window) / slots);
+        this.cells = new AtomicLongArray(slots);
+    }
+
+    public SlidingWindowLimiter(long limit, long window, TimeUnit unit) {
+        this(limit, window, unit, 10);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        long tick = Math.floorDiv(System.nanoTime(), slotNanos);
+        // 格子按没截断的 tick 算：2^24 不一定是 slots 的倍数，用截断后的 epoch 取模，回绕时会落到窗口里还在用的格子上
+        int slot = (int) Math.floorMod(tick, (long) slots);
+        long epoch = tick & EPOCH_MASK;
+        for (;;) {
+            long cell = cells.get(slot);
+            long count = (cell >>> COUNT_BITS) == epoch ? cell & COUNT_MASK : 0;
+            if (cells.compareAndSet(slot, cell, (epoch << COUNT_BITS) | (count + permits))) {
+                break;
+            }
+        }
+        if (sum(epoch) > limit) {
+            // 格子已经换到下一个周期的话，这次的计数已经跟着清掉了
+            for (;;) {
+                long cell = cells.get(slot);
+                if ((cell >>> COUNT_BITS) != epoch || cells.compareAndSet(slot, cell, cell - permits)) {
+                    break;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private long sum(long epoch) {
+        long total = 0;
+        for (int i = 0; i < slots; i++) {
+            long cell = cells.get(i);
+            // 周期号只有 24 位，按回绕算差值
+            if (((epoch - (cell >>> COUNT_BITS)) & EPOCH_MASK) < slots) {
+                total += cell & COUNT_MASK;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 当前窗口里已经放行了几个
+     */
+    public long used() {
+        return sum(Math.floorDiv(System.nanoTime(), slotNanos) & EPOCH_MASK);
+    }
+}
@@ -0,0 +1,102 @@
+package bf.aqs.throttle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import bf.test.LoadHarness;
+
+/**
+ * 每秒能做多少次放行/拒绝的判断，1/4/16 个线程：
+ * Semaphore.tryAcquire + release 作为基线，对比 TokenBucket、SlidingWindowLimiter、Bulkhead、KeyedLimiter（1 万个 key）
+ * 限流器的速率设得很高，判断结果一半放行一半拒绝左右，两条路径都测到
+ * 最后演示一下 Bulkhead 的异步排队和许可计数
+ * args: [每项毫秒数，默认 1000]
+ */
+public class ThrottleBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        Semaphore semaphore = new Semaphore(8);
+        TokenBucket bucket = new TokenBucket(5_000_000, 1000);
+        SlidingWindowLimiter window = new SlidingWindowLimiter(500_000, 100, TimeUnit.MILLISECONDS);
+        Bulkhead bulkhead = new Bulkhead(8);
+        KeyedLimiter<Integer> keyed = new KeyedLimiter<>(k -> new TokenBucket(1000, 10));
+
+        System.out.printf("cpus=%d, decisions/s%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-20s %14s %14s %14s%n", "", "1 thread", "4 threads", "16 threads");
+        int[] threadCounts = {1, 4, 16};
+        row("Semaphore", threadCounts, millis, () -> {
+            if (semaphore.tryAcquire()) {
+                semaphore.release();
+                return true;
+            }
+            return false;
+        });
+        row("TokenBucket", threadCounts, millis, bucket::tryAcquire);
+        row("SlidingWindow", threadCounts, millis, window::tryAcquire);
+        row("Bulkhead", threadCounts, millis, () -> {
+            Bulkhead.Permit p = bulkhead.tryAcquire();
+            if (p != null) {
+                p.close();
+                return true;
+            }
+            return false;
+        });
+        row("KeyedLimiter(10k)", threadCounts, millis,
+                () -> keyed.tryAcquire(ThreadLocalRandom.current().nextInt(10_000)));
+        System.out.println("semaphore permits=" + semaphore.availablePermits() + ", bulkhead available="
+                + bulkhead.availablePermits() + ", keys=" + keyed.size());
+
+        asyncDemo();
+    }
+
+    // 3 个许可，20 个异步调用，每个 50ms：同时在跑的最多 3 个，结束后许可一个不多一个不少
+    private static void asyncDemo() {
+        Bulkhead bulkhead = new Bulkhead(3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int n = i;
+            calls.add(bulkhead.execute(() -> CompletableFuture.supplyAsync(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return n;
+            })));
+        }
+        // 队列里再放一个只等 10ms 的，它会超时，超时不能占用许可
+        CompletableFuture<Bulkhead.Permit> impatient = bulkhead.acquireAsync(10, TimeUnit.MILLISECONDS);
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+        System.out.println("async: peak concurrency=" + peak.get() + ", impatient timed out="
+                + impatient.isCompletedExceptionally() + ", available after=" + bulkhead.availablePermits()
+                + ", inUse=" + bulkhead.inUse());
+    }
+
+    private static void row(String name, int[] threadCounts, long millis, BooleanSupplier op) throws InterruptedException {
+        StringBuilder line = new StringBuilder(String.format("%-20s", name));
+        for (int threads : threadCounts) {
+            line.append(String.format(" %,14.0f", run(threads, millis, op)));
+        }
+        System.out.println(line);
+    }
+
+    private static double run(int threads, long millis, BooleanSupplier op) throws InterruptedException {
+        return LoadHarness.builder("throttle", i -> op.getAsBoolean())
+                .threads(threads)
+                .duration(millis, TimeUnit.MILLISECONDS)
+                .build()
+                .run()
+                .getThroughput();
+    }
+}
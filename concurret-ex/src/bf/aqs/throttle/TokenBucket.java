@@ -0,0 +1,66 @@
+package bf.aqs.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶：
+ * 1. 不存"桶里还有几个令牌"，只存一个时间 tat：令牌消耗到了哪个时刻（GCRA 的写法，和令牌桶等价）
+ * 2. 每个令牌对应 interval 纳秒；tat 最多比现在超前 burst 个令牌的时间，超过就拒绝
+ * 3. 一次判断只是读时间 + 一次 CAS，没有锁，也不需要后台线程往桶里加令牌
+ */
+public class TokenBucket implements RateLimiter {
+
+    private final long intervalNanos;
+
+    private final long burstNanos;
+
+    private final AtomicLong tat;
+
+    /**
+     * @param ratePerSecond 每秒生成几个令牌
+     * @param burst         桶的容量：空闲一段时间后最多能一口气放行几个
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("ratePerSecond and burst must be > 0");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.burstNanos = intervalNanos * burst;
+        // 一开始桶是满的
+        this.tat = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        long cost = intervalNanos * permits;
+        for (;;) {
+            long now = System.nanoTime();
+            long current = tat.get();
+            long next = Math.max(current, now - burstNanos) + cost;
+            if (next - now > 0) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 把拿到但没用上的令牌还回去（比如还要过第二道限流，第二道没过）；
+     * tat 往回拨，拨到 now - burst 之前也没关系，下次 tryAcquire 会按桶的容量截掉
+     */
+    public void refund(int permits) {
+        tat.addAndGet(-intervalNanos * permits);
+    }
+
+    /**
+     * 现在桶里大概还有几个令牌
+     */
+    public long availableTokens() {
+        long now = System.nanoTime();
+        long free = now - Math.max(tat.get(), now - burstNanos);
+        return free / intervalNanos;
+    }
+}
@@ -0,0 +1,346 @@
+package bf.future;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 比价引擎，代替 PriceService 里每次调用都 new 一个线程池（还不关）的写法：
+ * 1. 两种执行模式：
+ * - VIRTUAL_THREADS：每个请求一个虚拟线程（运行时 JDK 21+ 才有，反射创建；更低版本自动退回共享线程池）
+ * - PLATFORM_POOL：整个引擎共享一个有界线程池
+ * 2. 每个店铺单独超时；超过 hedgeDelay 还没返回就再发一个相同的请求，第一个成功的结果算数，全部失败才算失败
+ * 对冲只在有余量时发：线程池有空闲线程、队列是空的，并且对冲请求不超过普通请求的 HEDGE_BUDGET，
+ * 过载时不再加压；对冲的定时器是单独的一个线程，不和请求抢线程池
+ * 3. 整体 deadline 到了就返回已经拿到的部分结果，慢的店铺记为超时，它们还没结束的请求（包括对冲的）都取消掉
+ * 4. 折扣价是两段流水线：getPriceByDiscount -> Quote.parse -> applyDiscount，
+ * 两段阻塞调用各自是一个任务，用 chain 串起来（取消时两段一起取消），任务里不 join，不会占着线程等另一段
+ */
+public class PriceAggregator implements AutoCloseable {
+
+    public enum Mode {
+        VIRTUAL_THREADS,
+        PLATFORM_POOL
+    }
+
+    private final ExecutorService executor;
+
+    private final boolean virtual;
+
+    private final long perShopTimeoutMillis;
+
+    private final long hedgeDelayMillis;
+
+    // 对冲请求最多占普通请求的比例
+    private static final double HEDGE_BUDGET = 0.1;
+
+    private final ScheduledExecutorService hedgeTimer;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgesSkipped = new LongAdder();
+
+    /**
+     * @param mode                 执行模式
+     * @param platformThreads      PLATFORM_POOL 模式（或退回时）的线程数
+     * @param perShopTimeoutMillis 单个店铺的超时
+     * @param hedgeDelayMillis     多久没返回就发对冲请求，<= 0 表示不对冲
+     */
+    public PriceAggregator(Mode mode, int platformThreads, long perShopTimeoutMillis, long hedgeDelayMillis) {
+        ExecutorService virtualExecutor = mode == Mode.VIRTUAL_THREADS ? newVirtualThreadPerTaskExecutor() : null;
+        this.virtual = virtualExecutor != null;
+        this.executor = virtualExecutor != null ? virtualExecutor : newPlatformPool(platformThreads);
+        this.perShopTimeoutMillis = perShopTimeoutMillis;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.hedgeTimer = hedgeDelayMillis > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "price-aggregator-hedge-timer");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformPool(int threads) {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "price-aggregator-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    // 到了对冲时间，但因为没有余量没发的
+    public long getHedgesSkipped() {
+        return hedgesSkipped.sum();
+    }
+
+    /**
+     * 部分结果：拿到的价格 + 超时/失败的店铺
+     */
+    public static final class Result<T> {
+        private final Map<String, T> values;
+        private final List<String> timedOut;
+        private final List<String> failed;
+        private final long elapsedMillis;
+
+        Result(Map<String, T> values, List<String> timedOut, List<String> failed, long elapsedMillis) {
+            this.values = values;
+            this.timedOut = timedOut;
+            this.failed = failed;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public Map<String, T> getValues() {
+            return values;
+        }
+
+        public List<String> getTimedOut() {
+            return timedOut;
+        }
+
+        public List<String> getFailed() {
+            return failed;
+        }
+
+        public boolean isComplete() {
+            return timedOut.isEmpty() && failed.isEmpty();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "values=" + values.size() + " timedOut=" + timedOut.size() + " failed=" + failed.size()
+                    + " elapsed=" + elapsedMillis + "ms";
+        }
+    }
+
+    public Result<Double> findPrices(List<Shop> shops, String product, long deadlineMillis) {
+        return collect(shops, shop -> call(() -> shop.getPrice(product)), deadlineMillis);
+    }
+
+    /**
+     * 折扣价：两段流水线
+     */
+    public Result<String> findPricesByDiscount(List<Shop> shops, String product, long deadlineMillis) {
+        return collect(shops, shop -> chain(call(() -> shop.getPriceByDiscount(product)), raw -> {
+            Quote quote = Quote.parse(raw);
+            return call(() -> DiscountService.applyDiscount(quote));
+        }), deadlineMillis);
+    }
+
+    /**
+     * 同 thenCompose，但是取消能传回去：collect 到了 deadline 只会 cancel 返回的 future，
+     * thenCompose 得到的是一个新的 future，cancel 它不会影响前后两段，排队中的请求和对冲请求还会继续占线程池
+     */
+    private static <T, U> CompletableFuture<U> chain(CompletableFuture<T> first,
+                                                     Function<T, CompletableFuture<U>> next) {
+        CompletableFuture<U> result = new CompletableFuture<>();
+        first.whenComplete((v, t) -> {
+            if (t != null) {
+                result.completeExceptionally(t);
+                return;
+            }
+            CompletableFuture<U> second;
+            try {
+                second = next.apply(v);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            second.whenComplete((u, t2) -> {
+                if (t2 != null) {
+                    result.completeExceptionally(t2);
+                } else {
+                    result.complete(u);
+                }
+            });
+            result.whenComplete((u, t2) -> second.cancel(false));
+        });
+        result.whenComplete((v, t) -> first.cancel(false));
+        return result;
+    }
+
+    interface ShopCall<T> {
+        CompletableFuture<T> start(Shop shop);
+    }
+
+    private <T> Result<T> collect(List<Shop> shops, ShopCall<T> shopCall, long deadlineMillis) {
+        long start = System.nanoTime();
+        List<CompletableFuture<T>> futures = new ArrayList<>(shops.size());
+        for (Shop shop : shops) {
+            futures.add(shopCall.start(shop));
+        }
+        // 整体 deadline：到点不再等
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .get(deadlineMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 返回部分结果
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 单个店铺的失败在下面逐个统计
+        }
+        Map<String, T> values = new LinkedHashMap<>();
+        List<String> timedOut = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (int i = 0; i < shops.size(); i++) {
+            CompletableFuture<T> f = futures.get(i);
+            String name = shops.get(i).getName();
+            if (!f.isDone()) {
+                timedOut.add(name);
+                f.cancel(false);
+            } else if (f.isCompletedExceptionally()) {
+                if (isTimeout(f)) {
+                    timedOut.add(name);
+                } else {
+                    failed.add(name);
+                }
+            } else {
+                values.put(name, f.join());
+            }
+        }
+        return new Result<>(Collections.unmodifiableMap(values), timedOut, failed,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static boolean isTimeout(CompletableFuture<?> f) {
+        try {
+            f.join();
+            return false;
+        } catch (CompletionException e) {
+            return e.getCause() instanceof TimeoutException;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 单次远程调用：对冲 + 超时
+     */
+    private <T> CompletableFuture<T> call(Supplier<T> supplier) {
+        calls.increment();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // 还没有结束的请求数；减到 0 说明已经发出去的都失败了
+        AtomicInteger inFlight = new AtomicInteger(1);
+        attempt(supplier, result, inFlight);
+        if (hedgeTimer != null) {
+            hedgeTimer.schedule(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                if (!hasHedgeCapacity()) {
+                    hedgesSkipped.increment();
+                    return;
+                }
+                // 主请求已经失败（结果也已经给出）就不再对冲
+                if (inFlight.getAndUpdate(n -> n == 0 ? 0 : n + 1) > 0) {
+                    hedges.increment();
+                    attempt(supplier, result, inFlight);
+                }
+            }, hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        return result.orTimeout(perShopTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private <T> void attempt(Supplier<T> supplier, CompletableFuture<T> result, AtomicInteger inFlight) {
+        CompletableFuture<T> f = CompletableFuture.supplyAsync(supplier, executor);
+        f.whenComplete((v, t) -> {
+            if (t == null) {
+                result.complete(v);
+            } else if (inFlight.decrementAndGet() == 0) {
+                result.completeExceptionally(t);
+            }
+        });
+        // 结果定了（拿到值、超时或被取消）就把还在排队的请求取消掉，队列里的任务出队时会直接跳过，不再占线程
+        result.whenComplete((v, t) -> f.cancel(false));
+    }
+
+    private boolean hasHedgeCapacity() {
+        if (hedges.sum() >= calls.sum() * HEDGE_BUDGET) {
+            return false;
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            return pool.getQueue().isEmpty() && pool.getActiveCount() < pool.getMaximumPoolSize();
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (hedgeTimer != null) {
+            hedgeTimer.shutdownNow();
+        }
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] args) {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            shops.add(new Shop("s" + i));
+        }
+        // 一家很慢的店：超过单店超时，结果里应该记为超时
+        shops.add(new Shop("slow") {
+            @Override
+            public double getPrice(String product) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 0;
+            }
+        });
+
+        for (Mode mode : Mode.values()) {
+            try (PriceAggregator aggregator = new PriceAggregator(mode, 200, 1500, 1200)) {
+                Result<Double> prices = aggregator.findPrices(shops, "ph", 3000);
+                System.out.println(mode + " virtual=" + aggregator.isVirtual() + " findPrices: " + prices
+                        + " hedges=" + aggregator.getHedges() + " skipped=" + aggregator.getHedgesSkipped());
+                Result<String> discounted = aggregator.findPricesByDiscount(shops.subList(0, 100), "i", 5000);
+                System.out.println(mode + " findPricesByDiscount: " + discounted + " e.g. "
+                        + Arrays.toString(discounted.getValues().values().stream().limit(3).toArray()));
+            }
+        }
+    }
+}
@@ -12,9 +12,22 @@ public class Quote {
         this.discount = discount;
     }
 
+    /**
+     * 解析 Shop.getPriceByDiscount 的返回值："a1: price:12.34:discount:GOLD"
+     */
     public static Quote parse(String content) {
-        String[] items = new String[]{"a1", "1.11", "1"};
-        return new Quote(items[0], Double.parseDouble(items[1]), Discount.valueOf(items[2]));
+        String[] items = content.split(":");
+        if (items.length != 5) {
+            throw new IllegalArgumentException("bad quote: " + content);
+        }
+        // 有的 locale 用逗号做小数点
+        double price = Double.parseDouble(items[2].trim().replace(',', '.'));
+        return new Quote(items[0].trim(), price, Discount.valueOf(items[4].trim()));
+    }
+
+    @Override
+    public String toString() {
+        return shop + ":" + price + ":" + discount;
     }
 
 
@@ -0,0 +1,324 @@
+package bf.future;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式比价：哪家店先回就先发哪家的 Quote，不再像 PriceService 那样按列表顺序 join（最慢的那家决定所有人的延迟）
+ * 1. 冷的 Flow.Publisher：每个订阅者各自发起一轮询价，按 request(n) 的需求往下发
+ * 2. 订阅被取消、或者到了 deadline，就把还没回来的询价都 cancel 掉
+ * （CompletableFuture.cancel 不会打断已经在跑的线程，但还在排队的请求会直接跳过）
+ * 3. first(n)：最先回来的 n 个，够数就取消其余询价；cheapest(n)：deadline 内最便宜的 n 个
+ * 询价失败的店铺直接跳过，不算错误
+ */
+public class QuoteStream implements Flow.Publisher<Quote> {
+
+    /**
+     * 对一家店发起询价，返回的 future 被 cancel 时要把底层请求一起取消
+     */
+    public interface QuoteSource {
+        CompletableFuture<Quote> request(Shop shop);
+    }
+
+    private final List<Shop> shops;
+
+    private final QuoteSource source;
+
+    private final long deadlineNanos;
+
+    public QuoteStream(List<Shop> shops, QuoteSource source, long deadline, TimeUnit unit) {
+        this.shops = new ArrayList<>(shops);
+        this.source = source;
+        this.deadlineNanos = unit.toNanos(deadline);
+    }
+
+    /**
+     * 用 Shop.getPriceAsyn 询价（不带折扣）
+     */
+    public static QuoteStream of(List<Shop> shops, String product, Executor executor, long deadline, TimeUnit unit) {
+        return new QuoteStream(shops, shop -> {
+            CompletableFuture<Double> call = shop.getPriceAsyn(product, executor);
+            CompletableFuture<Quote> quote = call.thenApply(price -> new Quote(shop.getName(), price, Discount.NONE));
+            // thenApply 出来的 future 被取消时，上游的 getPriceAsyn 不会跟着取消，要手动传上去
+            quote.whenComplete((q, t) -> {
+                if (quote.isCancelled()) {
+                    call.cancel(false);
+                }
+            });
+            return quote;
+        }, deadline, unit);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Quote> subscriber) {
+        QuoteSubscription subscription = new QuoteSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    /**
+     * 最先回来的 n 个报价；deadline 到了不够 n 个就返回已有的
+     */
+    public CompletableFuture<List<Quote>> first(int n) {
+        CompletableFuture<List<Quote>> result = new CompletableFuture<>();
+        subscribe(new Flow.Subscriber<Quote>() {
+            private final List<Quote> quotes = new ArrayList<>(n);
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(n);
+            }
+
+            @Override
+            public void onNext(Quote item) {
+                quotes.add(item);
+                if (quotes.size() == n) {
+                    // 够数了：取消剩下的询价
+                    subscription.cancel();
+                    result.complete(quotes);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(quotes);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * deadline 内（或者所有店铺都回来时）价格最低的 n 个，从低到高
+     */
+    public CompletableFuture<List<Quote>> cheapest(int n) {
+        CompletableFuture<List<Quote>> result = new CompletableFuture<>();
+        subscribe(new Flow.Subscriber<Quote>() {
+            // 大顶堆：堆顶是目前 n 个里最贵的那个
+            private final PriorityQueue<Quote> best = new PriorityQueue<>(n + 1,
+                    Comparator.comparingDouble(Quote::getPrice).reversed());
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Quote item) {
+                best.offer(item);
+                if (best.size() > n) {
+                    best.poll();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                List<Quote> quotes = new ArrayList<>(best);
+                quotes.sort(Comparator.comparingDouble(Quote::getPrice));
+                result.complete(quotes);
+            }
+        });
+        return result;
+    }
+
+    private final class QuoteSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Quote> subscriber;
+
+        // 已经回来、还没发给订阅者的报价
+        private final Queue<Quote> ready = new ConcurrentLinkedQueue<>();
+
+        private final CompletableFuture<?>[] calls = new CompletableFuture<?>[shops.size()];
+
+        private final AtomicInteger pending = new AtomicInteger(shops.size());
+
+        private final AtomicLong requested = new AtomicLong();
+
+        // drain 的重入计数：同一时刻只有一个线程往订阅者发信号
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        // 所有询价都结束了，或者到了 deadline
+        private volatile boolean finished;
+
+        // 只在 drain 里读写
+        private boolean terminated;
+
+        QuoteSubscription(Flow.Subscriber<? super Quote> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            if (shops.isEmpty()) {
+                finished = true;
+                drain();
+                return;
+            }
+            CompletableFuture.delayedExecutor(deadlineNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                finished = true;
+                cancelCalls();
+                drain();
+            });
+            for (int i = 0; i < calls.length && !cancelled && !finished; i++) {
+                CompletableFuture<Quote> call = source.request(shops.get(i));
+                calls[i] = call;
+                call.whenComplete((quote, t) -> {
+                    if (quote != null && !finished) {
+                        ready.offer(quote);
+                    }
+                    if (pending.decrementAndGet() == 0) {
+                        finished = true;
+                    }
+                    drain();
+                });
+            }
+            // 发起询价的过程中被取消或到点了：补一次，把刚发出去的也取消掉
+            if (cancelled || finished) {
+                cancelCalls();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                return;
+            }
+            requested.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            cancelCalls();
+        }
+
+        private void cancelCalls() {
+            for (CompletableFuture<?> call : calls) {
+                if (call != null) {
+                    call.cancel(false);
+                }
+            }
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long r = requested.get();
+                long emitted = 0;
+                while (emitted != r && !cancelled) {
+                    Quote quote = ready.poll();
+                    if (quote == null) {
+                        break;
+                    }
+                    subscriber.onNext(quote);
+                    emitted++;
+                }
+                if (emitted > 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                if (cancelled) {
+                    ready.clear();
+                    return;
+                }
+                if (finished && ready.isEmpty() && !terminated) {
+                    terminated = true;
+                    cancelCalls();
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Shop> shops = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            shops.add(new Shop("s" + i) {
+                @Override
+                public double getPrice(String product) {
+                    // 100ms ~ 3s 不等
+                    try {
+                        Thread.sleep(ThreadLocalRandom.current().nextLong(100, 3000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ThreadLocalRandom.current().nextDouble() * 100;
+                }
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(20);
+        try {
+            QuoteStream stream = QuoteStream.of(shops, "ph", pool, 1500, TimeUnit.MILLISECONDS);
+
+            long start = System.currentTimeMillis();
+            List<Quote> first = stream.first(5).get();
+            System.out.println("first 5 after " + (System.currentTimeMillis() - start) + "ms: " + first);
+
+            start = System.currentTimeMillis();
+            List<Quote> cheapest = stream.cheapest(3).get();
+            System.out.println("cheapest 3 within 1500ms, after " + (System.currentTimeMillis() - start) + "ms: " + cheapest);
+
+            // 自己订阅：每来一个打一个
+            start = System.currentTimeMillis();
+            long t0 = start;
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            stream.subscribe(new Flow.Subscriber<Quote>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(Quote item) {
+                    System.out.println("  +" + (System.currentTimeMillis() - t0) + "ms " + item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    done.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    done.complete(null);
+                }
+            });
+            done.get();
+            System.out.println("stream completed after " + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
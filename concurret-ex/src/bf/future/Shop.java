@@ -2,6 +2,7 @@ package bf.future;
 
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
 public class Shop {
@@ -51,6 +52,13 @@ public class Shop {
         return CompletableFuture.supplyAsync(() -> getPrice(product));
     }
 
+    /**
+     * 指定线程池的异步询价，返回的 future 可以 cancel：还没开始执行的请求会直接跳过
+     */
+    public CompletableFuture<Double> getPriceAsyn(String product, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getPrice(product), executor);
+    }
+
     public static void main(String[] args) throws Exception {
         Shop shop = new Shop("phone");
         long start = System.currentTimeMillis();
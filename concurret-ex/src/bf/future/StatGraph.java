@@ -0,0 +1,337 @@
+package bf.future;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 统计项的依赖图执行器（代替 OrderService.main 里 supplyAsync 到公共池再往 HashMap 里塞的写法）：
+ * 1. 每个统计项声明依赖和缓存时间，互不依赖的统计项在专用线程池里并行执行
+ * 2. 可缓存的统计项在 TTL 内直接复用结果；正在算的也会被并发的请求共享，不会同时算两遍
+ * 3. 每次执行报告关键路径：最晚完成的那条依赖链，以及它的耗时
+ */
+public class StatGraph implements AutoCloseable {
+
+    private static final class Node {
+        final String name;
+        final List<String> deps;
+        final long ttlNanos;
+        final Function<Map<String, Object>, Object> compute;
+
+        Node(String name, List<String> deps, long ttlNanos, Function<Map<String, Object>, Object> compute) {
+            this.name = name;
+            this.deps = deps;
+            this.ttlNanos = ttlNanos;
+            this.compute = compute;
+        }
+
+        boolean cacheable() {
+            return ttlNanos > 0;
+        }
+    }
+
+    private static final class Cached {
+        final CompletableFuture<Object> future;
+        // 算完之后才知道过期时间，算的过程中一直有效
+        volatile boolean computed;
+        volatile long expiresAt;
+
+        Cached(CompletableFuture<Object> future) {
+            this.future = future;
+        }
+
+        boolean valid(long now) {
+            if (!computed) {
+                return !future.isCompletedExceptionally();
+            }
+            return now - expiresAt < 0;
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+        /**
+         * @param ttl     缓存时间，0 表示每次都重新算
+         * @param compute 入参是依赖项的结果，按名字取
+         */
+        public Builder stat(String name, long ttl, TimeUnit unit, Function<Map<String, Object>, Object> compute,
+                            String... deps) {
+            if (nodes.containsKey(name)) {
+                throw new IllegalArgumentException("duplicate stat: " + name);
+            }
+            nodes.put(name, new Node(name, Arrays.asList(deps), unit.toNanos(ttl), compute));
+            return this;
+        }
+
+        public StatGraph build(ExecutorService executor) {
+            return new StatGraph(topologicalOrder(nodes), executor);
+        }
+
+        private static List<Node> topologicalOrder(Map<String, Node> nodes) {
+            List<Node> order = new ArrayList<>(nodes.size());
+            Set<String> done = new LinkedHashSet<>();
+            Set<String> visiting = new LinkedHashSet<>();
+            for (String name : nodes.keySet()) {
+                visit(name, nodes, done, visiting, order);
+            }
+            return order;
+        }
+
+        private static void visit(String name, Map<String, Node> nodes, Set<String> done, Set<String> visiting,
+                                  List<Node> order) {
+            if (done.contains(name)) {
+                return;
+            }
+            Node node = nodes.get(name);
+            if (node == null) {
+                throw new IllegalArgumentException("unknown stat: " + name);
+            }
+            if (!visiting.add(name)) {
+                throw new IllegalArgumentException("dependency cycle: " + visiting + " -> " + name);
+            }
+            for (String dep : node.deps) {
+                visit(dep, nodes, done, visiting, order);
+            }
+            visiting.remove(name);
+            done.add(name);
+            order.add(node);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 一次执行的结果
+     */
+    public static final class Report {
+        private final Map<String, Object> values;
+        private final Map<String, Long> finishedAtMillis;
+        private final Set<String> cacheHits;
+        private final List<String> criticalPath;
+        private final long criticalPathMillis;
+
+        Report(Map<String, Object> values, Map<String, Long> finishedAtMillis, Set<String> cacheHits,
+               List<String> criticalPath, long criticalPathMillis) {
+            this.values = values;
+            this.finishedAtMillis = finishedAtMillis;
+            this.cacheHits = cacheHits;
+            this.criticalPath = criticalPath;
+            this.criticalPathMillis = criticalPathMillis;
+        }
+
+        public Map<String, Object> getValues() {
+            return values;
+        }
+
+        // 每个统计项相对本次执行开始的完成时间
+        public Map<String, Long> getFinishedAtMillis() {
+            return finishedAtMillis;
+        }
+
+        public Set<String> getCacheHits() {
+            return cacheHits;
+        }
+
+        public List<String> getCriticalPath() {
+            return criticalPath;
+        }
+
+        public long getCriticalPathMillis() {
+            return criticalPathMillis;
+        }
+
+        @Override
+        public String toString() {
+            return values + " cacheHits=" + cacheHits + " criticalPath=" + criticalPath + " " + criticalPathMillis + "ms";
+        }
+    }
+
+    private final List<Node> order;
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    private final ExecutorService executor;
+
+    private final ConcurrentHashMap<String, Cached> cache = new ConcurrentHashMap<>();
+
+    private StatGraph(List<Node> order, ExecutorService executor) {
+        this.order = order;
+        this.executor = executor;
+        for (Node node : order) {
+            nodes.put(node.name, node);
+        }
+    }
+
+    /**
+     * 算出所有统计项
+     */
+    public Report run() {
+        return run(nodes.keySet());
+    }
+
+    /**
+     * 只算 targets 以及它们依赖的统计项
+     */
+    public Report run(Set<String> targets) {
+        Set<String> needed = new LinkedHashSet<>();
+        for (String target : targets) {
+            collect(target, needed);
+        }
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<Object>> futures = new HashMap<>();
+        Map<String, Long> finishedAt = new ConcurrentHashMap<>();
+        Set<String> cacheHits = new LinkedHashSet<>();
+        for (Node node : order) {
+            if (!needed.contains(node.name)) {
+                continue;
+            }
+            CompletableFuture<Object> future;
+            if (node.cacheable()) {
+                long now = System.nanoTime();
+                Cached[] created = new Cached[1];
+                Cached cached = cache.compute(node.name, (name, old) -> {
+                    if (old != null && old.valid(now)) {
+                        return old;
+                    }
+                    return created[0] = new Cached(submit(node, futures));
+                });
+                if (cached == created[0]) {
+                    cached.future.whenComplete((v, t) -> {
+                        if (t == null) {
+                            cached.expiresAt = System.nanoTime() + node.ttlNanos;
+                            cached.computed = true;
+                        } else {
+                            // 失败的结果不缓存
+                            cache.remove(node.name, cached);
+                        }
+                    });
+                } else {
+                    cacheHits.add(node.name);
+                }
+                future = cached.future;
+            } else {
+                future = submit(node, futures);
+            }
+            // 缓存里的 future 是多次执行共享的，完成时间要记在这次执行自己的 future 上
+            futures.put(node.name, future.whenComplete((v, t) -> finishedAt.put(node.name,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))));
+        }
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String name : needed) {
+            values.put(name, futures.get(name).join());
+        }
+        // 关键路径：从最晚完成的目标开始，每次往回走到最晚完成的依赖
+        List<String> path = new ArrayList<>();
+        String last = null;
+        for (String target : targets) {
+            // 同一毫秒完成的，取后面的（依赖别人的统计项排在后面）
+            if (last == null || finishedAt.get(target) >= finishedAt.get(last)) {
+                last = target;
+            }
+        }
+        long criticalPathMillis = last == null ? 0 : finishedAt.get(last);
+        while (last != null) {
+            path.add(last);
+            String next = null;
+            for (String dep : nodes.get(last).deps) {
+                if (next == null || finishedAt.get(dep) > finishedAt.get(next)) {
+                    next = dep;
+                }
+            }
+            last = next;
+        }
+        Collections.reverse(path);
+        return new Report(values, new LinkedHashMap<>(finishedAt), cacheHits, path, criticalPathMillis);
+    }
+
+    private void collect(String name, Set<String> needed) {
+        Node node = nodes.get(name);
+        if (node == null) {
+            throw new IllegalArgumentException("unknown stat: " + name);
+        }
+        if (needed.add(name)) {
+            for (String dep : node.deps) {
+                collect(dep, needed);
+            }
+        }
+    }
+
+    private CompletableFuture<Object> submit(Node node, Map<String, CompletableFuture<Object>> futures) {
+        if (node.deps.isEmpty()) {
+            return CompletableFuture.supplyAsync(() -> node.compute.apply(Collections.emptyMap()), executor);
+        }
+        CompletableFuture<?>[] deps = new CompletableFuture<?>[node.deps.size()];
+        for (int i = 0; i < deps.length; i++) {
+            deps[i] = futures.get(node.deps.get(i));
+        }
+        // 依赖都好了才提交，不占着线程等依赖
+        return CompletableFuture.allOf(deps).thenApplyAsync(ignored -> {
+            Map<String, Object> inputs = new HashMap<>();
+            for (int i = 0; i < deps.length; i++) {
+                inputs.put(node.deps.get(i), deps[i].join());
+            }
+            return node.compute.apply(inputs);
+        }, executor);
+    }
+
+    /**
+     * 清掉缓存，下次全部重新算
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * OrderService 的看板：总交易额变化慢，缓存 5 秒；今日数据缓存 1 秒；客单价依赖今日订单数和交易额
+     */
+    public static StatGraph orderDashboard(OrderService orderService) {
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "stat-graph-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        return builder()
+                .stat("todayOrderCount", 1, TimeUnit.SECONDS, in -> orderService.getTodayOrderCount())
+                .stat("todayTurnover", 1, TimeUnit.SECONDS, in -> orderService.getTodayTurnover())
+                .stat("totalTurnover", 5, TimeUnit.SECONDS, in -> orderService.getTotalTurnover())
+                .stat("avgOrderValue", 0, TimeUnit.SECONDS,
+                        in -> Double.parseDouble((String) in.get("todayTurnover"))
+                                / Double.parseDouble((String) in.get("todayOrderCount")),
+                        "todayOrderCount", "todayTurnover")
+                .build(executor);
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (StatGraph dashboard = orderDashboard(new OrderService())) {
+            for (int i = 0; i < 4; i++) {
+                long st = System.currentTimeMillis();
+                Report report = dashboard.run();
+                System.out.println("request " + i + " took " + (System.currentTimeMillis() - st) + "ms: " + report);
+                Thread.sleep(600);
+            }
+        }
+    }
+}
@@ -4,6 +4,10 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.util.concurrent.*;
 
+/**
+ * 线程池任务的异常：execute 的在 afterExecute 的参数里，submit 的被吞进 Future 里
+ * 两种都收集起来计数、采样见 threadcoreknowledge.unncaughtexception.AggregatingHandlers
+ */
 public class ThreadPoolException {
     public static void main(String[] args) throws Throwable {
         //捕获异常
@@ -0,0 +1,135 @@
+package bf.login;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * "最近 N 分钟有多少活跃用户"的近似计数：
+ * 1. 每分钟一个 HyperLogLog（4096 个寄存器，每个一字节，误差约 1.6%），一圈放 maxMinutes + 1 个
+ * 2. 记录：算用户的 64 位哈希，低 12 位选寄存器，其余位前导零个数 + 1 写进去；寄存器只会变大，
+ * 大多数时候读一下发现不用改就返回了，要改才 CAS
+ * 3. 查询：把最近 N 分钟的桶按寄存器取最大值合并，再估算；同一个用户登录多少次、跨多少分钟都只算一次
+ * 4. 桶过期了（分钟数对不上）就 CAS 换一个新桶，不需要后台线程
+ */
+public class ActiveUsers {
+
+    private static final int P = 12;
+    private static final int M = 1 << P;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final VarHandle REGS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private static final class Bucket {
+        final long minute;
+        final byte[] registers = new byte[M];
+
+        Bucket(long minute) {
+            this.minute = minute;
+        }
+    }
+
+    private final int maxMinutes;
+
+    private final AtomicReferenceArray<Bucket> ring;
+
+    /**
+     * @param maxMinutes 最多能查最近多少分钟
+     */
+    public ActiveUsers(int maxMinutes) {
+        if (maxMinutes <= 0) {
+            throw new IllegalArgumentException("maxMinutes must be > 0");
+        }
+        this.maxMinutes = maxMinutes;
+        this.ring = new AtomicReferenceArray<>(maxMinutes + 1);
+    }
+
+    public void record(String user, long epochMillis) {
+        long minute = epochMillis / MINUTE;
+        Bucket b = bucket(minute);
+        if (b == null) {
+            return;
+        }
+        long h = hash(user);
+        int index = (int) (h & (M - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(h | (M - 1)) + 1);
+        byte[] regs = b.registers;
+        for (;;) {
+            byte current = (byte) REGS.getOpaque(regs, index);
+            if (current >= rank || REGS.compareAndSet(regs, index, current, rank)) {
+                return;
+            }
+        }
+    }
+
+    // 这一分钟的桶；比环里那个还旧（迟到太久的记录）返回 null
+    private Bucket bucket(long minute) {
+        int slot = (int) (minute % ring.length());
+        for (;;) {
+            Bucket b = ring.get(slot);
+            if (b != null && b.minute == minute) {
+                return b;
+            }
+            if (b != null && b.minute > minute) {
+                return null;
+            }
+            Bucket fresh = new Bucket(minute);
+            if (ring.compareAndSet(slot, b, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * nowMillis 所在的这一分钟往前数 minutes 分钟（含这一分钟）里的去重用户数
+     */
+    public long estimate(int minutes, long nowMillis) {
+        if (minutes <= 0 || minutes > maxMinutes) {
+            throw new IllegalArgumentException("minutes must be in 1.." + maxMinutes);
+        }
+        long now = nowMillis / MINUTE;
+        byte[] merged = new byte[M];
+        for (int i = 0; i < ring.length(); i++) {
+            Bucket b = ring.get(i);
+            if (b != null && b.minute <= now && now - b.minute < minutes) {
+                for (int r = 0; r < M; r++) {
+                    byte v = (byte) REGS.getOpaque(b.registers, r);
+                    if (v > merged[r]) {
+                        merged[r] = v;
+                    }
+                }
+            }
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (byte v : merged) {
+            sum += 1.0 / (1L << v);
+            if (v == 0) {
+                zeros++;
+            }
+        }
+        double e = ALPHA * M * M / sum;
+        // 基数小的时候用线性计数更准
+        if (e <= 2.5 * M && zeros > 0) {
+            e = M * Math.log((double) M / zeros);
+        }
+        return Math.round(e);
+    }
+
+    // FNV-1a 再做一次 murmur3 的 fmix64，String.hashCode 只有 32 位而且分布不够好
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,88 @@
+package bf.login;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import bf.test.LoadHarness;
+
+/**
+ * 1. 吞吐：DateSyn 的 synchronizedMap<String, Date> 对比 LastSeenStore，1/4/16 个线程，100 万个用户随机登录
+ * 2. 准确度：模拟 60 分钟的登录，对比 approxActive 和精确扫描的结果
+ * args: [每项毫秒数，默认 1000]
+ */
+public class LastSeenBenchmark {
+
+    private static final int USERS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        String[] users = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            users[i] = "user-" + i;
+        }
+
+        System.out.printf("cpus=%d, logins/min%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-16s %16s %16s %16s%n", "", "1 thread", "4 threads", "16 threads");
+        int[] threadCounts = {1, 4, 16};
+        Map<String, Date> syn = Collections.synchronizedMap(new HashMap<>());
+        row("synchronizedMap", threadCounts, millis, users, (u, t) -> syn.put(u, new Date(t)));
+        LastSeenStore store = new LastSeenStore(USERS, 60);
+        row("LastSeenStore", threadCounts, millis, users, store::login);
+
+        accuracy(users);
+    }
+
+    // 第 m 分钟登录的是编号 [m * 20000, m * 20000 + 100000) 的用户，窗口越长去重后的人数越多
+    private static void accuracy(String[] users) {
+        LastSeenStore store = new LastSeenStore(USERS, 60);
+        long start = TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()));
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int m = 0; m < 60; m++) {
+            long minuteStart = start + TimeUnit.MINUTES.toMillis(m);
+            for (int i = 0; i < 200_000; i++) {
+                int u = (m * 20_000 + r.nextInt(100_000)) % USERS;
+                store.login(users[u], minuteStart + r.nextInt(60_000));
+            }
+        }
+        long now = start + TimeUnit.MINUTES.toMillis(60) - 1;
+        for (int minutes : new int[]{1, 5, 15, 60}) {
+            // 和 approxActive 一样按整分钟算：从 minutes - 1 分钟前那一分钟的开头算起
+            long minute = TimeUnit.MINUTES.toMillis(1);
+            long exact = store.countActiveSince(now - now % minute - (minutes - 1) * minute);
+            long approx = store.approxActive(minutes, now);
+            System.out.printf("last %2d min: exact=%,d approx=%,d error=%.2f%%%n", minutes, exact, approx,
+                    100.0 * (approx - exact) / exact);
+        }
+        long cutoff = now - TimeUnit.MINUTES.toMillis(30);
+        int before = store.size();
+        long st = System.nanoTime();
+        int removed = store.expireOlderThan(cutoff);
+        System.out.printf("expireOlderThan(30 min): %,d -> %,d users, removed %,d in %dms%n", before, store.size(),
+                removed, (System.nanoTime() - st) / 1_000_000);
+    }
+
+    private static void row(String name, int[] threadCounts, long millis, String[] users,
+                            BiConsumer<String, Long> login) throws InterruptedException {
+        StringBuilder line = new StringBuilder(String.format("%-16s", name));
+        for (int threads : threadCounts) {
+            line.append(String.format(" %,16.0f", 60 * run(threads, millis, users, login)));
+        }
+        System.out.println(line);
+    }
+
+    private static double run(int threads, long millis, String[] users, BiConsumer<String, Long> login)
+            throws InterruptedException {
+        return LoadHarness.builder("login",
+                i -> login.accept(users[ThreadLocalRandom.current().nextInt(USERS)], System.currentTimeMillis()))
+                .threads(threads)
+                .duration(millis, TimeUnit.MILLISECONDS)
+                .build()
+                .run()
+                .getThroughput();
+    }
+}
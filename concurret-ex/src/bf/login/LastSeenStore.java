@@ -0,0 +1,101 @@
+package bf.login;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最后登录时间（代替 DateSyn 里 Collections.synchronizedMap(new HashMap<String, Date>())）：
+ * 1. ConcurrentHashMap，值是 AtomicLong 存毫秒数：不用可变的 Date，同一个用户重复登录只是一次 CAS，不会改 map 结构，
+ * 不同用户之间互不影响
+ * 2. 时间只往后走：乱序到达的旧时间不会覆盖新时间
+ * 3. expireOlderThan 批量清理：先把值 CAS 成 EXPIRED 再删，清理的同时用户刚好登录的话，
+ * 登录那边看到 EXPIRED 会换一个新的条目，不会丢
+ * 4. 同时记一份 ActiveUsers，"最近 N 分钟活跃用户数"不用扫整个 map
+ */
+public class LastSeenStore {
+
+    private static final long EXPIRED = Long.MIN_VALUE;
+
+    private final ConcurrentHashMap<String, AtomicLong> lastSeen;
+
+    private final ActiveUsers active;
+
+    /**
+     * @param expectedUsers 预估用户数，避免扩容
+     * @param maxMinutes    approxActive 最多能查最近多少分钟
+     */
+    public LastSeenStore(int expectedUsers, int maxMinutes) {
+        this.lastSeen = new ConcurrentHashMap<>(expectedUsers);
+        this.active = new ActiveUsers(maxMinutes);
+    }
+
+    public void login(String user) {
+        login(user, System.currentTimeMillis());
+    }
+
+    public void login(String user, long epochMillis) {
+        active.record(user, epochMillis);
+        AtomicLong seen = lastSeen.get(user);
+        for (;;) {
+            if (seen == null) {
+                seen = lastSeen.computeIfAbsent(user, k -> new AtomicLong(epochMillis));
+            }
+            long current = seen.get();
+            if (current == EXPIRED) {
+                // 正在被清理，换一个新条目
+                AtomicLong dead = seen;
+                seen = lastSeen.compute(user, (k, v) -> v == null || v == dead ? new AtomicLong(epochMillis) : v);
+                continue;
+            }
+            if (current >= epochMillis || seen.compareAndSet(current, epochMillis)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 最后登录时间，没有返回 -1
+     */
+    public long lastSeen(String user) {
+        AtomicLong seen = lastSeen.get(user);
+        long v = seen == null ? EXPIRED : seen.get();
+        return v == EXPIRED ? -1 : v;
+    }
+
+    /**
+     * 删掉最后登录早于 cutoffMillis 的用户，返回删了几个
+     */
+    public int expireOlderThan(long cutoffMillis) {
+        int removed = 0;
+        for (Iterator<Map.Entry<String, AtomicLong>> it = lastSeen.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, AtomicLong> e = it.next();
+            AtomicLong seen = e.getValue();
+            long v = seen.get();
+            if (v != EXPIRED && v < cutoffMillis && seen.compareAndSet(v, EXPIRED)) {
+                lastSeen.remove(e.getKey(), seen);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 精确的活跃用户数（最后登录不早于 sinceMillis），要扫整个 map
+     */
+    public long countActiveSince(long sinceMillis) {
+        return lastSeen.reduceValuesToLong(Long.MAX_VALUE, v -> v.get() >= sinceMillis ? 1 : 0, 0, Long::sum);
+    }
+
+    /**
+     * 最近 minutes 分钟的近似活跃用户数，误差约 2%
+     */
+    public long approxActive(int minutes, long nowMillis) {
+        return active.estimate(minutes, nowMillis);
+    }
+
+    public int size() {
+        return lastSeen.size();
+    }
+}
@@ -0,0 +1,338 @@
+package bf.stream;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 基本类型的并行计算（ParallelStreamDemo 的结论：别装箱，能拆分的数据源才适合并行）：
+ * 1. 数据源是 long[] 的一段，或者一个 long 区间 [from, to]，按下标二分拆给 ForkJoinPool
+ * 2. sum / min / max / histogram / prefixSum
+ * 3. 拆到 grain 以下就在当前线程顺序算；整体规模小于 sequentialThreshold 直接顺序算，不进线程池
+ */
+public class ParallelKernels {
+
+    private static final int SUM = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+
+    private final ForkJoinPool pool;
+
+    private final int grain;
+
+    private final int sequentialThreshold;
+
+    /**
+     * @param grain               每个叶子任务最多处理多少个元素，0 表示按并行度自动算
+     * @param sequentialThreshold 元素数小于它就不走并行
+     */
+    public ParallelKernels(ForkJoinPool pool, int grain, int sequentialThreshold) {
+        if (grain < 0 || sequentialThreshold < 0) {
+            throw new IllegalArgumentException("grain and sequentialThreshold must be >= 0");
+        }
+        this.pool = pool;
+        this.grain = grain;
+        this.sequentialThreshold = sequentialThreshold;
+    }
+
+    public static ParallelKernels defaults() {
+        return new ParallelKernels(ForkJoinPool.commonPool(), 0, 1 << 14);
+    }
+
+    private long grainFor(long size) {
+        if (grain > 0) {
+            return grain;
+        }
+        // 每个线程大约分 4 块，方便窃取；太小的块不值得拆
+        return Math.max(size / (pool.getParallelism() * 4L), 1 << 12);
+    }
+
+    private boolean sequential(long size) {
+        return size < sequentialThreshold || pool.getParallelism() <= 1;
+    }
+
+    // ---- sum / min / max ----
+
+    public long sum(long[] a) {
+        return sum(a, 0, a.length);
+    }
+
+    public long sum(long[] a, int from, int to) {
+        return reduce(a, from, to, SUM);
+    }
+
+    /**
+     * from + (from + 1) + ... + to，from > to 时是 0；区间长度超过 Long.MAX_VALUE 抛 ArithmeticException
+     */
+    public long sumRange(long from, long to) {
+        if (from > to) {
+            return 0;
+        }
+        if (to - from < 0) {
+            throw new ArithmeticException("range too large: [" + from + ", " + to + "]");
+        }
+        // 右端是开区间，to + 1 会溢出：最后一个单独加
+        if (to == Long.MAX_VALUE) {
+            return (from == to ? 0 : sumRange(from, to - 1)) + to;
+        }
+        return reduce(null, from, to + 1, SUM);
+    }
+
+    public long min(long[] a) {
+        return min(a, 0, a.length);
+    }
+
+    public long min(long[] a, int from, int to) {
+        checkNotEmpty(from, to);
+        return reduce(a, from, to, MIN);
+    }
+
+    public long max(long[] a) {
+        return max(a, 0, a.length);
+    }
+
+    public long max(long[] a, int from, int to) {
+        checkNotEmpty(from, to);
+        return reduce(a, from, to, MAX);
+    }
+
+    private static void checkNotEmpty(int from, int to) {
+        if (from >= to) {
+            throw new NoSuchElementException("empty range [" + from + ", " + to + ")");
+        }
+    }
+
+    private long reduce(long[] a, long from, long to, int op) {
+        long size = to - from;
+        if (sequential(size)) {
+            return leafReduce(a, from, to, op);
+        }
+        return pool.invoke(new ReduceTask(a, from, to, op, grainFor(size)));
+    }
+
+    // a == null 时数据源是区间本身
+    private static long leafReduce(long[] a, long from, long to, int op) {
+        long acc;
+        switch (op) {
+            case SUM:
+                acc = 0;
+                if (a == null) {
+                    for (long i = from; i < to; i++) {
+                        acc += i;
+                    }
+                } else {
+                    for (int i = (int) from; i < to; i++) {
+                        acc += a[i];
+                    }
+                }
+                return acc;
+            case MIN:
+                acc = Long.MAX_VALUE;
+                for (int i = (int) from; i < to; i++) {
+                    acc = Math.min(acc, a[i]);
+                }
+                return acc;
+            case MAX:
+                acc = Long.MIN_VALUE;
+                for (int i = (int) from; i < to; i++) {
+                    acc = Math.max(acc, a[i]);
+                }
+                return acc;
+            default:
+                throw new IllegalArgumentException("unknown op " + op);
+        }
+    }
+
+    private static long combine(long x, long y, int op) {
+        switch (op) {
+            case SUM:
+                return x + y;
+            case MIN:
+                return Math.min(x, y);
+            default:
+                return Math.max(x, y);
+        }
+    }
+
+    private static final class ReduceTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] a;
+        private final long from;
+        private final long to;
+        private final int op;
+        private final long grain;
+
+        ReduceTask(long[] a, long from, long to, int op, long grain) {
+            this.a = a;
+            this.from = from;
+            this.to = to;
+            this.op = op;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= grain) {
+                return leafReduce(a, from, to, op);
+            }
+            // 区间可以是负数，不能用 (from + to) >>> 1
+            long mid = from + (to - from) / 2;
+            ReduceTask left = new ReduceTask(a, from, mid, op, grain);
+            left.fork();
+            long right = new ReduceTask(a, mid, to, op, grain).compute();
+            return combine(left.join(), right, op);
+        }
+    }
+
+    // ---- histogram ----
+
+    /**
+     * 把 [min, max) 等分成 buckets 个桶计数，区间外的值计入第一个/最后一个桶
+     */
+    public long[] histogram(long[] a, long min, long max, int buckets) {
+        if (buckets <= 0 || max <= min) {
+            throw new IllegalArgumentException("need buckets > 0 and max > min");
+        }
+        if (sequential(a.length)) {
+            return leafHistogram(a, 0, a.length, min, max, buckets);
+        }
+        return pool.invoke(new HistogramTask(a, 0, a.length, min, max, buckets, grainFor(a.length)));
+    }
+
+    private static long[] leafHistogram(long[] a, int from, int to, long min, long max, int buckets) {
+        long[] counts = new long[buckets];
+        double scale = (double) buckets / ((double) max - min);
+        for (int i = from; i < to; i++) {
+            long v = a[i];
+            if (v < min) {
+                counts[0]++;
+            } else if (v >= max) {
+                counts[buckets - 1]++;
+            } else {
+                // 先判断区间再相减，v - min 用 long 算会溢出（比如 max - min 超过 Long.MAX_VALUE）
+                int b = (int) (((double) v - min) * scale);
+                counts[b >= buckets ? buckets - 1 : b]++;
+            }
+        }
+        return counts;
+    }
+
+    private static final class HistogramTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] a;
+        private final int from;
+        private final int to;
+        private final long min;
+        private final long max;
+        private final int buckets;
+        private final long grain;
+
+        HistogramTask(long[] a, int from, int to, long min, long max, int buckets, long grain) {
+            this.a = a;
+            this.from = from;
+            this.to = to;
+            this.min = min;
+            this.max = max;
+            this.buckets = buckets;
+            this.grain = grain;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= grain) {
+                return leafHistogram(a, from, to, min, max, buckets);
+            }
+            int mid = (from + to) >>> 1;
+            HistogramTask left = new HistogramTask(a, from, mid, min, max, buckets, grain);
+            left.fork();
+            long[] right = new HistogramTask(a, mid, to, min, max, buckets, grain).compute();
+            long[] counts = left.join();
+            for (int i = 0; i < buckets; i++) {
+                counts[i] += right[i];
+            }
+            return counts;
+        }
+    }
+
+    // ---- prefix sum ----
+
+    /**
+     * 原地前缀和：a[i] = a[0] + ... + a[i]
+     * 并行版分三步：各块并行求和 -> 顺序算每块的起始偏移（块数很少）-> 各块并行加偏移做块内前缀和
+     */
+    public void prefixSum(long[] a) {
+        int n = a.length;
+        if (n == 0) {
+            return;
+        }
+        if (sequential(n)) {
+            leafPrefixSum(a, 0, n, 0);
+            return;
+        }
+        int block = (int) Math.min(grainFor(n), Integer.MAX_VALUE);
+        int blocks = (n + block - 1) / block;
+        long[] offsets = new long[blocks];
+        pool.invoke(new BlockTask(a, 0, blocks, block, offsets, false));
+        long running = 0;
+        for (int b = 0; b < blocks; b++) {
+            long blockSum = offsets[b];
+            offsets[b] = running;
+            running += blockSum;
+        }
+        pool.invoke(new BlockTask(a, 0, blocks, block, offsets, true));
+    }
+
+    private static void leafPrefixSum(long[] a, int from, int to, long offset) {
+        long acc = offset;
+        for (int i = from; i < to; i++) {
+            acc += a[i];
+            a[i] = acc;
+        }
+    }
+
+    /**
+     * 对 [fromBlock, toBlock) 这些块：scan=false 时把块和写进 offsets，scan=true 时按 offsets 做块内前缀和
+     */
+    private static final class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] a;
+        private final int fromBlock;
+        private final int toBlock;
+        private final int block;
+        private final long[] offsets;
+        private final boolean scan;
+
+        BlockTask(long[] a, int fromBlock, int toBlock, int block, long[] offsets, boolean scan) {
+            this.a = a;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+            this.block = block;
+            this.offsets = offsets;
+            this.scan = scan;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock <= fromBlock) {
+                return;
+            }
+            if (toBlock - fromBlock == 1) {
+                int from = fromBlock * block;
+                int to = (int) Math.min((long) from + block, a.length);
+                if (scan) {
+                    leafPrefixSum(a, from, to, offsets[fromBlock]);
+                } else {
+                    offsets[fromBlock] = leafReduce(a, from, to, SUM);
+                }
+                return;
+            }
+            int mid = (fromBlock + toBlock) >>> 1;
+            invokeAll(new BlockTask(a, fromBlock, mid, block, offsets, scan),
+                    new BlockTask(a, mid, toBlock, block, offsets, scan));
+        }
+    }
+}
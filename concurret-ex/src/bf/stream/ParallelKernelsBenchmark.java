@@ -0,0 +1,134 @@
+package bf.stream;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * 求和的分界点：n 从 1e3 到 1e8，对比
+ * 1. 装箱 Stream.iterate 顺序 / 并行（ParallelStreamDemo.sequenceSum / parallelSum，太慢，只测到 1e6）
+ * 2. LongStream 顺序 / 并行
+ * 3. ParallelKernels（区间求和、数组求和、前缀和）
+ * 每项先预热再取多次的中位数，单位 ns/元素
+ * args: [线程数，默认 CPU 核数] [grain，默认 0 自动]
+ */
+public class ParallelKernelsBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 9;
+
+    // 吃掉结果，不让 JIT 把计算优化掉
+    private static long sink;
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int grain = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ParallelKernels parallel = new ParallelKernels(pool, grain, 1 << 14);
+        ParallelKernels sequential = new ParallelKernels(pool, grain, Integer.MAX_VALUE);
+        System.out.printf("cpus=%d threads=%d grain=%s%n", Runtime.getRuntime().availableProcessors(), threads,
+                grain == 0 ? "auto" : grain);
+        check(new ParallelKernels(pool, grain, 0));
+        System.out.printf("%-28s %10s %10s %10s %10s %10s %10s%n", "ns/element", "1e3", "1e4", "1e5", "1e6", "1e7", "1e8");
+
+        long[] sizes = {1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+        row("boxed sequential", sizes, 1_000_000, n -> () -> ParallelStreamDemo.sequenceSum(n));
+        row("boxed parallel", sizes, 1_000_000, n -> () -> ParallelStreamDemo.parallelSum(n));
+        row("LongStream sequential", sizes, Long.MAX_VALUE, n -> () -> ParallelStreamDemo.sequenceSumV2(n));
+        row("LongStream parallel", sizes, Long.MAX_VALUE, n -> () -> ParallelStreamDemo.parallelSumV2(n));
+        row("kernels range sequential", sizes, Long.MAX_VALUE, n -> () -> sequential.sumRange(1, n));
+        row("kernels range parallel", sizes, Long.MAX_VALUE, n -> () -> parallel.sumRange(1, n));
+        // 数组版本到 1e7（1e8 个 long 要 800MB）
+        row("kernels array sequential", sizes, 10_000_000, n -> {
+            long[] a = randomArray(n);
+            return () -> sequential.sum(a);
+        });
+        row("kernels array parallel", sizes, 10_000_000, n -> {
+            long[] a = randomArray(n);
+            return () -> parallel.sum(a);
+        });
+        row("kernels prefixSum seq", sizes, 10_000_000, n -> {
+            long[] a = randomArray(n);
+            return () -> {
+                sequential.prefixSum(a);
+                return a[a.length - 1];
+            };
+        });
+        row("kernels prefixSum parallel", sizes, 10_000_000, n -> {
+            long[] a = randomArray(n);
+            return () -> {
+                parallel.prefixSum(a);
+                return a[a.length - 1];
+            };
+        });
+        pool.shutdown();
+        // 并行那一行的数字开始小于顺序那一行的列，就是分界点
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * 先校验结果：并行版（阈值 0，什么都走并行）和直接算的结果一样，包括空数组
+     */
+    private static void check(ParallelKernels kernels) {
+        for (int n : new int[]{0, 1, 5_000, 100_003}) {
+            long[] a = randomArray(n);
+            long[] expected = a.clone();
+            for (int i = 1; i < n; i++) {
+                expected[i] += expected[i - 1];
+            }
+            long sum = n == 0 ? 0 : expected[n - 1];
+            if (kernels.sum(a) != sum || kernels.sumRange(1, n) != (long) n * (n + 1) / 2
+                    || Arrays.stream(kernels.histogram(a, 0, 1000, 10)).sum() != n) {
+                throw new AssertionError("wrong result for n=" + n);
+            }
+            kernels.prefixSum(a);
+            if (!Arrays.equals(a, expected)) {
+                throw new AssertionError("wrong prefixSum for n=" + n);
+            }
+        }
+    }
+
+    interface Case {
+        LongSupplier prepare(int n);
+    }
+
+    private static long[] randomArray(int n) {
+        long[] a = new long[n];
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int i = 0; i < n; i++) {
+            a[i] = r.nextInt(1000);
+        }
+        return a;
+    }
+
+    private static void row(String name, long[] sizes, long maxSize, Case c) {
+        StringBuilder line = new StringBuilder(String.format("%-28s", name));
+        for (long n : sizes) {
+            if (n > maxSize) {
+                line.append(String.format(" %10s", "-"));
+                continue;
+            }
+            LongSupplier op = c.prepare((int) n);
+            line.append(String.format(" %10.3f", measure(op) / (double) n));
+        }
+        System.out.println(line);
+    }
+
+    // 中位数耗时 ns
+    private static long measure(LongSupplier op) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink += op.getAsLong();
+        }
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long st = System.nanoTime();
+            sink += op.getAsLong();
+            times[i] = System.nanoTime() - st;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+}
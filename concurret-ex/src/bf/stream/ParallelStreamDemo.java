@@ -24,7 +24,7 @@ public class ParallelStreamDemo {
      */
     public static long parallelSumV2(long n) {
         return LongStream.rangeClosed(0, n)
-
+                .parallel()
                 .reduce(0L, Long::sum);
     }
 
@@ -1,10 +1,5 @@
 package bf.test;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
-
 /**
  * 用代码进行压测
  * juc5个部分
@@ -29,6 +24,8 @@ import java.util.concurrent.Semaphore;
  * 2.缓存的最大空间，超过这个限制会触发空间清理
  * 2.清理策略：先进先出（对数据的实时性要求高）；lfu:数据使用的次数
  * ；lru（热点数据）；过期时间；随机
+ *
+ * 压测的线程池 + Semaphore + CountDownLatch 统一放到 LoadHarness 里了
  */
 public class ConcurrencyTest {
 
@@ -39,27 +36,12 @@ public class ConcurrencyTest {
     public static int count = 0;
 
     public static void main(String[] args) throws Throwable {
-        ExecutorService executorService = Executors.newCachedThreadPool();
-        // 控制同一时间的并发数
-        final Semaphore semaphore = new Semaphore(threadTotal);
-        //阻塞当前 thread
-        final CountDownLatch cdl = new CountDownLatch(clientTotal);
-        for (int i = 0; i < clientTotal; i++) {
-            executorService.execute(() -> {
-                try {
-                    // 判断当前 thread 是否可运行
-                    semaphore.acquire();
-                    add();
-                    semaphore.release();
-                } catch (Exception e) {
-
-                }
-                cdl.countDown();
-            });
-
-        }
-        cdl.await();
-        executorService.shutdown();
+        LoadHarness.Result result = LoadHarness.builder("count++", i -> add())
+                .threads(threadTotal)
+                .iterations(clientTotal)
+                .build()
+                .run();
+        System.out.println(result);
         System.out.println("count=" + count);
 
     }
@@ -0,0 +1,333 @@
+package bf.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import tool.atomic.stats.StripedHistogram;
+
+/**
+ * 通用的并发压测（代替 bf.test 里每个类都抄一遍的 newCachedThreadPool + Semaphore + CountDownLatch）：
+ * 1. 被测操作可以替换：Operation.run(i)
+ * 2. 并发线程数；按时长或者按总次数跑；先预热再计时
+ * 3. 延迟直方图：设了目标速率（targetRate）时，每次操作都有一个"本该开始"的时间，
+ * 延迟从那个时间算起，而不是从实际开始算起。前一个操作卡住了，后面排着的操作的等待时间也会算进去，
+ * 不会因为卡住的时候没有发请求就漏掉（coordinated omission）
+ * 4. 每个 reportInterval 的吞吐
+ * 5. 结果可以输出成 CSV 或 JSON
+ */
+public class LoadHarness {
+
+    /**
+     * 被测操作；抛异常算一次错误
+     * i：按次数跑时是全局的序号（0 ~ iterations-1，每个只出现一次），按时长跑时是这个线程内的序号
+     */
+    public interface Operation {
+        void run(long i) throws Exception;
+    }
+
+    private final String name;
+    private final Operation operation;
+    private final int threads;
+    private final long durationNanos;
+    private final long iterations;
+    private final long warmupNanos;
+    private final double targetRate;
+    private final long reportIntervalNanos;
+
+    private LoadHarness(Builder b) {
+        this.name = b.name;
+        this.operation = b.operation;
+        this.threads = b.threads;
+        this.durationNanos = b.durationNanos;
+        this.iterations = b.iterations;
+        this.warmupNanos = b.warmupNanos;
+        this.targetRate = b.targetRate;
+        this.reportIntervalNanos = b.reportIntervalNanos;
+    }
+
+    public static Builder builder(String name, Operation operation) {
+        return new Builder(name, operation);
+    }
+
+    public static final class Builder {
+        private final String name;
+        private final Operation operation;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private long durationNanos = TimeUnit.SECONDS.toNanos(5);
+        private long iterations;
+        private long warmupNanos;
+        private double targetRate;
+        private long reportIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+        private Builder(String name, Operation operation) {
+            this.name = name;
+            this.operation = operation;
+        }
+
+        public Builder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be > 0");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * 按时长跑（默认 5 秒）
+         */
+        public Builder duration(long duration, TimeUnit unit) {
+            this.durationNanos = unit.toNanos(duration);
+            this.iterations = 0;
+            return this;
+        }
+
+        /**
+         * 按总次数跑，所有线程一起分这么多次
+         */
+        public Builder iterations(long iterations) {
+            if (iterations <= 0) {
+                throw new IllegalArgumentException("iterations must be > 0");
+            }
+            this.iterations = iterations;
+            return this;
+        }
+
+        public Builder warmup(long warmup, TimeUnit unit) {
+            this.warmupNanos = unit.toNanos(warmup);
+            return this;
+        }
+
+        /**
+         * 所有线程加起来每秒多少次，0 表示不限速（每个线程做完一次马上做下一次）
+         */
+        public Builder targetRate(double opsPerSecond) {
+            // NaN、Infinity 也不行：写进 JSON 就不合法了
+            if (!(opsPerSecond >= 0) || Double.isInfinite(opsPerSecond)) {
+                throw new IllegalArgumentException("targetRate must be a finite number >= 0");
+            }
+            this.targetRate = opsPerSecond;
+            return this;
+        }
+
+        public Builder reportInterval(long interval, TimeUnit unit) {
+            long nanos = unit.toNanos(interval);
+            if (nanos <= 0) {
+                throw new IllegalArgumentException("reportInterval must be > 0");
+            }
+            this.reportIntervalNanos = nanos;
+            return this;
+        }
+
+        public LoadHarness build() {
+            return new LoadHarness(this);
+        }
+    }
+
+    public Result run() throws InterruptedException {
+        if (warmupNanos > 0) {
+            phase(warmupNanos, 0, false);
+        }
+        return phase(durationNanos, iterations, true);
+    }
+
+    private Result phase(long nanos, long totalIterations, boolean measure) throws InterruptedException {
+        StripedHistogram latency = new StripedHistogram();
+        StripedHistogram serviceTime = new StripedHistogram();
+        LongAdder ops = new LongAdder();
+        LongAdder errors = new LongAdder();
+        AtomicLong remaining = new AtomicLong(totalIterations);
+        // 每个线程的间隔：总速率平均分给每个线程
+        long intervalNanos = targetRate > 0 ? (long) (1e9 * threads / targetRate) : 0;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] times = new long[2];
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    done.countDown();
+                    return;
+                }
+                try {
+                    long begin = times[0];
+                    long deadline = times[1];
+                    long next = begin;
+                    for (long local = 0; ; local++) {
+                        long i = local;
+                        if (totalIterations > 0) {
+                            long ticket = remaining.getAndDecrement();
+                            if (ticket <= 0) {
+                                break;
+                            }
+                            i = totalIterations - ticket;
+                        } else if (System.nanoTime() >= deadline) {
+                            break;
+                        }
+                        long intended;
+                        if (intervalNanos > 0) {
+                            intended = next;
+                            next += intervalNanos;
+                            long wait = intended - System.nanoTime();
+                            if (wait > 0) {
+                                LockSupport.parkNanos(wait);
+                            }
+                        } else {
+                            intended = System.nanoTime();
+                        }
+                        long st = System.nanoTime();
+                        try {
+                            operation.run(i);
+                        } catch (Throwable e) {
+                            // Error（比如校验里的 AssertionError）也只算一次错误，不能让 worker 悄悄退出
+                            errors.increment();
+                        }
+                        long end = System.nanoTime();
+                        ops.increment();
+                        if (measure) {
+                            serviceTime.record(end - st);
+                            latency.record(end - intended);
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, name + "-load-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        times[0] = System.nanoTime();
+        times[1] = times[0] + nanos;
+        start.countDown();
+        List<Long> timeline = new ArrayList<>();
+        long last = 0;
+        while (!done.await(reportIntervalNanos, TimeUnit.NANOSECONDS)) {
+            long now = ops.sum();
+            timeline.add(now - last);
+            last = now;
+        }
+        long elapsed = System.nanoTime() - times[0];
+        timeline.add(ops.sum() - last);
+        return new Result(name, threads, targetRate, ops.sum(), errors.sum(), elapsed, latency.snapshot(),
+                serviceTime.snapshot(), TimeUnit.NANOSECONDS.toMillis(reportIntervalNanos), timeline);
+    }
+
+    public static final class Result {
+        private final String name;
+        private final int threads;
+        private final double targetRate;
+        private final long ops;
+        private final long errors;
+        private final long elapsedNanos;
+        private final StripedHistogram.Snapshot latency;
+        private final StripedHistogram.Snapshot serviceTime;
+        private final long intervalMillis;
+        private final List<Long> timeline;
+
+        Result(String name, int threads, double targetRate, long ops, long errors, long elapsedNanos,
+               StripedHistogram.Snapshot latency, StripedHistogram.Snapshot serviceTime, long intervalMillis,
+               List<Long> timeline) {
+            this.name = name;
+            this.threads = threads;
+            this.targetRate = targetRate;
+            this.ops = ops;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+            this.intervalMillis = intervalMillis;
+            this.timeline = Collections.unmodifiableList(timeline);
+        }
+
+        public long getOps() {
+            return ops;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getThroughput() {
+            return ops * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 从"本该开始"算起的延迟（纳秒）；不限速时和 serviceTime 一样
+         */
+        public StripedHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * 操作本身的耗时（纳秒）
+         */
+        public StripedHistogram.Snapshot getServiceTime() {
+            return serviceTime;
+        }
+
+        /**
+         * 每个 reportInterval 完成的次数
+         */
+        public List<Long> getTimeline() {
+            return timeline;
+        }
+
+        public static String csvHeader() {
+            return "name,threads,targetRate,ops,errors,elapsedMs,throughput,p50Us,p90Us,p99Us,p999Us,maxUs,serviceP99Us";
+        }
+
+        public String toCsvRow() {
+            return String.format(Locale.ROOT, "%s,%d,%.0f,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f", name, threads, targetRate,
+                    ops, errors, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getThroughput(),
+                    us(latency.percentile(0.5)), us(latency.percentile(0.9)), us(latency.percentile(0.99)),
+                    us(latency.percentile(0.999)), us(latency.percentile(1)), us(serviceTime.percentile(0.99)));
+        }
+
+        public String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append('{');
+            sb.append("\"name\":\"").append(name.replace("\\", "\\\\").replace("\"", "\\\"")).append("\",");
+            sb.append("\"threads\":").append(threads).append(',');
+            sb.append("\"targetRate\":").append(targetRate).append(',');
+            sb.append("\"ops\":").append(ops).append(',');
+            sb.append("\"errors\":").append(errors).append(',');
+            sb.append("\"elapsedMs\":").append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)).append(',');
+            sb.append("\"throughput\":").append(String.format(Locale.ROOT, "%.1f", getThroughput())).append(',');
+            sb.append("\"latencyUs\":");
+            appendPercentiles(sb, latency);
+            sb.append(",\"serviceTimeUs\":");
+            appendPercentiles(sb, serviceTime);
+            sb.append(",\"intervalMs\":").append(intervalMillis);
+            sb.append(",\"timeline\":").append(timeline.toString().replace(" ", ""));
+            sb.append('}');
+            return sb.toString();
+        }
+
+        private static void appendPercentiles(StringBuilder sb, StripedHistogram.Snapshot h) {
+            sb.append(String.format(Locale.ROOT, "{\"p50\":%.1f,\"p90\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f}",
+                    us(h.percentile(0.5)), us(h.percentile(0.9)), us(h.percentile(0.99)),
+                    us(h.percentile(0.999)), us(h.percentile(1))));
+        }
+
+        private static double us(long nanos) {
+            return nanos / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: threads=%d ops=%d errors=%d %.0f ops/s latency p50=%.1fus p99=%.1fus p999=%.1fus",
+                    name, threads, ops, errors, getThroughput(), us(latency.percentile(0.5)),
+                    us(latency.percentile(0.99)), us(latency.percentile(0.999)));
+        }
+    }
+}
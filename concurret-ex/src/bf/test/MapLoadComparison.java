@@ -0,0 +1,100 @@
+package bf.test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 用 LoadHarness 对比 HashMap / Collections.synchronizedMap / ConcurrentHashMap：
+ * 访问模式是读多写少、热点集中（80% 的访问落在 20% 的 key 上）
+ * HashMap 只是对照：多线程写它不安全，数据可能丢，甚至结构被破坏
+ * args: [线程数，默认 8] [每项秒数，默认 3] [读的比例，默认 0.9] [输出目录，不给就只打印]
+ */
+public class MapLoadComparison {
+
+    private static final int KEYS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        double readRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.9;
+        String outDir = args.length > 3 ? args[3] : null;
+
+        Map<String, Supplier<Map<Integer, Integer>>> maps = new LinkedHashMap<>();
+        maps.put("HashMap", HashMap::new);
+        maps.put("synchronizedMap", () -> Collections.synchronizedMap(new HashMap<>()));
+        maps.put("ConcurrentHashMap", ConcurrentHashMap::new);
+
+        List<LoadHarness.Result> results = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Map<Integer, Integer>>> e : maps.entrySet()) {
+            LoadHarness.Result unlimited = run(e.getKey(), e.getValue(), threads, seconds, readRatio, 0);
+            results.add(unlimited);
+            // 再限速到不限速吞吐的一半跑一遍：看有固定到达速率时的排队延迟
+            results.add(run(e.getKey() + "@50%", e.getValue(), threads, seconds, readRatio,
+                    unlimited.getThroughput() / 2));
+        }
+
+        System.out.println(LoadHarness.Result.csvHeader());
+        for (LoadHarness.Result r : results) {
+            System.out.println(r.toCsvRow());
+        }
+        if (outDir != null) {
+            try (PrintWriter csv = writer(outDir, "map-load.csv"); PrintWriter json = writer(outDir, "map-load.json")) {
+                csv.println(LoadHarness.Result.csvHeader());
+                json.println("[");
+                for (int i = 0; i < results.size(); i++) {
+                    csv.println(results.get(i).toCsvRow());
+                    json.println(results.get(i).toJson() + (i < results.size() - 1 ? "," : ""));
+                }
+                json.println("]");
+            }
+            System.out.println("written to " + outDir);
+        }
+    }
+
+    private static PrintWriter writer(String dir, String file) throws IOException {
+        Files.createDirectories(Paths.get(dir));
+        return new PrintWriter(Files.newBufferedWriter(Paths.get(dir, file), StandardCharsets.UTF_8));
+    }
+
+    private static LoadHarness.Result run(String name, Supplier<Map<Integer, Integer>> factory, int threads,
+                                          int seconds, double readRatio, double rate) throws InterruptedException {
+        Map<Integer, Integer> map = factory.get();
+        for (int i = 0; i < KEYS; i += 2) {
+            map.put(i, i);
+        }
+        LoadHarness.Result result = LoadHarness.builder(name, i -> {
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            int key = hotKey(r);
+            if (r.nextDouble() < readRatio) {
+                map.get(key);
+            } else {
+                map.put(key, key);
+            }
+        }).threads(threads)
+                .warmup(1, TimeUnit.SECONDS)
+                .duration(seconds, TimeUnit.SECONDS)
+                .targetRate(rate)
+                .build()
+                .run();
+        System.out.println(result + " size=" + map.size());
+        return result;
+    }
+
+    // 80% 落在前 20% 的 key 上
+    private static int hotKey(ThreadLocalRandom r) {
+        return r.nextInt(10) < 8 ? r.nextInt(KEYS / 5) : r.nextInt(KEYS);
+    }
+}
@@ -1,12 +1,10 @@
 package bf.test.atomic;
 
+import bf.test.LoadHarness;
+
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -22,26 +20,11 @@ public class ConcurrencyHashMapSynTest {
     static Map<Integer, Integer> map = Collections.synchronizedMap(new HashMap<>());
 
     public static void main(String[] args) throws Throwable {
-        ExecutorService executorService = Executors.newCachedThreadPool();
-        final Semaphore semaphore = new Semaphore(threadTotal);
-        final CountDownLatch cdl = new CountDownLatch(clientTotal);
-        for (int i = 0; i < clientTotal; i++) {
-            final int num = i;
-            executorService.execute(() -> {
-                try {
-                    // 判断当前 thread 是否可运行
-                    semaphore.acquire();
-                    add(num);
-                    semaphore.release();
-                } catch (Exception e) {
-
-                }
-                cdl.countDown();
-            });
-
-        }
-        cdl.await();
-        executorService.shutdown();
+        LoadHarness.builder("map.put", i -> add((int) i))
+                .threads(threadTotal)
+                .iterations(clientTotal)
+                .build()
+                .run();
         System.out.println("map len=" + map.size());
 
     }
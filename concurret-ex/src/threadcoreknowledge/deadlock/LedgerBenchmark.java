@@ -0,0 +1,115 @@
+package threadcoreknowledge.deadlock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MultiTransferMoney 的负载（500 个账户，随机转账）在 1/8/32/128 个线程下每秒的转账数：
+ * 1. 两把 synchronized 按账户下标排序加锁（TransferMoney 去掉 sleep 并修正加锁顺序后的样子）
+ * 2. StripedLedger：分段 StampedLock
+ * 3. PartitionedLedger：单写者分区 + 批量
+ * 每轮结束都检查总金额守恒
+ * args: [每轮时长 ms，默认 2000]
+ */
+public class LedgerBenchmark {
+
+    private static final int NUM_ACCOUNT = 500;
+    private static final int NUM_MONEY = 1000;
+    private static final int[] THREADS = {1, 8, 32, 128};
+
+    public static void main(String[] args) throws Exception {
+        long durationMs = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        long expectedTotal = (long) NUM_ACCOUNT * NUM_MONEY;
+
+        for (int threads : THREADS) {
+            TransferMoney.Account[] accounts = new TransferMoney.Account[NUM_ACCOUNT];
+            for (int i = 0; i < accounts.length; i++) {
+                accounts[i] = new TransferMoney.Account(NUM_MONEY);
+            }
+            long ops = run(threads, durationMs, (from, to, amount) -> orderedTransfer(accounts, from, to, amount));
+            long total = 0;
+            for (TransferMoney.Account account : accounts) {
+                total += account.balance;
+            }
+            check(total, expectedTotal);
+            report("ordered synchronized", threads, ops, durationMs);
+
+            StripedLedger striped = new StripedLedger(NUM_ACCOUNT, NUM_MONEY, 64);
+            ops = run(threads, durationMs, striped::transfer);
+            striped.checkConservation(expectedTotal);
+            report("striped StampedLock", threads, ops, durationMs);
+
+            int partitions = Math.max(1, Runtime.getRuntime().availableProcessors());
+            PartitionedLedger partitioned = new PartitionedLedger(NUM_ACCOUNT, NUM_MONEY, partitions, 256, 64 * 1024);
+            long start = System.nanoTime();
+            run(threads, durationMs, (from, to, amount) -> {
+                try {
+                    partitioned.submit(from, to, amount);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            });
+            partitioned.awaitQuiescence(1, TimeUnit.MINUTES);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            partitioned.checkConservation(expectedTotal);
+            report("partitioned single-writer", threads, partitioned.getCompleted(), elapsedMs);
+            partitioned.shutdown();
+        }
+    }
+
+    interface Transfer {
+        boolean transfer(int from, int to, long amount);
+    }
+
+    private static long run(int threads, long durationMs, Transfer transfer) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long local = 0;
+                while (System.nanoTime() < deadline) {
+                    transfer.transfer(rnd.nextInt(NUM_ACCOUNT), rnd.nextInt(NUM_ACCOUNT), rnd.nextInt(NUM_MONEY));
+                    local++;
+                }
+                ops.add(local);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum();
+    }
+
+    private static boolean orderedTransfer(TransferMoney.Account[] accounts, int from, int to, long amount) {
+        if (from == to) {
+            return true;
+        }
+        TransferMoney.Account first = accounts[Math.min(from, to)];
+        TransferMoney.Account second = accounts[Math.max(from, to)];
+        synchronized (first) {
+            synchronized (second) {
+                if (accounts[from].balance < amount) {
+                    return false;
+                }
+                accounts[from].balance -= amount;
+                accounts[to].balance += amount;
+                return true;
+            }
+        }
+    }
+
+    private static void check(long total, long expected) {
+        if (total != expected) {
+            throw new IllegalStateException("money is not conserved: expected " + expected + " but was " + total);
+        }
+    }
+
+    private static void report(String name, int threads, long ops, long millis) {
+        System.out.printf("%-28s threads:%-4d %,12.0f transfers/s%n", name, threads, ops * 1000.0 / Math.max(millis, 1));
+    }
+}
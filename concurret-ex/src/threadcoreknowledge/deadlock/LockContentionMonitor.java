@@ -0,0 +1,380 @@
+package threadcoreknowledge.deadlock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 后台的死锁和锁竞争监控：
+ * 1. 定期 findDeadlockedThreads（synchronized 和 ReentrantLock 等 j.u.c 锁都能发现）
+ * 2. 打开 ThreadContentionMonitoring，每次采样取所有线程的 blockedCount/blockedTime/waitedTime，
+ * 和上一次的差值记到线程当前等待的那把锁上：
+ * - BLOCKED：等 synchronized 的 monitor
+ * - WAITING/TIMED_WAITING 且锁有持有者：等 ReentrantLock 这类 AbstractOwnableSynchronizer
+ * 3. 竞争最激烈的 topN 把锁可以用 snapshot() 查，也注册成 JMX MBean
+ * <p>
+ * 开销：采样不取栈（getThreadInfo(ids, 0)），状态只在监控线程里读写，默认 5 秒一次，可以常开
+ */
+public class LockContentionMonitor implements LockContentionMonitorMBean, AutoCloseable {
+
+    public static final String OBJECT_NAME = "threadcoreknowledge:type=LockContentionMonitor";
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final long periodMillis;
+
+    private final int topN;
+
+    private final Consumer<Snapshot> deadlockListener;
+
+    private final ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> task;
+
+    private ObjectName registeredName;
+
+    // 下面的状态只有监控线程读写
+    private final Map<Long, long[]> lastThreadCounters = new HashMap<>();
+    private final Map<String, LockStats> lockStats = new HashMap<>();
+    private long samples;
+
+    // 给其他线程读的最新快照
+    private volatile Snapshot lastSnapshot = new Snapshot(0, 0, Collections.emptyList(), Collections.emptyList());
+
+    /**
+     * @param periodMillis     采样周期
+     * @param topN             快照里保留多少把锁
+     * @param deadlockListener 发现死锁时回调，可以为 null
+     */
+    public LockContentionMonitor(long periodMillis, int topN, Consumer<Snapshot> deadlockListener) {
+        this.periodMillis = periodMillis;
+        this.topN = topN;
+        this.deadlockListener = deadlockListener;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "lock-contention-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public LockContentionMonitor() {
+        this(5000, 10, null);
+    }
+
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        if (threadMXBean.isThreadContentionMonitoringSupported()) {
+            threadMXBean.setThreadContentionMonitoringEnabled(true);
+        }
+        task = scheduler.scheduleWithFixedDelay(this::sampleSafely, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册到平台 MBeanServer，jconsole 里能看到
+     */
+    public synchronized void registerMBean() throws Exception {
+        if (registeredName != null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+            registeredName = name;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (task != null) {
+            task.cancel(false);
+        }
+        scheduler.shutdownNow();
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (Exception e) {
+                // 已经注销了
+            }
+            registeredName = null;
+        }
+    }
+
+    public Snapshot snapshot() {
+        return lastSnapshot;
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            // 不能让一次失败把定时任务停掉
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 采一次样，更新快照
+     */
+    void sample() {
+        samples++;
+        // -1 死锁
+        long[] deadlocked = threadMXBean.findDeadlockedThreads();
+        List<String> deadlockedThreads = new ArrayList<>();
+        if (deadlocked != null) {
+            for (ThreadInfo info : threadMXBean.getThreadInfo(deadlocked, 0)) {
+                if (info != null) {
+                    deadlockedThreads.add(info.getThreadName() + " waiting for " + info.getLockName()
+                            + " held by " + info.getLockOwnerName());
+                }
+            }
+        }
+
+        // -2 竞争：各线程计数器的增量记到它正在等的锁上
+        boolean timed = threadMXBean.isThreadContentionMonitoringEnabled();
+        Set<Long> alive = new HashSet<>();
+        for (ThreadInfo info : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), 0)) {
+            if (info == null) {
+                continue;
+            }
+            long id = info.getThreadId();
+            alive.add(id);
+            long[] last = lastThreadCounters.get(id);
+            long blockedCount = info.getBlockedCount();
+            long blockedTime = timed ? info.getBlockedTime() : 0;
+            long waitedTime = timed ? info.getWaitedTime() : 0;
+            if (last == null) {
+                lastThreadCounters.put(id, new long[]{blockedCount, blockedTime, waitedTime});
+                continue;
+            }
+            String lockName = info.getLockName();
+            if (lockName != null) {
+                Thread.State state = info.getThreadState();
+                if (state == Thread.State.BLOCKED) {
+                    LockStats stats = statsOf(lockName, LockType.MONITOR);
+                    stats.blockedCount += Math.max(1, blockedCount - last[0]);
+                    stats.blockedTimeMillis += Math.max(0, blockedTime - last[1]);
+                    stats.sampledWaiters++;
+                    stats.lastOwner = info.getLockOwnerName();
+                } else if ((state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING)
+                        && info.getLockOwnerId() != -1) {
+                    // 有持有者的 park：ReentrantLock / ReentrantReadWriteLock 等
+                    // waitedTime 里还混着 sleep/wait 的时间，这里按采样估算：一次最多记一个周期
+                    LockStats stats = statsOf(lockName, LockType.SYNCHRONIZER);
+                    stats.blockedCount++;
+                    stats.blockedTimeMillis += Math.min(periodMillis, Math.max(0, waitedTime - last[2]));
+                    stats.sampledWaiters++;
+                    stats.lastOwner = info.getLockOwnerName();
+                }
+            }
+            last[0] = blockedCount;
+            last[1] = blockedTime;
+            last[2] = waitedTime;
+        }
+        lastThreadCounters.keySet().retainAll(alive);
+
+        // -3 topN
+        List<LockStats> all = new ArrayList<>(lockStats.values());
+        all.sort((a, b) -> Long.compare(b.blockedTimeMillis, a.blockedTimeMillis) != 0
+                ? Long.compare(b.blockedTimeMillis, a.blockedTimeMillis)
+                : Long.compare(b.blockedCount, a.blockedCount));
+        List<LockSnapshot> top = new ArrayList<>(Math.min(topN, all.size()));
+        for (int i = 0; i < all.size() && i < topN; i++) {
+            top.add(all.get(i).toSnapshot());
+        }
+        Snapshot snapshot = new Snapshot(System.currentTimeMillis(), samples,
+                Collections.unmodifiableList(deadlockedThreads), Collections.unmodifiableList(top));
+        lastSnapshot = snapshot;
+        if (!deadlockedThreads.isEmpty() && deadlockListener != null) {
+            deadlockListener.accept(snapshot);
+        }
+    }
+
+    private LockStats statsOf(String lockName, LockType type) {
+        LockStats stats = lockStats.get(lockName);
+        if (stats == null) {
+            // 锁对象太多时丢掉最不热的一半，避免无限增长
+            if (lockStats.size() >= 4096) {
+                evictColdest();
+            }
+            stats = new LockStats(lockName, type);
+            lockStats.put(lockName, stats);
+        }
+        return stats;
+    }
+
+    private void evictColdest() {
+        List<LockStats> all = new ArrayList<>(lockStats.values());
+        all.sort((a, b) -> Long.compare(a.blockedTimeMillis, b.blockedTimeMillis));
+        for (int i = 0; i < all.size() / 2; i++) {
+            lockStats.remove(all.get(i).lockName);
+        }
+    }
+
+    // ---- MBean
+
+    @Override
+    public long getSampleCount() {
+        return lastSnapshot.getSamples();
+    }
+
+    @Override
+    public int getDeadlockedThreadCount() {
+        return lastSnapshot.getDeadlockedThreads().size();
+    }
+
+    @Override
+    public String[] getDeadlockedThreads() {
+        return lastSnapshot.getDeadlockedThreads().toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getTopContendedLocks() {
+        List<LockSnapshot> top = lastSnapshot.getTopLocks();
+        String[] result = new String[top.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = top.get(i).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public void sampleNow() {
+        try {
+            scheduler.submit(this::sampleSafely).get();
+        } catch (Exception e) {
+            throw new IllegalStateException("sample failed", e);
+        }
+    }
+
+    public enum LockType {
+        // synchronized
+        MONITOR,
+        // ReentrantLock 等 j.u.c 锁
+        SYNCHRONIZER
+    }
+
+    private static final class LockStats {
+        final String lockName;
+        final LockType type;
+        long blockedCount;
+        long blockedTimeMillis;
+        long sampledWaiters;
+        String lastOwner;
+
+        LockStats(String lockName, LockType type) {
+            this.lockName = lockName;
+            this.type = type;
+        }
+
+        LockSnapshot toSnapshot() {
+            return new LockSnapshot(lockName, type, blockedCount, blockedTimeMillis, sampledWaiters, lastOwner);
+        }
+    }
+
+    /**
+     * 一把锁的竞争统计（从监控启动开始累计）
+     */
+    public static final class LockSnapshot {
+        private final String lockName;
+        private final LockType type;
+        private final long blockedCount;
+        private final long blockedTimeMillis;
+        private final long sampledWaiters;
+        private final String lastOwner;
+
+        LockSnapshot(String lockName, LockType type, long blockedCount, long blockedTimeMillis,
+                     long sampledWaiters, String lastOwner) {
+            this.lockName = lockName;
+            this.type = type;
+            this.blockedCount = blockedCount;
+            this.blockedTimeMillis = blockedTimeMillis;
+            this.sampledWaiters = sampledWaiters;
+            this.lastOwner = lastOwner;
+        }
+
+        public String getLockName() {
+            return lockName;
+        }
+
+        public LockType getType() {
+            return type;
+        }
+
+        public long getBlockedCount() {
+            return blockedCount;
+        }
+
+        public long getBlockedTimeMillis() {
+            return blockedTimeMillis;
+        }
+
+        // 采样时看到的等待线程数之和
+        public long getSampledWaiters() {
+            return sampledWaiters;
+        }
+
+        public String getLastOwner() {
+            return lastOwner;
+        }
+
+        @Override
+        public String toString() {
+            return lockName + " [" + type + "] blocked:" + blockedCount + " time:" + blockedTimeMillis
+                    + "ms waiters:" + sampledWaiters + " lastOwner:" + lastOwner;
+        }
+    }
+
+    /**
+     * 一次采样的结果，不可变
+     */
+    public static final class Snapshot {
+        private final long timestamp;
+        private final long samples;
+        private final List<String> deadlockedThreads;
+        private final List<LockSnapshot> topLocks;
+
+        Snapshot(long timestamp, long samples, List<String> deadlockedThreads, List<LockSnapshot> topLocks) {
+            this.timestamp = timestamp;
+            this.samples = samples;
+            this.deadlockedThreads = deadlockedThreads;
+            this.topLocks = topLocks;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public List<String> getDeadlockedThreads() {
+            return deadlockedThreads;
+        }
+
+        public List<LockSnapshot> getTopLocks() {
+            return topLocks;
+        }
+
+        public boolean hasDeadlock() {
+            return !deadlockedThreads.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package threadcoreknowledge.deadlock;
+
+/**
+ * LockContentionMonitor 的 JMX 接口
+ */
+public interface LockContentionMonitorMBean {
+
+    long getSampleCount();
+
+    int getDeadlockedThreadCount();
+
+    String[] getDeadlockedThreads();
+
+    String[] getTopContendedLocks();
+
+    /**
+     * 立即采样一次
+     */
+    void sampleNow();
+}
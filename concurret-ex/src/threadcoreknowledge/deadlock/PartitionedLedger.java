@@ -0,0 +1,210 @@
+package threadcoreknowledge.deadlock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单写者分区账本：
+ * 1. 账户按 account % partitions 分给各个分区，每个分区只有自己的线程读写自己的余额，不加锁
+ * 2. 转账异步提交到转出账户的分区：扣款成功后，把入账消息发给转入账户的分区
+ * 3. 分区线程一次取一批消息处理（batchSize），热点账户的转账在一个线程里串行、批量完成
+ * 4. 扣了款还没入账的钱记在 inFlight 里，守恒检查：所有余额 + inFlight = 总金额
+ */
+public class PartitionedLedger {
+
+    private static final int DEBIT = 0;
+    private static final int CREDIT = 1;
+
+    private final Partition[] partitions;
+
+    private final int batchSize;
+
+    // 已扣款未入账的金额
+    private final AtomicLong inFlight = new AtomicLong();
+
+    // 已提交未完成的转账数，用于等待处理完
+    private final AtomicLong pending = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    // 背压：最多这么多转账在途
+    private final Semaphore permits;
+
+    private volatile boolean running = true;
+
+    private static final class Op {
+        final int type;
+        final int from;
+        final int to;
+        final long amount;
+
+        Op(int type, int from, int to, long amount) {
+            this.type = type;
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+        }
+    }
+
+    private final class Partition implements Runnable {
+        final long[] balances;
+        final BlockingQueue<Op> queue = new LinkedBlockingQueue<>();
+        final Thread thread;
+
+        Partition(int index, int accounts, long initialBalance) {
+            balances = new long[accounts];
+            for (int i = 0; i < accounts; i++) {
+                balances[i] = initialBalance;
+            }
+            thread = new Thread(this, "ledger-partition-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Op> batch = new ArrayList<>(batchSize);
+            while (running) {
+                try {
+                    Op first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    for (Op op : batch) {
+                        apply(op);
+                    }
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void apply(Op op) {
+            if (op.type == CREDIT) {
+                balances[local(op.to)] += op.amount;
+                inFlight.addAndGet(-op.amount);
+                finish();
+                return;
+            }
+            int fromIndex = local(op.from);
+            if (balances[fromIndex] < op.amount) {
+                rejected.incrementAndGet();
+                finish();
+                return;
+            }
+            balances[fromIndex] -= op.amount;
+            Partition target = partitionOf(op.to);
+            if (target == this) {
+                balances[local(op.to)] += op.amount;
+                finish();
+            } else {
+                inFlight.addAndGet(op.amount);
+                target.queue.add(new Op(CREDIT, op.from, op.to, op.amount));
+            }
+        }
+    }
+
+    /**
+     * @param accounts       账户数
+     * @param initialBalance 初始余额
+     * @param partitions     分区数（线程数）
+     * @param batchSize      分区线程一次处理的最大消息数
+     * @param maxPending     在途转账上限
+     */
+    public PartitionedLedger(int accounts, long initialBalance, int partitions, int batchSize, int maxPending) {
+        this.batchSize = batchSize;
+        this.permits = new Semaphore(maxPending);
+        this.partitions = new Partition[partitions];
+        for (int p = 0; p < partitions; p++) {
+            // 分区 p 拥有 p, p + partitions, p + 2 * partitions ...
+            int owned = (accounts - p + partitions - 1) / partitions;
+            this.partitions[p] = new Partition(p, owned, initialBalance);
+        }
+        for (Partition partition : this.partitions) {
+            partition.thread.start();
+        }
+    }
+
+    private Partition partitionOf(int account) {
+        return partitions[account % partitions.length];
+    }
+
+    private int local(int account) {
+        return account / partitions.length;
+    }
+
+    private void finish() {
+        completed.incrementAndGet();
+        pending.decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * 异步转账，在途转账达到上限时阻塞
+     */
+    public void submit(int from, int to, long amount) throws InterruptedException {
+        if (amount < 0) {
+            throw new IllegalArgumentException("amount must not be negative: " + amount);
+        }
+        permits.acquire();
+        pending.incrementAndGet();
+        partitionOf(from).queue.add(new Op(DEBIT, from, to, amount));
+    }
+
+    /**
+     * 等所有已提交的转账处理完
+     */
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pending.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * 所有余额 + 在途金额，只在 awaitQuiescence 之后读才是精确的
+     */
+    public long totalBalance() {
+        long total = inFlight.get();
+        for (Partition partition : partitions) {
+            for (long balance : partition.balances) {
+                total += balance;
+            }
+        }
+        return total;
+    }
+
+    public void checkConservation(long expectedTotal) {
+        long total = totalBalance();
+        if (total != expectedTotal) {
+            throw new IllegalStateException("money is not conserved: expected " + expectedTotal + " but was " + total);
+        }
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Partition partition : partitions) {
+            partition.thread.interrupt();
+        }
+    }
+}
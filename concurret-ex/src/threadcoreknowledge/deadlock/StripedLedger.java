@@ -0,0 +1,123 @@
+package threadcoreknowledge.deadlock;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 分段锁账本：
+ * 1. 账户按下标映射到 StampedLock 分段，转账时按分段下标从小到大加锁，全局顺序一致，不会死锁
+ * 2. 查余额先乐观读，不阻塞转账
+ * 3. totalBalance 按顺序拿所有分段的读锁求和，用来检查总金额守恒
+ */
+public class StripedLedger {
+
+    private final long[] balances;
+
+    private final StampedLock[] locks;
+
+    private final int mask;
+
+    /**
+     * @param accounts       账户数
+     * @param initialBalance 每个账户的初始余额
+     * @param stripes        分段数，会向上取到 2 的幂
+     */
+    public StripedLedger(int accounts, long initialBalance, int stripes) {
+        this.balances = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            balances[i] = initialBalance;
+        }
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new StampedLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new StampedLock();
+        }
+        this.mask = size - 1;
+    }
+
+    private int stripe(int account) {
+        return account & mask;
+    }
+
+    /**
+     * @return 余额不足返回 false
+     */
+    public boolean transfer(int from, int to, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("amount must not be negative: " + amount);
+        }
+        if (from == to) {
+            return true;
+        }
+        int s1 = stripe(from);
+        int s2 = stripe(to);
+        int first = Math.min(s1, s2);
+        int second = Math.max(s1, s2);
+        // 全局顺序：先锁下标小的分段
+        long stamp1 = locks[first].writeLock();
+        long stamp2 = first == second ? 0L : locks[second].writeLock();
+        try {
+            if (balances[from] < amount) {
+                return false;
+            }
+            balances[from] -= amount;
+            balances[to] += amount;
+            return true;
+        } finally {
+            if (first != second) {
+                locks[second].unlockWrite(stamp2);
+            }
+            locks[first].unlockWrite(stamp1);
+        }
+    }
+
+    public long balance(int account) {
+        StampedLock lock = locks[stripe(account)];
+        long stamp = lock.tryOptimisticRead();
+        long balance = balances[account];
+        if (!lock.validate(stamp)) {
+            // 乐观读期间有写，退化为读锁
+            stamp = lock.readLock();
+            try {
+                balance = balances[account];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return balance;
+    }
+
+    /**
+     * 一致性快照下的总金额
+     */
+    public long totalBalance() {
+        long[] stamps = new long[locks.length];
+        for (int i = 0; i < locks.length; i++) {
+            stamps[i] = locks[i].readLock();
+        }
+        try {
+            long total = 0;
+            for (long balance : balances) {
+                total += balance;
+            }
+            return total;
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlockRead(stamps[i]);
+            }
+        }
+    }
+
+    /**
+     * 总金额守恒检查
+     */
+    public void checkConservation(long expectedTotal) {
+        long total = totalBalance();
+        if (total != expectedTotal) {
+            throw new IllegalStateException("money is not conserved: expected " + expectedTotal + " but was " + total);
+        }
+    }
+
+    public int accounts() {
+        return balances.length;
+    }
+}
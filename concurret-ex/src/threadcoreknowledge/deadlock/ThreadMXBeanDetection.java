@@ -1,11 +1,10 @@
 package threadcoreknowledge.deadlock;
 
-import java.lang.management.ManagementFactory;
-import java.lang.management.ThreadInfo;
-import java.lang.management.ThreadMXBean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 哟个写代码的方式检测死锁
+ * 一次性检查换成了后台的 LockContentionMonitor
  */
 public class ThreadMXBeanDetection implements Runnable {
 
@@ -23,9 +22,9 @@ public class ThreadMXBeanDetection implements Runnable {
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
-            }
-            synchronized (o2) {
-                System.out.println("1 get 2");
+                synchronized (o2) {
+                    System.out.println("1 get 2");
+                }
             }
         }
         if (flag == 0) {
@@ -35,38 +34,57 @@ public class ThreadMXBeanDetection implements Runnable {
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
-            }
-            synchronized (o1) {
-                System.out.println("2 get 1");
+                synchronized (o1) {
+                    System.out.println("2 get 1");
+                }
             }
         }
 
     }
 
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws Exception {
         ThreadMXBeanDetection r1 = new ThreadMXBeanDetection();
         ThreadMXBeanDetection r2 = new ThreadMXBeanDetection();
+        r2.flag = 0;
         Thread thread1 = new Thread(r1);
         Thread thread2 = new Thread(r2);
-        thread1.start();
-        thread2.start();
-
-        Thread.sleep(5000);//等他们死锁
-        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
-        long[] deadlockedThreads = threadMXBean.findDeadlockedThreads();
-
-        if (deadlockedThreads != null && deadlockedThreads.length > 0) {
-            for (long deadlockedThread : deadlockedThreads) {
-
-                ThreadInfo threadInfo = threadMXBean.getThreadInfo(deadlockedThread);
-                String threadName = threadInfo.getThreadName();
-
-                System.out.println("name: " + threadName);
-
 
+        // 后台监控：每秒采样一次，发现死锁就打印
+        LockContentionMonitor monitor = new LockContentionMonitor(1000, 5, snapshot -> {
+            for (String deadlockedThread : snapshot.getDeadlockedThreads()) {
+                System.out.println("deadlock: " + deadlockedThread);
             }
+        });
+        monitor.registerMBean();
+        monitor.start();
+
+        // 制造一把热的 ReentrantLock
+        ReentrantLock hot = new ReentrantLock();
+        for (int i = 0; i < 4; i++) {
+            Thread t = new Thread(() -> {
+                while (true) {
+                    hot.lock();
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        hot.unlock();
+                    }
+                }
+            }, "hot-lock-" + i);
+            t.setDaemon(true);
+            t.start();
         }
 
+        thread1.start();
+        thread2.start();
 
+        Thread.sleep(5000);//等他们死锁
+        for (LockContentionMonitor.LockSnapshot lock : monitor.snapshot().getTopLocks()) {
+            System.out.println("contended: " + lock);
+        }
+        monitor.close();
+        System.exit(0);
     }
 }
@@ -0,0 +1,247 @@
+package threadcoreknowledge.escapeanalysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import tool.atomic.stats.StripedHistogram;
+import tool.threadlocal.TimestampFormat;
+
+/**
+ * 逃逸分析回归测试：Test 里说的锁消除、标量替换，到底有没有生效
+ * 每个写法单线程跑到 JIT 编译完，再测每次操作分配多少字节（ThreadMXBean.getThreadAllocatedBytes）和耗时：
+ * 1. 对象没逃出方法：开了逃逸分析应该是 0 B/op（标量替换），锁也应该被消掉
+ * 2. 对象逃出去了（存到静态字段）：对照组，不管开没开都要分配
+ * 3. 项目里热路径上的写法（TimestampFormat、StripedHistogram、LongAdder）也放进来，改代码把它们弄得开始分配了能马上看到
+ * 标了"应为 0"的写法分配了就打 FAIL，进程以 1 退出，可以放到 CI 里
+ * --compare：再用 -XX:-DoEscapeAnalysis 启动一个子进程跑一遍，两列对比
+ * 没有用 JMH（项目没有构建工具）：-prof gc 的分配率用 ThreadMXBean 代替，预热靠多跑几轮
+ * args: [--compare] [每轮次数，默认 2000000]
+ */
+public class EscapeAnalysisBenchmark {
+
+    interface Pattern {
+        long run(int i);
+    }
+
+    private static final class Case {
+        final String name;
+        final boolean expectNoAllocation;
+        final Pattern pattern;
+
+        Case(String name, boolean expectNoAllocation, Pattern pattern) {
+            this.name = name;
+            this.expectNoAllocation = expectNoAllocation;
+            this.pattern = pattern;
+        }
+    }
+
+    private static final class Point {
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        int dot(Point o) {
+            return x * o.x + y * o.y;
+        }
+    }
+
+    // 逃逸的对照组
+    static Object escaped;
+
+    private static final Object SHARED_LOCK = new Object();
+
+    private static final StringBuilder TIMESTAMP = new StringBuilder(32);
+    private static final TimestampFormat FORMAT = TimestampFormat.millis(java.time.ZoneId.systemDefault());
+    private static final StripedHistogram HISTOGRAM = new StripedHistogram();
+    private static final LongAdder ADDER = new LongAdder();
+    private static final List<Integer> LIST = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            LIST.add(i);
+        }
+    }
+
+    private static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+        // Test.f()：锁一个局部对象
+        cases.add(new Case("synchronized(new Object())", true, i -> {
+            Object o = new Object();
+            synchronized (o) {
+                return i + 1;
+            }
+        }));
+        cases.add(new Case("synchronized(shared)", true, i -> {
+            synchronized (SHARED_LOCK) {
+                return i + 1;
+            }
+        }));
+        cases.add(new Case("new Point().dot()", true, i -> new Point(i, i + 1).dot(new Point(2, 3))));
+        cases.add(new Case("Integer boxing", true, i -> {
+            Integer a = i * 1000;
+            Integer b = a + 1;
+            return a.hashCode() + b.intValue();
+        }));
+        cases.add(new Case("for-each ArrayList", true, i -> {
+            long s = 0;
+            for (Integer v : LIST) {
+                s += v;
+            }
+            return s + i;
+        }));
+        cases.add(new Case("Optional chain", true, i -> Optional.of(i).map(v -> v + 1).orElse(0)));
+        cases.add(new Case("Objects.hash varargs", true, i -> Objects.hash(i, 1, 2)));
+        // Test.concatStr()：结果 String 本身逃逸，StringBuffer 的锁和内部数组能不能消掉看 JIT
+        cases.add(new Case("StringBuffer concat", false, i -> concatBuffer("a", i).length()));
+        cases.add(new Case("StringBuilder concat", false, i -> concatBuilder("a", i).length()));
+        cases.add(new Case("TimestampFormat -> StringBuilder", true, i -> {
+            TIMESTAMP.setLength(0);
+            FORMAT.format(1_600_000_000_000L + i, TIMESTAMP);
+            return TIMESTAMP.length();
+        }));
+        cases.add(new Case("StripedHistogram.record", true, i -> {
+            HISTOGRAM.record(i & 0xFFFF);
+            return i;
+        }));
+        cases.add(new Case("LongAdder.increment", true, i -> {
+            ADDER.increment();
+            return i;
+        }));
+        // 对照组：一定要分配，不是 16 B/op 左右说明测量有问题
+        cases.add(new Case("escape to static field", false, i -> {
+            Object o = new Object();
+            escaped = o;
+            return i;
+        }));
+        return cases;
+    }
+
+    private static String concatBuffer(String s1, int i) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(s1);
+        sb.append(i);
+        return sb.toString();
+    }
+
+    private static String concatBuilder(String s1, int i) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(s1);
+        sb.append(i);
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean compare = args.length > 0 && "--compare".equals(args[0]);
+        int iterations = Integer.parseInt(args.length > (compare ? 1 : 0) ? args[compare ? 1 : 0] : "2000000");
+
+        List<Case> cases = cases();
+        double[][] results = measure(cases, iterations);
+        List<String> withoutEa = compare ? runChild(iterations) : null;
+
+        System.out.printf("%-34s %12s %10s", "pattern", "bytes/op", "ns/op");
+        if (compare) {
+            System.out.printf(" | %12s %10s", "-EA bytes/op", "-EA ns/op");
+        }
+        System.out.println();
+        boolean failed = false;
+        for (int c = 0; c < cases.size(); c++) {
+            Case k = cases.get(c);
+            boolean fail = k.expectNoAllocation && results[c][0] >= 1;
+            failed |= fail;
+            System.out.printf("%-34s %12.1f %10.1f", k.name, results[c][0], results[c][1]);
+            if (compare) {
+                String[] other = withoutEa.get(c).split(",");
+                System.out.printf(" | %12.1f %10.1f", Double.parseDouble(other[1]), Double.parseDouble(other[2]));
+            }
+            System.out.println(fail ? "  FAIL: expected 0 bytes/op" : "");
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return 每个写法的 {bytes/op, ns/op}
+     */
+    private static double[][] measure(List<Case> cases, int iterations) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        double[][] results = new double[cases.size()][];
+        long sink = 0;
+        for (int c = 0; c < cases.size(); c++) {
+            Pattern p = cases.get(c).pattern;
+            // 预热：让 loop 和 lambda 都被 C2 编译
+            for (int round = 0; round < 5; round++) {
+                sink += loop(p, iterations);
+            }
+            // 取几轮里最好的一轮，排除 GC、编译线程的干扰
+            double bestBytes = Double.MAX_VALUE;
+            double bestNanos = Double.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long bytes = mx.getThreadAllocatedBytes(id);
+                long st = System.nanoTime();
+                sink += loop(p, iterations);
+                long nanos = System.nanoTime() - st;
+                bytes = mx.getThreadAllocatedBytes(id) - bytes;
+                bestBytes = Math.min(bestBytes, (double) bytes / iterations);
+                bestNanos = Math.min(bestNanos, (double) nanos / iterations);
+            }
+            results[c] = new double[]{bestBytes, bestNanos};
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        return results;
+    }
+
+    private static long loop(Pattern p, int iterations) {
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += p.run(i);
+        }
+        return sink;
+    }
+
+    // 子进程里只输出 "名字,bytes/op,ns/op"
+    private static List<String> runChild(int iterations) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-XX:-DoEscapeAnalysis", "-cp", System.getProperty("java.class.path"),
+                EscapeAnalysisBenchmark.class.getName() + "$Child", String.valueOf(iterations))
+                .redirectErrorStream(true)
+                .start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line; (line = r.readLine()) != null; ) {
+                lines.add(line);
+            }
+        }
+        if (process.waitFor() != 0 || lines.size() != cases().size()) {
+            throw new IllegalStateException("child run failed: " + lines);
+        }
+        return lines;
+    }
+
+    static final class Child {
+        public static void main(String[] args) {
+            List<Case> cases = cases();
+            double[][] results = measure(cases, Integer.parseInt(args[0]));
+            for (int c = 0; c < cases.size(); c++) {
+                // 父进程按 "," 拆、用 Double.parseDouble 读：不能跟着默认 locale 写成 "16,0"
+                System.out.printf(Locale.ROOT, "%s,%.1f,%.1f%n", cases.get(c).name, results[c][0], results[c][1]);
+            }
+        }
+    }
+}
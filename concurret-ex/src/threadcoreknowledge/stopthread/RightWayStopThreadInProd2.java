@@ -2,16 +2,18 @@ package threadcoreknowledge.stopthread;
 
 /**
  * 在 catch里面调用interrupt
+ * 恢复了中断标记，循环条件也要看它，不然标记恢复了也没人管，线程停不下来
  */
 public class RightWayStopThreadInProd2 implements Runnable {
 
 
     @Override
     public void run() {
-        while (true) {
+        while (!Thread.currentThread().isInterrupted()) {
             System.out.println("i");
             reInterrupt();
         }
+        System.out.println("interrupted, stop");
     }
 
     private void reInterrupt() {
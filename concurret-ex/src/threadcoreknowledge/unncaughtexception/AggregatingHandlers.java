@@ -0,0 +1,97 @@
+package threadcoreknowledge.unncaughtexception;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把 ErrorAggregator 接到两个地方：
+ * 1. 线程的 UncaughtExceptionHandler（MyUncaughtExHandler 的位置），可以接着调原来的 handler
+ * 2. 线程池的 afterExecute（ThreadPoolException 里那样）：execute 的任务异常在参数 t 里；
+ * submit 的任务异常被 FutureTask 吞进了 Future，不会到 t，要从 Future 里取出来，否则就"消失"了
+ * execute 的异常在 afterExecute 之后还会接着抛出去，把工作线程弄死，再走一遍线程的 UncaughtExceptionHandler；
+ * 线程池自己的线程上装了一个 handler，afterExecute 已经记过的那个异常就不再记一次
+ */
+public final class AggregatingHandlers {
+
+    private AggregatingHandlers() {
+    }
+
+    public static Thread.UncaughtExceptionHandler uncaught(ErrorAggregator aggregator,
+                                                           Thread.UncaughtExceptionHandler next) {
+        return (t, e) -> {
+            aggregator.record("uncaught", t, e);
+            if (next != null) {
+                next.uncaughtException(t, e);
+            }
+        };
+    }
+
+    /**
+     * 设成默认的 handler，原来的默认 handler 接在后面
+     */
+    public static void installDefault(ErrorAggregator aggregator) {
+        Thread.setDefaultUncaughtExceptionHandler(uncaught(aggregator, Thread.getDefaultUncaughtExceptionHandler()));
+    }
+
+    /**
+     * 任务异常都记到 aggregator 的线程池
+     */
+    public static class Executor extends ThreadPoolExecutor {
+        private final ErrorAggregator aggregator;
+        private final String name;
+        // execute 的任务在 afterExecute 里记过、接着还要抛出去弄死线程的那个异常；
+        // 只在这种情况下设，下一个任务开始前清掉，不让线程池的线程一直挂着一个异常（连同栈和 cause）
+        private final ThreadLocal<Throwable> recorded = new ThreadLocal<>();
+
+        public Executor(String name, int threads, BlockingQueue<Runnable> queue, ErrorAggregator aggregator) {
+            super(threads, threads, 0, TimeUnit.MILLISECONDS, queue);
+            this.name = name;
+            this.aggregator = aggregator;
+            AtomicInteger seq = new AtomicInteger();
+            setThreadFactory(r -> {
+                Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+                t.setUncaughtExceptionHandler((thread, e) -> {
+                    if (e != recorded.get()) {
+                        aggregator.record("uncaught", thread, e);
+                    }
+                });
+                return t;
+            });
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            recorded.remove();
+            super.beforeExecute(t, r);
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            super.afterExecute(r, t);
+            // t 不为空就是 execute 的任务抛出来的，afterExecute 之后会接着抛出去
+            boolean rethrown = t != null;
+            if (t == null && r instanceof Future<?> && ((Future<?>) r).isDone()) {
+                try {
+                    ((Future<?>) r).get();
+                } catch (CancellationException e) {
+                    // 取消不算错误
+                } catch (ExecutionException e) {
+                    t = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (t != null) {
+                aggregator.record("pool:" + name, Thread.currentThread(), t);
+                if (rethrown) {
+                    recorded.set(t);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package threadcoreknowledge.unncaughtexception;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import bf.aqs.throttle.TokenBucket;
+
+/**
+ * 异常聚合：同一种异常（异常类 + 栈顶几帧）只算一个指纹，计数而不是每次都打日志
+ * 1. 指纹：异常类名、栈顶 frames 帧的类名/方法名/行号、cause 的类名，用 String 缓存的 hashCode 混成一个 long，不拼字符串
+ * 2. 计数：ConcurrentHashMap<指纹, Entry>，Entry 里是 LongAdder，热点异常多线程同时计数不抢同一个变量；
+ * 指纹个数有上限，超了算到 overflow 里，map 不会被各种各样的异常撑爆
+ * 3. 采样：每个指纹一个令牌桶，每秒最多交给 Sink 几次，再加一个全局的桶；没拿到令牌的只计数，
+ * 下一次采样时带上"这期间又发生了几次"
+ * 所以每秒 10 万次同样的异常，也只是 10 万次计数 + 每秒几行日志
+ */
+public class ErrorAggregator {
+
+    /**
+     * 采样到的异常交给谁处理：打日志、发告警
+     */
+    public interface Sink {
+        void sample(Sample sample);
+    }
+
+    public static final class Sample {
+        private final long fingerprint;
+        private final String source;
+        private final String thread;
+        private final Throwable error;
+        private final long count;
+        private final long suppressed;
+
+        Sample(long fingerprint, String source, String thread, Throwable error, long count, long suppressed) {
+            this.fingerprint = fingerprint;
+            this.source = source;
+            this.thread = thread;
+            this.error = error;
+            this.count = count;
+            this.suppressed = suppressed;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * 这个指纹一共发生了几次
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * 上一次采样以来没有交给 Sink 的次数
+         */
+        public long getSuppressed() {
+            return suppressed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%016x] %s in %s (%s), total=%d, suppressed since last=%d", fingerprint, error,
+                    thread, source, count, suppressed);
+        }
+    }
+
+    private static final class Entry {
+        final LongAdder count = new LongAdder();
+        // 没被采样的次数，采样时清零
+        final AtomicLong suppressed = new AtomicLong();
+        final TokenBucket samples;
+        final Throwable first;
+        final String firstSource;
+        final long firstSeen = System.currentTimeMillis();
+        volatile long lastSeen;
+
+        Entry(TokenBucket samples, Throwable first, String firstSource) {
+            this.samples = samples;
+            this.first = first;
+            this.firstSource = firstSource;
+        }
+    }
+
+    private final int frames;
+    private final int maxFingerprints;
+    private final double samplesPerSecond;
+    private final TokenBucket globalSamples;
+    private final Sink sink;
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder total = new LongAdder();
+    private final LongAdder overflow = new LongAdder();
+
+    /**
+     * @param frames           指纹用栈顶几帧
+     * @param maxFingerprints  最多记多少种
+     * @param samplesPerSecond 每种异常每秒最多采样几次
+     * @param globalPerSecond  所有异常加起来每秒最多采样几次
+     */
+    public ErrorAggregator(int frames, int maxFingerprints, double samplesPerSecond, double globalPerSecond, Sink sink) {
+        this.frames = frames;
+        this.maxFingerprints = maxFingerprints;
+        this.samplesPerSecond = samplesPerSecond;
+        this.globalSamples = new TokenBucket(globalPerSecond, (int) Math.max(1, globalPerSecond));
+        this.sink = sink;
+    }
+
+    /**
+     * 默认：栈顶 5 帧，最多 1024 种，每种每秒 1 次，总共每秒 10 次，打到 java.util.logging
+     */
+    public ErrorAggregator() {
+        this(5, 1024, 1, 10, loggingSink(Logger.getLogger(ErrorAggregator.class.getName())));
+    }
+
+    public static Sink loggingSink(Logger logger) {
+        return s -> logger.log(Level.WARNING, s.toString(), s.getError());
+    }
+
+    public void record(String source, Thread thread, Throwable error) {
+        total.increment();
+        long fp = fingerprint(error, frames);
+        Entry e = entries.get(fp);
+        if (e == null) {
+            if (entries.size() >= maxFingerprints) {
+                overflow.increment();
+                return;
+            }
+            e = entries.computeIfAbsent(fp, k -> new Entry(
+                    new TokenBucket(samplesPerSecond, (int) Math.max(1, samplesPerSecond)), error, source));
+        }
+        e.count.increment();
+        long now = System.currentTimeMillis();
+        if (e.lastSeen != now) {
+            e.lastSeen = now;
+        }
+        if (e.samples.tryAcquire()) {
+            if (globalSamples.tryAcquire()) {
+                sink.sample(new Sample(fp, source, thread.getName(), error, e.count.sum(),
+                        e.suppressed.getAndSet(0)));
+                return;
+            }
+            // 全局的桶没过：这个指纹的令牌还回去，不然全局限流的时候它下一次也采不到
+            e.samples.refund(1);
+        }
+        e.suppressed.incrementAndGet();
+    }
+
+    /**
+     * 异常类 + 栈顶几帧 + cause 的类
+     */
+    static long fingerprint(Throwable error, int frames) {
+        long h = mix(error.getClass().getName().hashCode());
+        StackTraceElement[] stack = error.getStackTrace();
+        int n = Math.min(frames, stack.length);
+        for (int i = 0; i < n; i++) {
+            StackTraceElement f = stack[i];
+            h = h * 31 + mix(f.getClassName().hashCode());
+            h = h * 31 + mix(f.getMethodName().hashCode());
+            h = h * 31 + f.getLineNumber();
+        }
+        Throwable cause = error.getCause();
+        if (cause != null && cause != error) {
+            h = h * 31 + mix(cause.getClass().getName().hashCode());
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * 种类超过上限、没有单独计数的次数
+     */
+    public long getOverflow() {
+        return overflow.sum();
+    }
+
+    /**
+     * 按次数从多到少的前 n 种
+     */
+    public List<String> top(int n) {
+        List<Entry> list = new ArrayList<>(entries.values());
+        list.sort(Comparator.comparingLong((Entry e) -> e.count.sum()).reversed());
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < Math.min(n, list.size()); i++) {
+            Entry e = list.get(i);
+            StackTraceElement[] stack = e.first.getStackTrace();
+            lines.add(String.format("%,10d  %s at %s (%s) first=%tT last=%tT", e.count.sum(), e.first,
+                    stack.length > 0 ? stack[0] : "?", e.firstSource, e.firstSeen, e.lastSeen));
+        }
+        return lines;
+    }
+
+    public int fingerprints() {
+        return entries.size();
+    }
+}
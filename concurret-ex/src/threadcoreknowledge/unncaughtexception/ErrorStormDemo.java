@@ -0,0 +1,101 @@
+package threadcoreknowledge.unncaughtexception;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 1. 线程没捕获的异常、线程池里 execute / submit 的任务异常都进了 ErrorAggregator，没有一个"消失"
+ * 2. 异常风暴：4 个线程从 3 个地方一直抛异常并 record，看每秒能记多少次、每次 record 分配多少字节、
+ * 一共打了几行日志（Sink 只计数不输出）
+ * args: [风暴秒数，默认 3]
+ */
+public class ErrorStormDemo {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        hooks();
+        storm(seconds);
+    }
+
+    private static void hooks() throws InterruptedException {
+        ErrorAggregator aggregator = new ErrorAggregator(5, 1024, 1, 10, s -> System.out.println("  sample: " + s));
+        AggregatingHandlers.installDefault(aggregator);
+        for (int i = 0; i < 4; i++) {
+            Thread t = new Thread(() -> {
+                throw new IllegalStateException("boom");
+            }, "t" + i);
+            t.start();
+            t.join();
+        }
+        AggregatingHandlers.Executor pool = new AggregatingHandlers.Executor("orders", 2, new LinkedBlockingQueue<>(),
+                aggregator);
+        for (int i = 0; i < 5; i++) {
+            pool.execute(() -> {
+                throw new RuntimeException("execute failed");
+            });
+            // submit 的异常在 Future 里，不取就看不到
+            pool.submit(() -> Integer.parseInt("not a number"));
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.SECONDS);
+        System.out.println("hooks: total=" + aggregator.getTotal() + " fingerprints=" + aggregator.fingerprints());
+        aggregator.top(5).forEach(line -> System.out.println("  " + line));
+        Thread.setDefaultUncaughtExceptionHandler(null);
+    }
+
+    private static void storm(int seconds) throws InterruptedException {
+        LongAdder logged = new LongAdder();
+        ErrorAggregator aggregator = new ErrorAggregator(5, 1024, 1, 10, s -> logged.increment());
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int threads = 4;
+        LongAdder recordBytes = new LongAdder();
+        LongAdder recordCount = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                Thread me = Thread.currentThread();
+                long count = 0;
+                long bytes = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int k = 0; k < 100; k++) {
+                        Throwable e = site((int) (count + k) % 3);
+                        // 只算 record 自己的分配，不算业务代码 new 异常的分配
+                        long before = mx.getThreadAllocatedBytes(me.getId());
+                        aggregator.record("storm", me, e);
+                        bytes += mx.getThreadAllocatedBytes(me.getId()) - before;
+                    }
+                    count += 100;
+                }
+                recordBytes.add(bytes);
+                recordCount.add(count);
+                done.countDown();
+            }, "storm-" + i).start();
+        }
+        done.await();
+        long total = aggregator.getTotal();
+        System.out.printf("storm: %,d exceptions in %ds (%,.0f/s), %d fingerprints, %d samples logged, "
+                        + "record allocates %.1f bytes/op%n", total, seconds, total / (double) seconds,
+                aggregator.fingerprints(), logged.sum(), recordBytes.sum() / (double) recordCount.sum());
+        aggregator.top(3).forEach(line -> System.out.println("  " + line));
+    }
+
+    private static Throwable site(int which) {
+        try {
+            switch (which) {
+                case 0:
+                    return new IllegalArgumentException("bad input");
+                case 1:
+                    Object o = null;
+                    return new RuntimeException(o.toString());
+                default:
+                    throw new IllegalStateException("timeout", new java.io.IOException("reset"));
+            }
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
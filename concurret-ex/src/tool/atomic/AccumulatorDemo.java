@@ -2,6 +2,7 @@ package tool.atomic;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAccumulator;
 import java.util.function.LongBinaryOperator;
 import java.util.stream.IntStream;
@@ -20,8 +21,11 @@ public class AccumulatorDemo {
         IntStream.range(1, 10).forEach(i ->
                 e.submit(() -> longAccumulator.accumulate(i)));
         e.shutdown();
-        while (!e.isTerminated()) {
-
+        // 别用 while (!e.isTerminated()) 空转等，白白占一个核
+        try {
+            e.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
         System.out.println(longAccumulator.get());
     }
@@ -0,0 +1,130 @@
+package tool.atomic.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 指数衰减的速率（每秒次数），1 分钟 / 5 分钟 / 15 分钟三个窗口，和 uptime 里的 load average 一个意思：
+ * 1. mark 只往 LongAdder 里加，不碰共享变量
+ * 2. 每隔 tickInterval 把这段时间攒下的次数折算进三个平均值；谁先发现该 tick 了谁 CAS 抢到谁来算，
+ * 其他线程直接走，mark 不会等锁（平均值的读写在 rates 上加锁，只有 tick 的时候才可能碰上）
+ * 3. 读的时候也会先补上该 tick 的，读到的是最近一个 tick 的结果
+ */
+public class DecayingRate {
+
+    private static final long[] WINDOWS_SECONDS = {60, 300, 900};
+
+    private final long tickNanos;
+
+    private final double[] alphas = new double[WINDOWS_SECONDS.length];
+
+    // 每个窗口的平均值（每纳秒次数）
+    private final double[] rates = new double[WINDOWS_SECONDS.length];
+
+    // 第一次 tick 之前还没有平均值，直接用那次的瞬时速率；和 rates 一样由 rates 的锁保护
+    private boolean initialized;
+
+    private final LongAdder uncounted = new LongAdder();
+
+    private final LongAdder count = new LongAdder();
+
+    private final long startNanos;
+
+    private final AtomicLong lastTick;
+
+    public DecayingRate() {
+        this(5, TimeUnit.SECONDS);
+    }
+
+    public DecayingRate(long tickInterval, TimeUnit unit) {
+        this.tickNanos = unit.toNanos(tickInterval);
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tickInterval must be > 0");
+        }
+        for (int i = 0; i < WINDOWS_SECONDS.length; i++) {
+            alphas[i] = 1 - Math.exp(-(double) tickNanos / TimeUnit.SECONDS.toNanos(WINDOWS_SECONDS[i]));
+        }
+        this.startNanos = System.nanoTime();
+        this.lastTick = new AtomicLong(startNanos);
+    }
+
+    public void mark() {
+        mark(1);
+    }
+
+    public void mark(long n) {
+        tickIfNecessary();
+        uncounted.add(n);
+        count.add(n);
+    }
+
+    private void tickIfNecessary() {
+        long old = lastTick.get();
+        long now = System.nanoTime();
+        long age = now - old;
+        if (age < tickNanos) {
+            return;
+        }
+        long newTick = now - age % tickNanos;
+        if (lastTick.compareAndSet(old, newTick)) {
+            long ticks = age / tickNanos;
+            synchronized (rates) {
+                // 第一个 tick 用攒下的次数，后面空着的 tick 按 0 次衰减
+                tick(uncounted.sumThenReset());
+                for (long i = 1; i < ticks; i++) {
+                    tick(0);
+                }
+            }
+        }
+    }
+
+    private void tick(long events) {
+        double instant = (double) events / tickNanos;
+        for (int i = 0; i < rates.length; i++) {
+            if (initialized) {
+                rates[i] += alphas[i] * (instant - rates[i]);
+            } else {
+                rates[i] = instant;
+            }
+        }
+        initialized = true;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getOneMinuteRate() {
+        return rate(0);
+    }
+
+    public double getFiveMinuteRate() {
+        return rate(1);
+    }
+
+    public double getFifteenMinuteRate() {
+        return rate(2);
+    }
+
+    /**
+     * 从创建到现在的平均速率
+     */
+    public double getMeanRate() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : getCount() * 1e9 / elapsed;
+    }
+
+    private double rate(int window) {
+        tickIfNecessary();
+        synchronized (rates) {
+            return rates[window] * TimeUnit.SECONDS.toNanos(1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f/s 1m=%.1f/s 5m=%.1f/s 15m=%.1f/s", getCount(), getMeanRate(),
+                getOneMinuteRate(), getFiveMinuteRate(), getFifteenMinuteRate());
+    }
+}
@@ -0,0 +1,251 @@
+package tool.atomic.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 近似的 top-K（出现次数最多的 key），Space-Saving 算法：
+ * 1. 每段一个容量为 capacity 的计数表；满了以后新 key 顶替计数最小的那个，并继承它的计数作为误差上界
+ * 2. 每段一把锁，线程按 id 固定落在一段上，所以锁基本不竞争
+ * 3. 快照时把各段合并：计数相加；某段没有这个 key 而且那段已经满了，就把那段的最小计数加到误差里
+ * 4. 每段的计数按 Stream-Summary 组织：计数相同的 key 挂在同一个桶上，桶按计数从小到大串成链表，
+ * 最小计数就是第一个桶，顶替时不用扫描整张表；加 1 时只会移到下一个桶，加 n 时往后走到计数合适的位置
+ * 真实次数在 [count - error, count] 之间；出现次数超过 总数 / capacity 的 key 一定在结果里
+ */
+public class HeavyHitters<K> {
+
+    private static final class Counter<K> {
+        // 被顶替时换成新的 key
+        K key;
+        long error;
+        Bucket<K> bucket;
+        // 同一个桶里的前后
+        Counter<K> prev;
+        Counter<K> next;
+
+        Counter(K key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Bucket<K> {
+        final long count;
+        // prev 计数更小，next 计数更大
+        Bucket<K> prev;
+        Bucket<K> next;
+        Counter<K> head;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    private static final class Stripe<K> {
+        final Map<K, Counter<K>> counters = new HashMap<>();
+
+        // 计数最小的桶
+        Bucket<K> min;
+
+        long minCount() {
+            return min == null ? 0 : min.count;
+        }
+
+        // 把 c 挂到计数为 count 的桶上，从 from 之后开始找（from 为 null 表示从头找）
+        void link(Counter<K> c, long count, Bucket<K> from) {
+            Bucket<K> at = from;
+            Bucket<K> b = from == null ? min : from.next;
+            while (b != null && b.count <= count) {
+                at = b;
+                b = b.next;
+            }
+            if (at == null || at.count != count) {
+                Bucket<K> created = new Bucket<>(count);
+                created.prev = at;
+                created.next = b;
+                if (b != null) {
+                    b.prev = created;
+                }
+                if (at == null) {
+                    min = created;
+                } else {
+                    at.next = created;
+                }
+                at = created;
+            }
+            c.bucket = at;
+            c.prev = null;
+            c.next = at.head;
+            if (at.head != null) {
+                at.head.prev = c;
+            }
+            at.head = c;
+        }
+
+        void increment(Counter<K> c, long n) {
+            Bucket<K> old = c.bucket;
+            // 先挂到新桶再摘旧桶：从旧桶往后找，旧桶空了也还在链表上
+            detach(c);
+            link(c, old.count + n, old);
+            if (old.head == null) {
+                removeBucket(old);
+            }
+        }
+
+        private void detach(Counter<K> c) {
+            Bucket<K> b = c.bucket;
+            if (c.prev != null) {
+                c.prev.next = c.next;
+            } else {
+                b.head = c.next;
+            }
+            if (c.next != null) {
+                c.next.prev = c.prev;
+            }
+        }
+
+        private void removeBucket(Bucket<K> b) {
+            if (b.prev != null) {
+                b.prev.next = b.next;
+            } else {
+                min = b.next;
+            }
+            if (b.next != null) {
+                b.next.prev = b.prev;
+            }
+        }
+    }
+
+    private final Stripe<K>[] stripes;
+
+    private final int mask;
+
+    private final int capacity;
+
+    public HeavyHitters(int capacity) {
+        this(capacity, Striped.defaultStripes());
+    }
+
+    @SuppressWarnings("unchecked")
+    public HeavyHitters(int capacity, int stripes) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        int n = Striped.sizeFor(stripes);
+        this.stripes = (Stripe<K>[]) new Stripe<?>[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+        this.mask = n - 1;
+        this.capacity = capacity;
+    }
+
+    public void add(K key) {
+        add(key, 1);
+    }
+
+    public void add(K key, long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must be >= 0");
+        }
+        Stripe<K> s = stripes[Striped.index(mask)];
+        synchronized (s) {
+            Counter<K> c = s.counters.get(key);
+            if (c != null) {
+                s.increment(c, n);
+                return;
+            }
+            if (s.counters.size() < capacity) {
+                c = new Counter<>(key);
+                s.counters.put(key, c);
+                s.link(c, n, null);
+                return;
+            }
+            // 顶替计数最小的那个：第一个桶里随便哪个
+            Counter<K> victim = s.min.head;
+            s.counters.remove(victim.key);
+            victim.key = key;
+            victim.error = victim.bucket.count;
+            s.counters.put(key, victim);
+            s.increment(victim, n);
+        }
+    }
+
+    public static final class Entry<K> {
+        private final K key;
+        private final long count;
+        private final long error;
+
+        Entry(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        // 估计值，不会低于真实次数
+        public long getCount() {
+            return count;
+        }
+
+        // 最多高估了多少
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count + (error == 0 ? "" : "(error " + error + ")");
+        }
+    }
+
+    /**
+     * 次数最多的 k 个，从多到少
+     */
+    public List<Entry<K>> top(int k) {
+        Map<K, long[]> merged = new HashMap<>();
+        long[] stripeMin = new long[stripes.length];
+        List<Map<K, long[]>> copies = new ArrayList<>(stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe<K> s = stripes[i];
+            // {count, error}
+            Map<K, long[]> copy = new HashMap<>();
+            synchronized (s) {
+                for (Counter<K> c : s.counters.values()) {
+                    copy.put(c.key, new long[]{c.bucket.count, c.error});
+                }
+                stripeMin[i] = s.counters.size() < capacity ? 0 : s.minCount();
+            }
+            copies.add(copy);
+        }
+        for (Map<K, long[]> copy : copies) {
+            for (K key : copy.keySet()) {
+                merged.putIfAbsent(key, new long[2]);
+            }
+        }
+        for (Map.Entry<K, long[]> e : merged.entrySet()) {
+            long[] ce = e.getValue();
+            for (int i = 0; i < copies.size(); i++) {
+                long[] c = copies.get(i).get(e.getKey());
+                if (c != null) {
+                    ce[0] += c[0];
+                    ce[1] += c[1];
+                } else {
+                    // 这一段可能见过它但被顶掉了，最多少算了那段的最小计数
+                    ce[0] += stripeMin[i];
+                    ce[1] += stripeMin[i];
+                }
+            }
+        }
+        List<Entry<K>> entries = new ArrayList<>(merged.size());
+        for (Map.Entry<K, long[]> e : merged.entrySet()) {
+            entries.add(new Entry<>(e.getKey(), e.getValue()[0], e.getValue()[1]));
+        }
+        entries.sort((a, b) -> Long.compare(b.count, a.count));
+        return entries.size() > k ? new ArrayList<>(entries.subList(0, k)) : entries;
+    }
+}
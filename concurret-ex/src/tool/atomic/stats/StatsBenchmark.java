@@ -0,0 +1,82 @@
+package tool.atomic.stats;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * 写吞吐对比（AdderDemo 的扩展），1/4/16/64 个线程同时写：
+ * AtomicLong、LongAdder 作为基线，对比 StripedStats / StripedHistogram / DecayingRate / HeavyHitters
+ * 最后打印一次各自的快照，顺便看读出来的结果对不对
+ * args: [每项毫秒数，默认 1000]
+ */
+public class StatsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        AtomicLong atomic = new AtomicLong();
+        LongAdder adder = new LongAdder();
+        StripedStats stats = new StripedStats();
+        StripedHistogram histogram = new StripedHistogram();
+        DecayingRate rate = new DecayingRate();
+        HeavyHitters<Long> hitters = new HeavyHitters<>(64);
+
+        System.out.printf("cpus=%d, ops/s%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-18s %14s %14s %14s %14s%n", "", "1 thread", "4 threads", "16 threads", "64 threads");
+        int[] threadCounts = {1, 4, 16, 64};
+        row("AtomicLong", threadCounts, millis, v -> atomic.incrementAndGet());
+        row("LongAdder", threadCounts, millis, v -> adder.increment());
+        row("StripedStats", threadCounts, millis, stats::record);
+        row("StripedHistogram", threadCounts, millis, histogram::record);
+        row("DecayingRate", threadCounts, millis, v -> rate.mark());
+        // key 服从偏斜分布：小的数出现得多
+        row("HeavyHitters", threadCounts, millis, v -> hitters.add(Long.numberOfLeadingZeros(v) * 1000L + v % 7));
+
+        System.out.println("stats:     " + stats.snapshot());
+        System.out.println("histogram: " + histogram.snapshot());
+        System.out.println("rate:      " + rate);
+        System.out.println("top 5:     " + hitters.top(5));
+    }
+
+    private static void row(String name, int[] threadCounts, long millis, LongConsumer op) throws InterruptedException {
+        StringBuilder line = new StringBuilder(String.format("%-18s", name));
+        for (int threads : threadCounts) {
+            line.append(String.format(" %,14.0f", run(threads, millis, op)));
+        }
+        System.out.println(line);
+    }
+
+    private static double run(int threads, long millis, LongConsumer op) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] deadline = new long[1];
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    start.await();
+                    while (System.nanoTime() < deadline[0]) {
+                        for (int k = 0; k < 256; k++) {
+                            // 1 ~ 2^20 的指数分布
+                            op.accept(r.nextLong(1L << r.nextInt(1, 21)));
+                        }
+                        count += 256;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                ops.add(count);
+                done.countDown();
+            }).start();
+        }
+        long st = System.nanoTime();
+        deadline[0] = st + millis * 1_000_000;
+        start.countDown();
+        done.await();
+        return ops.sum() * 1e9 / (System.nanoTime() - st);
+    }
+}
@@ -0,0 +1,45 @@
+package tool.atomic.stats;
+
+/**
+ * 分段的公共部分：段数取 2 的幂，线程按 id 散列到固定的段上
+ * 同一个线程总是写同一段，线程数不超过段数时基本没有竞争
+ */
+final class Striped {
+
+    private Striped() {
+    }
+
+    /**
+     * 默认段数：CPU 核数的两倍，至少 8 段（核少线程多时散列冲突也不至于太多），向上取 2 的幂，最多 64
+     */
+    static int defaultStripes() {
+        return sizeFor(Math.max(8, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    /**
+     * 自旋等待：先忙等一会儿，还不行就让出 CPU（持有者可能被调度走了，核少的时候一直忙等只会更慢）
+     */
+    static void backoff(int spins) {
+        if (spins < 64) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    static int sizeFor(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be > 0");
+        }
+        int n = Integer.highestOneBit(Math.min(stripes, 64));
+        return n < stripes && n < 64 ? n << 1 : n;
+    }
+
+    /**
+     * 当前线程的段下标，mask = 段数 - 1
+     */
+    static int index(int mask) {
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,152 @@
+package tool.atomic.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段直方图（延迟、大小之类的非负值）：
+ * 1. 对数-线性分桶：每个 2 的幂区间再等分 16 份，相对误差不超过 1/16
+ * 2. 每段一个 AtomicLongArray，写只碰当前线程那一段
+ * 3. snapshot 把各段加起来，得到一份不再变化的计数，再算分位数
+ */
+public class StripedHistogram {
+
+    // 每个 2 的幂区间分成 2^SUB_BITS 个桶
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // 最大指数 62（Long.MAX_VALUE 的最高位）
+    static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray[] stripes;
+
+    private final int mask;
+
+    public StripedHistogram() {
+        this(Striped.defaultStripes());
+    }
+
+    public StripedHistogram(int stripes) {
+        int n = Striped.sizeFor(stripes);
+        this.stripes = new AtomicLongArray[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        this.mask = n - 1;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * 桶的下界（包含）
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exp = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        return (1L << exp) | (sub << (exp - SUB_BITS));
+    }
+
+    /**
+     * 桶的上界（包含）
+     */
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative value: " + value);
+        }
+        stripes[Striped.index(mask)].getAndIncrement(bucketOf(value));
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long t = 0;
+            for (long c : counts) {
+                t += c;
+            }
+            this.total = t;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /**
+         * q 分位数（0 ~ 1），返回所在桶的上界，所以只会高估不会低估
+         */
+        public long percentile(double q) {
+            if (q < 0 || q > 1) {
+                throw new IllegalArgumentException("q must be in [0, 1]: " + q);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        /**
+         * 按桶中点估算的平均值
+         */
+        public double mean() {
+            if (total == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    sum += counts[i] * (lowerBound(i) / 2.0 + upperBound(i) / 2.0);
+                }
+            }
+            return sum / total;
+        }
+
+        /**
+         * 合并另一份快照（比如多个实例、多个时间窗口）
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p999=%d max=%d", total, mean(),
+                    percentile(0.5), percentile(0.9), percentile(0.99), percentile(0.999), percentile(1));
+        }
+    }
+}
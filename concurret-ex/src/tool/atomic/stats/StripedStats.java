@@ -0,0 +1,153 @@
+package tool.atomic.stats;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 分段的 count / sum / min / max：
+ * 分别用 LongAdder + 两个 LongAccumulator 的话，读的时候可能看到 count 加了、sum 还没加的中间状态；
+ * 这里每段是一个顺序锁（seqlock）：
+ * - 写：CAS 把 seq 从偶数改成奇数，改四个字段，再把 seq 加到下一个偶数（同一段基本只有一个线程写，CAS 几乎不失败）
+ * - 读：seq 是偶数且读前读后没变，说明读到的四个字段是同一时刻的；变了就重读
+ * 所以每条记录在快照里要么四个字段都算上，要么都不算
+ */
+public class StripedStats {
+
+    // 前后填充，每段独占缓存行（用继承是因为 JVM 会重排同一个类里的字段）
+    static class StripeLhsPadding {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    static class StripeFields extends StripeLhsPadding {
+        volatile long seq;
+        long count;
+        long sum;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+    }
+
+    static final class Stripe extends StripeFields {
+        long p9, p10, p11, p12, p13, p14, p15;
+    }
+
+    private static final VarHandle SEQ;
+
+    static {
+        try {
+            SEQ = MethodHandles.lookup().findVarHandle(StripeFields.class, "seq", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Stripe[] stripes;
+
+    private final int mask;
+
+    public StripedStats() {
+        this(Striped.defaultStripes());
+    }
+
+    public StripedStats(int stripes) {
+        int n = Striped.sizeFor(stripes);
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = n - 1;
+    }
+
+    public void record(long value) {
+        Stripe s = stripes[Striped.index(mask)];
+        long seq;
+        for (int spins = 0; ; spins++) {
+            seq = (long) SEQ.getOpaque(s);
+            if ((seq & 1) == 0 && SEQ.compareAndSet(s, seq, seq + 1)) {
+                break;
+            }
+            // 和另一个线程散列到了同一段
+            Striped.backoff(spins);
+        }
+        s.count++;
+        s.sum += value;
+        if (value < s.min) {
+            s.min = value;
+        }
+        if (value > s.max) {
+            s.max = value;
+        }
+        SEQ.setRelease(s, seq + 2);
+    }
+
+    public Snapshot snapshot() {
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Stripe s : stripes) {
+            for (int spins = 0; ; spins++) {
+                long before = (long) SEQ.getAcquire(s);
+                if ((before & 1) != 0) {
+                    Striped.backoff(spins);
+                    continue;
+                }
+                long c = s.count;
+                long su = s.sum;
+                long mi = s.min;
+                long ma = s.max;
+                // 保证上面四个读不会被排到下面读 seq 之后
+                VarHandle.acquireFence();
+                if ((long) SEQ.getOpaque(s) == before) {
+                    count += c;
+                    sum += su;
+                    min = Math.min(min, mi);
+                    max = Math.max(max, ma);
+                    break;
+                }
+            }
+        }
+        return new Snapshot(count, sum, min, max);
+    }
+
+    public static final class Snapshot {
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        Snapshot(long count, long sum, long min, long max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        // 没有记录时是 Long.MAX_VALUE
+        public long getMin() {
+            return min;
+        }
+
+        // 没有记录时是 Long.MIN_VALUE
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        @Override
+        public String toString() {
+            return count == 0 ? "count=0"
+                    : String.format("count=%d sum=%d min=%d max=%d mean=%.2f", count, sum, min, max, getMean());
+        }
+    }
+}
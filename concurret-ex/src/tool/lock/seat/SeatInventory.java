@@ -0,0 +1,419 @@
+package tool.lock.seat;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 座位库存（代替 SeatBook 的一把全局 ReentrantLock 和 SeatBookReadWrite 的一把全局读写锁）：
+ * 1. 每个区（section）一个位图，一位一个座位，1 表示已占（锁定或已售），放在 AtomicLongArray 里，
+ * 查单个座位直接读，不加锁
+ * 2. 区内按 64 个座位一组分段，每段一把 StampedLock；改位图只在段的写锁里改，不同段、不同区互不影响
+ * 3. 一次锁定多个座位：按段号从小到大拿涉及的写锁（不会死锁），全部空闲才一起置位，要么全成功要么全不动
+ * 4. 统计空座、找连座用乐观读：不加锁读一遍，stamp 还有效就用，被改过了再退化成读锁
+ * 5. 锁定有超时：过期没确认的由后台线程释放；confirm 和过期释放用 Hold 的状态 CAS 决出唯一的赢家，
+ * 过期释放只会 HELD -> RELEASED，已确认的座位只有显式 release（退票）才会放出来
+ */
+public class SeatInventory implements AutoCloseable {
+
+    private static final int HELD = 0;
+    private static final int BOOKED = 1;
+    private static final int RELEASED = 2;
+
+    private final Section[] sections;
+
+    private final ScheduledExecutorService reaper;
+
+    /**
+     * @param stripesPerSection 每个区的锁的个数，取 2 的幂；座位按 64 个一组轮流分到各把锁上
+     */
+    public SeatInventory(int sections, int seatsPerSection, int stripesPerSection) {
+        if (sections <= 0 || seatsPerSection <= 0 || stripesPerSection <= 0) {
+            throw new IllegalArgumentException("sections, seatsPerSection and stripesPerSection must be > 0");
+        }
+        int stripes = Integer.highestOneBit(stripesPerSection);
+        this.sections = new Section[sections];
+        for (int i = 0; i < sections; i++) {
+            this.sections[i] = new Section(seatsPerSection, stripes);
+        }
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "seat-hold-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleWithFixedDelay(this::expireHolds, 100, 100, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class Section {
+        final int seats;
+        final AtomicLongArray taken;
+        final StampedLock[] locks;
+        final int stripeMask;
+        // 没确认的锁定，按区分开放，避免所有线程挤一个 map 和一个计数器
+        final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+        final AtomicLong holdIds = new AtomicLong();
+
+        Section(int seats, int stripes) {
+            this.seats = seats;
+            this.taken = new AtomicLongArray((seats + 63) >>> 6);
+            int n = Math.min(stripes, taken.length());
+            n = Integer.highestOneBit(n);
+            this.locks = new StampedLock[n];
+            for (int i = 0; i < n; i++) {
+                locks[i] = new StampedLock();
+            }
+            this.stripeMask = n - 1;
+        }
+
+        int stripeOfWord(int word) {
+            return word & stripeMask;
+        }
+    }
+
+    /**
+     * 一次锁定
+     */
+    public static final class Hold {
+        private final long id;
+        private final int section;
+        private final int[] seats;
+        private final long expiresAt;
+        private final AtomicInteger state = new AtomicInteger(HELD);
+
+        Hold(long id, int section, int[] seats, long expiresAt) {
+            this.id = id;
+            this.section = section;
+            this.seats = seats;
+            this.expiresAt = expiresAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getSection() {
+            return section;
+        }
+
+        public int[] getSeats() {
+            return seats.clone();
+        }
+
+        public boolean isBooked() {
+            return state.get() == BOOKED;
+        }
+
+        @Override
+        public String toString() {
+            return "Hold#" + id + " section=" + section + " seats=" + Arrays.toString(seats)
+                    + " state=" + (state.get() == HELD ? "HELD" : state.get() == BOOKED ? "BOOKED" : "RELEASED");
+        }
+    }
+
+    private Section section(int section) {
+        if (section < 0 || section >= sections.length) {
+            throw new IllegalArgumentException("no such section: " + section);
+        }
+        return sections[section];
+    }
+
+    /**
+     * 不加锁
+     */
+    public boolean isAvailable(int section, int seat) {
+        Section s = section(section);
+        checkSeat(s, seat);
+        return (s.taken.get(seat >>> 6) & (1L << seat)) == 0;
+    }
+
+    private static void checkSeat(Section s, int seat) {
+        if (seat < 0 || seat >= s.seats) {
+            throw new IllegalArgumentException("no such seat: " + seat);
+        }
+    }
+
+    /**
+     * 空座数，各段用乐观读，读到的是某一时刻的一致结果（不会数到一半锁定的多座）
+     */
+    public int availableCount(int section) {
+        Section s = section(section);
+        long[] words = snapshot(s);
+        int taken = 0;
+        for (long w : words) {
+            taken += Long.bitCount(w);
+        }
+        return s.seats - taken;
+    }
+
+    /**
+     * 所有段的位图在同一时刻的样子：先乐观读，失败了按段号顺序拿读锁再读一次
+     */
+    private static long[] snapshot(Section s) {
+        StampedLock[] locks = s.locks;
+        long[] stamps = new long[locks.length];
+        long[] words = new long[s.taken.length()];
+        boolean valid = true;
+        for (int i = 0; i < locks.length; i++) {
+            stamps[i] = locks[i].tryOptimisticRead();
+            valid &= stamps[i] != 0;
+        }
+        if (valid) {
+            for (int w = 0; w < words.length; w++) {
+                words[w] = s.taken.get(w);
+            }
+            for (int i = 0; i < locks.length && valid; i++) {
+                valid = locks[i].validate(stamps[i]);
+            }
+            if (valid) {
+                return words;
+            }
+        }
+        for (int i = 0; i < locks.length; i++) {
+            stamps[i] = locks[i].readLock();
+        }
+        try {
+            for (int w = 0; w < words.length; w++) {
+                words[w] = s.taken.get(w);
+            }
+            return words;
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlockRead(stamps[i]);
+            }
+        }
+    }
+
+    /**
+     * 锁定这些座位，timeout 内不 confirm 就自动释放；有任何一个已被占就返回 null，一个都不锁
+     */
+    public Hold hold(int section, int[] seats, long timeout, TimeUnit unit) {
+        Section s = section(section);
+        if (seats.length == 0) {
+            throw new IllegalArgumentException("no seats");
+        }
+        int[] sorted = seats.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            checkSeat(s, sorted[i]);
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("duplicate seat: " + sorted[i]);
+            }
+        }
+        Footprint f = new Footprint(s, sorted);
+        long[] stamps = f.lock();
+        try {
+            for (int i = 0; i < f.masks.length; i++) {
+                if ((s.taken.get(f.firstWord + i) & f.masks[i]) != 0) {
+                    return null;
+                }
+            }
+            for (int i = 0; i < f.masks.length; i++) {
+                if (f.masks[i] != 0) {
+                    int w = f.firstWord + i;
+                    // 只有持有这一段写锁的线程会改这个字，直接 set 就行
+                    s.taken.set(w, s.taken.get(w) | f.masks[i]);
+                }
+            }
+        } finally {
+            f.unlock(stamps);
+        }
+        // id 的高位是区号
+        long id = ((long) section << 40) | s.holdIds.incrementAndGet();
+        Hold hold = new Hold(id, section, sorted, System.nanoTime() + unit.toNanos(timeout));
+        s.holds.put(id, hold);
+        return hold;
+    }
+
+    /**
+     * 在这个区里找 n 个相邻的空座并锁定；没有就返回 null
+     * 找的时候用快照，锁的时候可能已经被别人抢了，换下一处再试
+     */
+    public Hold holdAdjacent(int section, int n, long timeout, TimeUnit unit) {
+        Section s = section(section);
+        if (n <= 0 || n > s.seats) {
+            throw new IllegalArgumentException("bad seat count: " + n);
+        }
+        for (int attempt = 0; attempt < 8; attempt++) {
+            long[] words = snapshot(s);
+            int start = findRun(words, s.seats, n, attempt == 0 ? 0 : ThreadLocalRandom.current().nextInt(s.seats));
+            if (start < 0) {
+                return null;
+            }
+            int[] seats = new int[n];
+            for (int i = 0; i < n; i++) {
+                seats[i] = start + i;
+            }
+            Hold hold = hold(section, seats, timeout, unit);
+            if (hold != null) {
+                return hold;
+            }
+        }
+        return null;
+    }
+
+    // 从 from 开始找 n 个连续的 0 位，返回起点；到区尾后再从 0 找，空座段不跨过区尾
+    private static int findRun(long[] words, int seats, int n, int from) {
+        int start = findRunIn(words, n, from, seats);
+        // 回头扫到 from + n - 1：跨过 from 的空座段在第一段里只看到了后半截
+        return start >= 0 ? start : findRunIn(words, n, 0, Math.min(seats, from + n - 1));
+    }
+
+    // 在 [begin, end) 里找 n 个连续的 0 位
+    private static int findRunIn(long[] words, int n, int begin, int end) {
+        int run = 0;
+        for (int seat = begin; seat < end; seat++) {
+            if ((words[seat >>> 6] & (1L << seat)) == 0) {
+                if (++run == n) {
+                    return seat - n + 1;
+                }
+            } else {
+                run = 0;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 确认锁定（付款成功），已经过期或已释放返回 false；已经确认过的再调返回 true，不改变任何状态
+     */
+    public boolean confirm(Hold hold) {
+        if (hold.state.get() == BOOKED) {
+            return true;
+        }
+        if (System.nanoTime() - hold.expiresAt >= 0) {
+            expire(hold);
+            return false;
+        }
+        if (hold.state.compareAndSet(HELD, BOOKED)) {
+            sections[hold.section].holds.remove(hold.id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 释放锁定，或者退掉已确认的座位；重复调用没有影响
+     */
+    public boolean release(Hold hold) {
+        for (;;) {
+            int state = hold.state.get();
+            if (state == RELEASED) {
+                return false;
+            }
+            // 失败说明刚被 confirm 或过期释放改了状态，按新状态再来
+            if (hold.state.compareAndSet(state, RELEASED)) {
+                freeSeats(hold);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 过期释放：只处理还没确认的，和 confirm 并发时 CAS 只有一个能成功
+     */
+    private boolean expire(Hold hold) {
+        if (!hold.state.compareAndSet(HELD, RELEASED)) {
+            return false;
+        }
+        freeSeats(hold);
+        return true;
+    }
+
+    private void freeSeats(Hold hold) {
+        Section s = sections[hold.section];
+        s.holds.remove(hold.id);
+        Footprint f = new Footprint(s, hold.seats);
+        long[] stamps = f.lock();
+        try {
+            for (int i = 0; i < f.masks.length; i++) {
+                if (f.masks[i] != 0) {
+                    int w = f.firstWord + i;
+                    s.taken.set(w, s.taken.get(w) & ~f.masks[i]);
+                }
+            }
+        } finally {
+            f.unlock(stamps);
+        }
+    }
+
+    /**
+     * 一组（已排序的）座位落在哪些字上、每个字要改哪些位、要拿哪几把锁
+     */
+    private static final class Footprint {
+        final Section section;
+        final int firstWord;
+        final long[] masks;
+        final boolean[] stripes;
+
+        Footprint(Section section, int[] sorted) {
+            this.section = section;
+            this.firstWord = sorted[0] >>> 6;
+            this.masks = new long[(sorted[sorted.length - 1] >>> 6) - firstWord + 1];
+            for (int seat : sorted) {
+                masks[(seat >>> 6) - firstWord] |= 1L << seat;
+            }
+            this.stripes = new boolean[section.locks.length];
+            for (int i = 0; i < masks.length; i++) {
+                if (masks[i] != 0) {
+                    stripes[section.stripeOfWord(firstWord + i)] = true;
+                }
+            }
+        }
+
+        // 按段号从小到大加锁，所有线程顺序一致，不会死锁
+        long[] lock() {
+            long[] stamps = new long[stripes.length];
+            for (int i = 0; i < stripes.length; i++) {
+                if (stripes[i]) {
+                    stamps[i] = section.locks[i].writeLock();
+                }
+            }
+            return stamps;
+        }
+
+        void unlock(long[] stamps) {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                if (stripes[i]) {
+                    section.locks[i].unlockWrite(stamps[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 释放所有过期的锁定，返回释放了几个；后台线程每 100ms 调一次
+     */
+    public int expireHolds() {
+        long now = System.nanoTime();
+        int expired = 0;
+        for (Section s : sections) {
+            for (Hold hold : s.holds.values()) {
+                if (now - hold.expiresAt >= 0 && expire(hold)) {
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    public int pendingHolds() {
+        int n = 0;
+        for (Section s : sections) {
+            n += s.holds.size();
+        }
+        return n;
+    }
+
+    @Override
+    public void close() {
+        reaper.shutdownNow();
+    }
+}
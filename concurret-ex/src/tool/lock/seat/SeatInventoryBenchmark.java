@@ -0,0 +1,172 @@
+package tool.lock.seat;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import bf.test.LoadHarness;
+
+/**
+ * 订票吞吐对比，1/4/16/64 个线程：
+ * 基线是 SeatBook 的做法（一把全局 ReentrantLock 管所有区的所有座位），去掉了里面的 sleep
+ * 每次操作：随机一个区，80% 是订票（锁定 1~4 个相邻座位 -> 确认 -> 退票，让座位一直有空），20% 是查空座数
+ * 用 LoadHarness 跑，除了吞吐还有每次操作的延迟
+ * args: [每项毫秒数，默认 1000]
+ */
+public class SeatInventoryBenchmark {
+
+    private static final int SECTIONS = 16;
+    private static final int SEATS = 1024;
+
+    interface Booking {
+        // 锁定、确认、退票，锁定失败返回 false
+        boolean book(int section, int[] seats);
+
+        int available(int section);
+    }
+
+    /**
+     * SeatBook 的做法：一把全局锁
+     */
+    static final class GlobalLockBooking implements Booking {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final boolean[][] taken = new boolean[SECTIONS][SEATS];
+
+        @Override
+        public boolean book(int section, int[] seats) {
+            lock.lock();
+            try {
+                for (int seat : seats) {
+                    if (taken[section][seat]) {
+                        return false;
+                    }
+                }
+                for (int seat : seats) {
+                    taken[section][seat] = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // 确认
+            lock.lock();
+            try {
+                taken[section][seats[0]] = true;
+            } finally {
+                lock.unlock();
+            }
+            lock.lock();
+            try {
+                for (int seat : seats) {
+                    taken[section][seat] = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+            return true;
+        }
+
+        @Override
+        public int available(int section) {
+            lock.lock();
+            try {
+                int n = 0;
+                for (boolean t : taken[section]) {
+                    if (!t) {
+                        n++;
+                    }
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static final class InventoryBooking implements Booking {
+        private final SeatInventory inventory = new SeatInventory(SECTIONS, SEATS, 8);
+
+        @Override
+        public boolean book(int section, int[] seats) {
+            SeatInventory.Hold hold = inventory.hold(section, seats, 1, TimeUnit.MINUTES);
+            if (hold == null) {
+                return false;
+            }
+            inventory.confirm(hold);
+            inventory.release(hold);
+            return true;
+        }
+
+        @Override
+        public int available(int section) {
+            return inventory.availableCount(section);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        demo();
+
+        System.out.printf("cpus=%d, bookings/s and p99 latency(us) per operation%n",
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-14s %21s %21s %21s %21s%n", "", "1 thread", "4 threads", "16 threads", "64 threads");
+        int[] threadCounts = {1, 4, 16, 64};
+        row("global lock", threadCounts, millis, new GlobalLockBooking());
+        InventoryBooking inventory = new InventoryBooking();
+        row("SeatInventory", threadCounts, millis, inventory);
+        inventory.inventory.close();
+    }
+
+    private static void demo() throws InterruptedException {
+        try (SeatInventory inventory = new SeatInventory(2, 100, 4)) {
+            SeatInventory.Hold a = inventory.holdAdjacent(0, 4, 1, TimeUnit.MINUTES);
+            SeatInventory.Hold b = inventory.hold(0, new int[]{2, 50}, 1, TimeUnit.MINUTES);
+            System.out.println("hold 4 adjacent: " + a);
+            System.out.println("overlapping hold: " + b);
+            System.out.println("confirm: " + inventory.confirm(a) + ", available=" + inventory.availableCount(0));
+            SeatInventory.Hold c = inventory.hold(0, new int[]{10, 11}, 150, TimeUnit.MILLISECONDS);
+            System.out.println("short hold: " + c + ", available=" + inventory.availableCount(0));
+            Thread.sleep(400);
+            System.out.println("after expiry: " + c + ", available=" + inventory.availableCount(0)
+                    + ", confirm=" + inventory.confirm(c));
+        }
+    }
+
+    private static void row(String name, int[] threadCounts, long millis, Booking booking) throws InterruptedException {
+        StringBuilder line = new StringBuilder(String.format("%-14s", name));
+        for (int threads : threadCounts) {
+            LongAdder bookings = new LongAdder();
+            LoadHarness.Result result = run(threads, millis, booking, bookings);
+            // 吞吐按操作数算，这里只要订票成功的那部分
+            double bookingsPerSecond = result.getOps() == 0 ? 0
+                    : result.getThroughput() * bookings.sum() / result.getOps();
+            line.append(String.format(Locale.ROOT, " %,12.0f %8.1f", bookingsPerSecond,
+                    result.getLatency().percentile(0.99) / 1000.0));
+        }
+        System.out.println(line);
+    }
+
+    private static LoadHarness.Result run(int threads, long millis, Booking booking, LongAdder bookings)
+            throws InterruptedException {
+        return LoadHarness.builder("seats", i -> {
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            int section = r.nextInt(SECTIONS);
+            if (r.nextInt(5) == 0) {
+                booking.available(section);
+                return;
+            }
+            int[] seats = new int[1 + r.nextInt(4)];
+            int first = r.nextInt(SEATS - seats.length);
+            for (int j = 0; j < seats.length; j++) {
+                seats[j] = first + j;
+            }
+            if (booking.book(section, seats)) {
+                bookings.increment();
+            }
+        }).threads(threads)
+                .duration(millis, TimeUnit.MILLISECONDS)
+                .build()
+                .run();
+    }
+}
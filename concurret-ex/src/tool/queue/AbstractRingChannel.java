@@ -0,0 +1,84 @@
+package tool.queue;
+
+import java.util.function.Consumer;
+
+/**
+ * 环形数组通道的公共部分：容量取 2 的幂，下标用 seq & mask；数组创建时一次分配好
+ */
+public abstract class AbstractRingChannel<E> implements Channel<E> {
+
+    protected final Object[] buffer;
+
+    protected final int mask;
+
+    // 下一个要写的序号
+    protected final PaddedSequence tail = new PaddedSequence(0);
+
+    // 下一个要读的序号
+    protected final PaddedSequence head = new PaddedSequence(0);
+
+    protected final WaitStrategy waitStrategy;
+
+    protected AbstractRingChannel(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(e)) {
+            waitStrategy.idle(attempt++);
+        }
+        waitStrategy.signalAll();
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int attempt = 0;
+        E e;
+        while ((e = poll()) == null) {
+            waitStrategy.idle(attempt++);
+        }
+        waitStrategy.signalAll();
+        return e;
+    }
+
+    @Override
+    public int drainTo(Consumer<? super E> consumer, int maxElements) {
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            consumer.accept(e);
+            n++;
+        }
+        if (n > 0) {
+            waitStrategy.signalAll();
+        }
+        return n;
+    }
+
+    @Override
+    public int size() {
+        // 先读 head 再读 tail，结果不会是负数；并发时只是近似值
+        long h = head.get();
+        long t = tail.get();
+        return (int) Math.max(0, Math.min(t - h, buffer.length));
+    }
+
+    @Override
+    public int capacity() {
+        return buffer.length;
+    }
+
+    protected static void checkNotNull(Object e) {
+        if (e == null) {
+            throw new NullPointerException("null elements are not allowed");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package tool.queue;
+
+import java.util.function.Consumer;
+
+/**
+ * 有界的生产者-消费者通道
+ * offer/poll 不等待；put/take 满了/空了按 WaitStrategy 等待
+ */
+public interface Channel<E> {
+
+    /**
+     * @return 满了返回 false
+     */
+    boolean offer(E e);
+
+    /**
+     * @return 空了返回 null
+     */
+    E poll();
+
+    void put(E e) throws InterruptedException;
+
+    E take() throws InterruptedException;
+
+    /**
+     * 批量取，最多 maxElements 个
+     *
+     * @return 取到的个数
+     */
+    int drainTo(Consumer<? super E> consumer, int maxElements);
+
+    int size();
+
+    int capacity();
+}
@@ -0,0 +1,165 @@
+package tool.queue;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 吞吐对比（每秒传递的消息数）：
+ * 1. wait/notify + LinkedList（ProducerConsumerModel 里 EventStorage 的写法，去掉打印）
+ * 2. ArrayBlockingQueue
+ * 3. Channel：SPSC/MPSC/MPMC × 各种 WaitStrategy，消费者用 drainTo 批量取
+ * 场景：1P1C、4P1C、4P4C
+ * args: [每轮消息数，默认 2000000] [容量，默认 1024]
+ */
+public class ChannelBenchmark {
+
+    private static final Integer ITEM = 1;
+
+    interface Queue {
+        void put(Integer e) throws InterruptedException;
+
+        // 返回取到的个数
+        int takeSome() throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int[][] shapes = {{1, 1}, {4, 1}, {4, 4}};
+        for (int[] shape : shapes) {
+            int producers = shape[0];
+            int consumers = shape[1];
+            String name = producers + "P" + consumers + "C";
+
+            run(name + " wait/notify", producers, consumers, messages, waitNotify(capacity));
+            run(name + " ArrayBlockingQueue", producers, consumers, messages, blockingQueue(new ArrayBlockingQueue<>(capacity)));
+            run(name + " channel blocking", producers, consumers, messages,
+                    channel(Channels.create(producers, consumers, capacity, WaitStrategy.blocking()), capacity));
+            run(name + " channel parking", producers, consumers, messages,
+                    channel(Channels.create(producers, consumers, capacity, WaitStrategy.parking()), capacity));
+            run(name + " channel yielding", producers, consumers, messages,
+                    channel(Channels.create(producers, consumers, capacity, WaitStrategy.yielding()), capacity));
+            // 自旋只在核数够的时候有意义
+            if (Runtime.getRuntime().availableProcessors() >= producers + consumers) {
+                run(name + " channel spinning", producers, consumers, messages,
+                        channel(Channels.create(producers, consumers, capacity, WaitStrategy.spinning()), capacity));
+            }
+        }
+    }
+
+    private static void run(String name, int producers, int consumers, int messages, Queue queue) throws Exception {
+        int perProducer = messages / producers;
+        int total = perProducer * producers;
+        LongAdder received = new LongAdder();
+        List<Thread> consumerThreads = new ArrayList<>(consumers);
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            Thread t = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.put(ITEM);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+        for (int c = 0; c < consumers; c++) {
+            Thread t = new Thread(() -> {
+                try {
+                    while (received.sum() < total) {
+                        received.add(queue.takeSome());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+            consumerThreads.add(t);
+        }
+        // 最后几个消费者可能还卡在 take 上：收够了就不等它们
+        while (received.sum() < total) {
+            Thread.sleep(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-32s %,14.0f msgs/s%n", name, total * 1e9 / elapsed);
+        // 中断卡在 take 上的消费者让它退出：不能由 main 往队列里塞，1P1C 用的 SpscChannel 只允许一个生产者
+        for (Thread t : consumerThreads) {
+            t.interrupt();
+        }
+        for (Thread t : consumerThreads) {
+            t.join();
+        }
+    }
+
+    private static Queue waitNotify(int capacity) {
+        LinkedList<Integer> storage = new LinkedList<>();
+        Object monitor = new Object();
+        return new Queue() {
+            @Override
+            public void put(Integer e) throws InterruptedException {
+                synchronized (monitor) {
+                    while (storage.size() == capacity) {
+                        monitor.wait();
+                    }
+                    storage.add(e);
+                    monitor.notifyAll();
+                }
+            }
+
+            @Override
+            public int takeSome() throws InterruptedException {
+                synchronized (monitor) {
+                    while (storage.isEmpty()) {
+                        monitor.wait();
+                    }
+                    storage.poll();
+                    monitor.notifyAll();
+                    return 1;
+                }
+            }
+        };
+    }
+
+    private static Queue blockingQueue(BlockingQueue<Integer> q) {
+        return new Queue() {
+            @Override
+            public void put(Integer e) throws InterruptedException {
+                q.put(e);
+            }
+
+            @Override
+            public int takeSome() throws InterruptedException {
+                q.take();
+                return 1;
+            }
+        };
+    }
+
+    private static Queue channel(Channel<Integer> ch, int batch) {
+        return new Queue() {
+            @Override
+            public void put(Integer e) throws InterruptedException {
+                ch.put(e);
+            }
+
+            @Override
+            public int takeSome() throws InterruptedException {
+                int n = ch.drainTo(e -> {
+                }, batch);
+                if (n > 0) {
+                    return n;
+                }
+                ch.take();
+                return 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package tool.queue;
+
+/**
+ * 按生产者/消费者个数选实现
+ */
+public final class Channels {
+
+    private Channels() {
+    }
+
+    public static <E> Channel<E> spsc(int capacity, WaitStrategy waitStrategy) {
+        return new SpscChannel<>(capacity, waitStrategy);
+    }
+
+    public static <E> Channel<E> mpsc(int capacity, WaitStrategy waitStrategy) {
+        return new MpscChannel<>(capacity, waitStrategy);
+    }
+
+    public static <E> Channel<E> mpmc(int capacity, WaitStrategy waitStrategy) {
+        return new MpmcChannel<>(capacity, waitStrategy);
+    }
+
+    public static <E> Channel<E> create(int producers, int consumers, int capacity, WaitStrategy waitStrategy) {
+        if (consumers == 1) {
+            return producers == 1 ? spsc(capacity, waitStrategy) : mpsc(capacity, waitStrategy);
+        }
+        return mpmc(capacity, waitStrategy);
+    }
+}
@@ -0,0 +1,70 @@
+package tool.queue;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 多生产者多消费者（Vyukov 有界队列）：
+ * 每个槽位带一个序号 sequences[i]：
+ * - 等于 pos 表示槽位空，可以写第 pos 个元素
+ * - 等于 pos + 1 表示第 pos 个元素已写好，可以读
+ * 生产者 CAS 抢 tail，消费者 CAS 抢 head，抢到之后各写各的槽位
+ */
+public class MpmcChannel<E> extends AbstractRingChannel<E> {
+
+    protected final AtomicLongArray sequences;
+
+    public MpmcChannel(int capacity, WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+        this.sequences = new AtomicLongArray(buffer.length);
+        for (int i = 0; i < buffer.length; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        checkNotNull(e);
+        while (true) {
+            long pos = tail.get();
+            int index = (int) pos & mask;
+            long diff = sequences.getAcquire(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = e;
+                    sequences.setRelease(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 槽位还没被上一圈的消费者取走：满了
+                return false;
+            }
+            // diff > 0：别的生产者抢先了，重试
+        }
+    }
+
+    @Override
+    public E poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) pos & mask;
+            long diff = sequences.getAcquire(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    return consume(index, pos);
+                }
+            } else if (diff < 0) {
+                // 空了
+                return null;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected E consume(int index, long pos) {
+        E e = (E) buffer[index];
+        buffer[index] = null;
+        // 槽位留给下一圈的 pos + capacity
+        sequences.setRelease(index, pos + buffer.length);
+        return e;
+    }
+}
@@ -0,0 +1,23 @@
+package tool.queue;
+
+/**
+ * 多生产者单消费者：生产者和 MpmcChannel 一样 CAS 抢 tail，消费者只有一个，head 不用 CAS
+ */
+public class MpscChannel<E> extends MpmcChannel<E> {
+
+    public MpscChannel(int capacity, WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+    }
+
+    @Override
+    public E poll() {
+        long pos = head.getPlain();
+        int index = (int) pos & mask;
+        if (sequences.getAcquire(index) != pos + 1) {
+            return null;
+        }
+        E e = consume(index, pos);
+        head.setRelease(pos + 1);
+        return e;
+    }
+}
@@ -0,0 +1,75 @@
+package tool.queue;
+
+import java.util.function.Consumer;
+
+/**
+ * 单生产者单消费者：两边各自只写自己的序号，不需要 CAS
+ * 生产者缓存一份 head，消费者缓存一份 tail，只有看起来满了/空了才去读对方的序号
+ */
+public class SpscChannel<E> extends AbstractRingChannel<E> {
+
+    // 只有生产者线程读写
+    private long headCache;
+
+    // 只有消费者线程读写
+    private long tailCache;
+
+    public SpscChannel(int capacity, WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        checkNotNull(e);
+        long t = tail.getPlain();
+        if (t - headCache >= buffer.length) {
+            headCache = head.getAcquire();
+            if (t - headCache >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = e;
+        tail.setRelease(t + 1);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.getPlain();
+        if (h >= tailCache) {
+            tailCache = tail.getAcquire();
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        E e = (E) buffer[index];
+        buffer[index] = null;
+        head.setRelease(h + 1);
+        return e;
+    }
+
+    /**
+     * 一次读 tail，批量取完后只写一次 head
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Consumer<? super E> consumer, int maxElements) {
+        long h = head.getPlain();
+        long available = tail.getAcquire() - h;
+        int n = (int) Math.min(available, maxElements);
+        if (n <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < n; i++) {
+            int index = (int) (h + i) & mask;
+            E e = (E) buffer[index];
+            buffer[index] = null;
+            consumer.accept(e);
+        }
+        head.setRelease(h + n);
+        waitStrategy.signalAll();
+        return n;
+    }
+}
@@ -0,0 +1,123 @@
+package tool.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 通道满了/空了时怎么等：
+ * SPINNING  一直自旋，延迟最低，占满一个核
+ * YIELDING  自旋一会儿再 Thread.yield
+ * PARKING   自旋、yield 之后 parkNanos，逐步退避
+ * BLOCKING  lock + Condition，最省 CPU，对端 signal 才醒（兜底 1ms 超时）
+ */
+public abstract class WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+
+    /**
+     * 等一次，调用方会重新检查条件
+     *
+     * @param attempt 本次等待是第几次（从 0 开始）
+     */
+    public abstract void idle(int attempt) throws InterruptedException;
+
+    /**
+     * 状态变了（放进/取走了元素），唤醒等待方
+     */
+    public void signalAll() {
+    }
+
+    public static WaitStrategy spinning() {
+        return new WaitStrategy() {
+            @Override
+            public void idle(int attempt) throws InterruptedException {
+                checkInterrupt();
+                Thread.onSpinWait();
+            }
+        };
+    }
+
+    public static WaitStrategy yielding() {
+        return new WaitStrategy() {
+            @Override
+            public void idle(int attempt) throws InterruptedException {
+                checkInterrupt();
+                if (attempt < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        };
+    }
+
+    public static WaitStrategy parking() {
+        return new WaitStrategy() {
+            @Override
+            public void idle(int attempt) throws InterruptedException {
+                checkInterrupt();
+                if (attempt < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (attempt < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                } else {
+                    // 1µs 起步，最多 1ms
+                    int backoff = Math.min(attempt - SPIN_TRIES - YIELD_TRIES, 10);
+                    LockSupport.parkNanos(1000L << backoff);
+                }
+            }
+        };
+    }
+
+    public static WaitStrategy blocking() {
+        return new BlockingWaitStrategy();
+    }
+
+    private static void checkInterrupt() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private static final class BlockingWaitStrategy extends WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        // 没人等的时候 signalAll 不加锁
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        @Override
+        public void idle(int attempt) throws InterruptedException {
+            if (attempt < SPIN_TRIES) {
+                checkInterrupt();
+                Thread.onSpinWait();
+                return;
+            }
+            waiters.incrementAndGet();
+            lock.lockInterruptibly();
+            try {
+                // signal 可能发生在调用方检查条件之后、这里 await 之前，所以带超时
+                changed.await(1, TimeUnit.MILLISECONDS);
+            } finally {
+                lock.unlock();
+                waiters.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            if (waiters.get() == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package tool.threadlocal;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * 线程安全的时间戳格式化/解析，代替 ThreadLocal<SimpleDateFormat>（线程池里线程不退出，ThreadLocal 一直挂着；
+ * 而且每次调用还是要 new Date、new String）：
+ * 1. 格式固定为 yyyy-MM-dd HH:mm:ss 或 yyyy-MM-dd HH:mm:ss.SSS，创建后不可变，可以放 static 共享
+ * 2. 缓存当前这一分钟的前缀 "yyyy-MM-dd HH:mm:"，同一分钟内只写秒和毫秒的数字
+ * 3. 直接写进调用方给的 StringBuilder 或 byte[]，缓存命中时不分配对象
+ * 缓存是一个 volatile 引用指向不可变的快照，换分钟时整个替换，多个线程同时换也只是多算一次
+ * format 和 parse 各用一个缓存：交替格式化、解析不同分钟的时间时不会互相把对方的缓存换掉
+ */
+public final class TimestampFormat {
+
+    // "yyyy-MM-dd HH:mm:" 的长度
+    private static final int PREFIX_LENGTH = 17;
+
+    private static final class Minute {
+        // UTC 的分钟数（epochSecond / 60）
+        final long epochMinute;
+        final byte[] prefix;
+
+        Minute(long epochMinute, byte[] prefix) {
+            this.epochMinute = epochMinute;
+            this.prefix = prefix;
+        }
+    }
+
+    private final ZoneId zone;
+
+    private final boolean millis;
+
+    private volatile Minute cached = new Minute(Long.MIN_VALUE, new byte[PREFIX_LENGTH]);
+
+    // parse 自己的缓存，只由 parse 替换
+    private volatile Minute parsed = cached;
+
+    private TimestampFormat(ZoneId zone, boolean millis) {
+        this.zone = zone;
+        this.millis = millis;
+    }
+
+    /**
+     * yyyy-MM-dd HH:mm:ss
+     */
+    public static TimestampFormat seconds(ZoneId zone) {
+        return new TimestampFormat(zone, false);
+    }
+
+    /**
+     * yyyy-MM-dd HH:mm:ss.SSS
+     */
+    public static TimestampFormat millis(ZoneId zone) {
+        return new TimestampFormat(zone, true);
+    }
+
+    /**
+     * 格式化后的长度：19 或 23
+     */
+    public int length() {
+        return millis ? 23 : 19;
+    }
+
+    public void format(long epochMillis, StringBuilder out) {
+        long epochSecond = Math.floorDiv(epochMillis, 1000L);
+        Minute minute = minute(epochSecond);
+        if (minute == null) {
+            // 偏移量不是整分钟的时区（只有很早的历史时间才有），不走缓存
+            out.append(slowFormat(epochMillis));
+            return;
+        }
+        byte[] prefix = minute.prefix;
+        for (byte b : prefix) {
+            out.append((char) b);
+        }
+        int second = (int) (epochSecond - minute.epochMinute * 60);
+        out.append((char) ('0' + second / 10)).append((char) ('0' + second % 10));
+        if (millis) {
+            int ms = (int) Math.floorMod(epochMillis, 1000L);
+            out.append('.')
+                    .append((char) ('0' + ms / 100))
+                    .append((char) ('0' + ms / 10 % 10))
+                    .append((char) ('0' + ms % 10));
+        }
+    }
+
+    /**
+     * 写进 buf[offset, offset + length())，返回写完之后的位置
+     */
+    public int format(long epochMillis, byte[] buf, int offset) {
+        if (offset < 0 || offset + length() > buf.length) {
+            throw new IndexOutOfBoundsException("need " + length() + " bytes at " + offset + ", buffer " + buf.length);
+        }
+        long epochSecond = Math.floorDiv(epochMillis, 1000L);
+        Minute minute = minute(epochSecond);
+        if (minute == null) {
+            String s = slowFormat(epochMillis);
+            for (int i = 0; i < s.length(); i++) {
+                buf[offset + i] = (byte) s.charAt(i);
+            }
+            return offset + s.length();
+        }
+        System.arraycopy(minute.prefix, 0, buf, offset, PREFIX_LENGTH);
+        int p = offset + PREFIX_LENGTH;
+        int second = (int) (epochSecond - minute.epochMinute * 60);
+        buf[p++] = (byte) ('0' + second / 10);
+        buf[p++] = (byte) ('0' + second % 10);
+        if (millis) {
+            int ms = (int) Math.floorMod(epochMillis, 1000L);
+            buf[p++] = '.';
+            buf[p++] = (byte) ('0' + ms / 100);
+            buf[p++] = (byte) ('0' + ms / 10 % 10);
+            buf[p++] = (byte) ('0' + ms % 10);
+        }
+        return p;
+    }
+
+    public String format(long epochMillis) {
+        StringBuilder sb = new StringBuilder(length());
+        format(epochMillis, sb);
+        return sb.toString();
+    }
+
+    /**
+     * 解析 format 的输出，返回 epoch 毫秒；前缀和缓存的分钟一样时不分配对象
+     */
+    public long parse(CharSequence text) {
+        if (text.length() != length()) {
+            throw new IllegalArgumentException("expected " + length() + " chars: " + text);
+        }
+        int second = digits(text, 17, 2);
+        int ms = millis ? digits(text, 20, 3) : 0;
+        if (second > 59 || (millis && text.charAt(19) != '.')) {
+            throw new IllegalArgumentException("bad timestamp: " + text);
+        }
+        Minute minute = parsed;
+        if (!samePrefix(minute.prefix, text)) {
+            // format 的缓存只读不写
+            minute = cached;
+        }
+        if (!samePrefix(minute.prefix, text)) {
+            checkSeparators(text);
+            LocalDateTime local;
+            try {
+                local = LocalDateTime.of(digits(text, 0, 4), digits(text, 5, 2), digits(text, 8, 2),
+                        digits(text, 11, 2), digits(text, 14, 2));
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("bad timestamp: " + text, e);
+            }
+            long epochSecond = local.atZone(zone).toEpochSecond();
+            minute = newMinute(epochSecond);
+            if (minute == null || !samePrefix(minute.prefix, text)) {
+                // 不走缓存的时区，或者夏令时切换时不存在的本地时间
+                return (epochSecond + second) * 1000 + ms;
+            }
+            parsed = minute;
+        }
+        return (minute.epochMinute * 60 + second) * 1000 + ms;
+    }
+
+    /**
+     * 这一秒所在分钟的前缀，format 用，不在缓存里就算出来替换缓存；时区偏移量不是整分钟时返回 null
+     */
+    private Minute minute(long epochSecond) {
+        Minute minute = cached;
+        if (minute.epochMinute == Math.floorDiv(epochSecond, 60L)) {
+            return minute;
+        }
+        minute = newMinute(epochSecond);
+        if (minute != null) {
+            cached = minute;
+        }
+        return minute;
+    }
+
+    private Minute newMinute(long epochSecond) {
+        long epochMinute = Math.floorDiv(epochSecond, 60L);
+        ZoneOffset offset = zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond));
+        if (offset.getTotalSeconds() % 60 != 0) {
+            return null;
+        }
+        LocalDateTime local = LocalDateTime.ofEpochSecond(epochMinute * 60, 0, offset);
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        int year = local.getYear();
+        if (year < 0 || year > 9999) {
+            return null;
+        }
+        put4(prefix, 0, year);
+        prefix[4] = '-';
+        put2(prefix, 5, local.getMonthValue());
+        prefix[7] = '-';
+        put2(prefix, 8, local.getDayOfMonth());
+        prefix[10] = ' ';
+        put2(prefix, 11, local.getHour());
+        prefix[13] = ':';
+        put2(prefix, 14, local.getMinute());
+        prefix[16] = ':';
+        return new Minute(epochMinute, prefix);
+    }
+
+    private String slowFormat(long epochMillis) {
+        LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), zone);
+        String s = String.format("%04d-%02d-%02d %02d:%02d:%02d", local.getYear(), local.getMonthValue(),
+                local.getDayOfMonth(), local.getHour(), local.getMinute(), local.getSecond());
+        return millis ? s + String.format(".%03d", local.getNano() / 1_000_000) : s;
+    }
+
+    private static boolean samePrefix(byte[] prefix, CharSequence text) {
+        for (int i = 0; i < PREFIX_LENGTH; i++) {
+            if (prefix[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkSeparators(CharSequence text) {
+        if (text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' '
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            throw new IllegalArgumentException("bad timestamp: " + text);
+        }
+    }
+
+    private static int digits(CharSequence text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                throw new IllegalArgumentException("bad timestamp: " + text);
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static void put2(byte[] buf, int at, int value) {
+        buf[at] = (byte) ('0' + value / 10);
+        buf[at + 1] = (byte) ('0' + value % 10);
+    }
+
+    private static void put4(byte[] buf, int at, int value) {
+        put2(buf, at, value / 100);
+        put2(buf, at + 2, value % 100);
+    }
+}
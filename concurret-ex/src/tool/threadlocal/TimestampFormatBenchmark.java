@@ -0,0 +1,101 @@
+package tool.threadlocal;
+
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 64 个线程同时格式化当前时间（打日志的场景），对比：
+ * 1. ThreadLocal<SimpleDateFormat>（ThreadLocalSimpledateFormat05 的写法）
+ * 2. 共享的 DateTimeFormatter
+ * 3. TimestampFormat 写进每个线程自己复用的 StringBuilder / byte[]
+ * 输出每秒次数和每次分配的字节数
+ * args: [线程数，默认 64] [每项秒数，默认 3]
+ */
+public class TimestampFormatBenchmark {
+
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    private static final ThreadLocal<SimpleDateFormat> SIMPLE_DATE_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat(PATTERN));
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER =
+            DateTimeFormatter.ofPattern(PATTERN).withZone(ZoneId.systemDefault());
+
+    private static final TimestampFormat TIMESTAMP_FORMAT = TimestampFormat.millis(ZoneId.systemDefault());
+
+    interface Op {
+        // 返回写了多少个字符，防止被优化掉
+        int run(long now);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        // 先确认三种写法输出一样
+        long now = System.currentTimeMillis();
+        System.out.println(SIMPLE_DATE_FORMAT.get().format(new Date(now)) + " | "
+                + DATE_TIME_FORMATTER.format(Instant.ofEpochMilli(now)) + " | " + TIMESTAMP_FORMAT.format(now)
+                + " | parse back ok=" + (TIMESTAMP_FORMAT.parse(TIMESTAMP_FORMAT.format(now)) == now));
+
+        for (int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "warmup" : "measure, threads=" + threads);
+            run("ThreadLocal<SimpleDateFormat>", threads, seconds,
+                    () -> t -> SIMPLE_DATE_FORMAT.get().format(new Date(t)).length());
+            run("DateTimeFormatter", threads, seconds,
+                    () -> t -> DATE_TIME_FORMATTER.format(Instant.ofEpochMilli(t)).length());
+            run("TimestampFormat -> StringBuilder", threads, seconds, () -> {
+                StringBuilder sb = new StringBuilder(32);
+                return t -> {
+                    sb.setLength(0);
+                    TIMESTAMP_FORMAT.format(t, sb);
+                    return sb.length();
+                };
+            });
+            run("TimestampFormat -> byte[]", threads, seconds, () -> {
+                byte[] buf = new byte[32];
+                return t -> TIMESTAMP_FORMAT.format(t, buf, 0);
+            });
+        }
+    }
+
+    interface OpFactory {
+        Op create();
+    }
+
+    private static void run(String name, int threads, int seconds, OpFactory factory) throws InterruptedException {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LongAdder ops = new LongAdder();
+        LongAdder allocated = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                Op op = factory.create();
+                long id = Thread.currentThread().getId();
+                long bytesBefore = mx.getThreadAllocatedBytes(id);
+                long count = 0;
+                int sink = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int k = 0; k < 100; k++) {
+                        sink += op.run(System.currentTimeMillis());
+                    }
+                    count += 100;
+                }
+                allocated.add(mx.getThreadAllocatedBytes(id) - bytesBefore);
+                ops.add(count + (sink == 42 ? 1 : 0));
+                done.countDown();
+            });
+            t.start();
+        }
+        done.await();
+        System.out.printf("  %-34s %,14.0f ops/s %8.1f bytes/op%n", name, ops.sum() / (double) seconds,
+                allocated.sum() / (double) ops.sum());
+    }
+}
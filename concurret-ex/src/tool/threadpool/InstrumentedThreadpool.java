@@ -0,0 +1,490 @@
+package tool.threadpool;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在 PauseableThreadpool 上加统计和自动调整：
+ * 1. 按任务类型统计：排队时间、执行时间、完成/失败/拒绝次数；全局的活跃线程数和峰值
+ * 2. 有界队列 + 可替换的拒绝策略（OverloadPolicies）
+ * 3. 后台每个周期看一次这段时间的平均排队时间，超过目标就加核心线程，远低于目标就减，
+ * 范围是 [minCore, maximumPoolSize]
+ * 4. snapshot() 返回不可变的统计快照；pause/resume 继承自 PauseableThreadpool，暂停期间不调整
+ * 5. 被 CallerRuns 之类的拒绝策略放到提交线程上执行的任务也计入统计（不计入调整用的排队时间）
+ * <p>
+ * 任务类型：实现 TypedTask 的用 type()，其他用类名；submit(type, callable) 可以直接指定
+ */
+public class InstrumentedThreadpool extends PauseableThreadpool {
+
+    /**
+     * 带类型的任务
+     */
+    public interface TypedTask {
+        String type();
+    }
+
+    private final Map<String, TypeStats> stats = new ConcurrentHashMap<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    // 本周期的排队时间，自动调整用
+    private final LongAdder windowWaitNanos = new LongAdder();
+    private final LongAdder windowTasks = new LongAdder();
+
+    private final int minCore;
+    private final long targetQueueLatencyNanos;
+    private final ScheduledExecutorService tuner;
+
+    private volatile long lastWindowAvgWaitNanos;
+
+    /**
+     * @param minCore                  核心线程数下限
+     * @param maxPoolSize              线程数上限，核心线程数最多调到这里
+     * @param queueCapacity            队列容量
+     * @param overloadPolicy           队列满了的处理，见 OverloadPolicies
+     * @param targetQueueLatencyMillis 目标平均排队时间，<= 0 表示不自动调整
+     * @param tunePeriodMillis         调整周期
+     */
+    public InstrumentedThreadpool(int minCore, int maxPoolSize, int queueCapacity, RejectedExecutionHandler overloadPolicy,
+                                  long targetQueueLatencyMillis, long tunePeriodMillis) {
+        super(minCore, maxPoolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory(), new CountingRejectionHandler(overloadPolicy));
+        ((CountingRejectionHandler) getRejectedExecutionHandler()).pool = this;
+        this.minCore = minCore;
+        this.targetQueueLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetQueueLatencyMillis);
+        if (targetQueueLatencyMillis > 0) {
+            this.tuner = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "threadpool-tuner");
+                t.setDaemon(true);
+                return t;
+            });
+            tuner.scheduleWithFixedDelay(this::tune, tunePeriodMillis, tunePeriodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.tuner = null;
+        }
+    }
+
+    public <T> Future<T> submit(String type, Callable<T> task) {
+        TypedFutureTask<T> future = new TypedFutureTask<>(type, task);
+        execute(future);
+        return future;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (command instanceof TimedTask) {
+            // 拒绝策略（比如 DiscardOldest）把已经包装过的任务重新提交：不再包一层，也不重复计提交数
+            super.execute(command);
+            return;
+        }
+        String type = typeOf(command);
+        statsOf(type).submitted.increment();
+        super.execute(new TimedTask(command, type));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new TypedFutureTask<>(typeOf(runnable), Executors.callable(runnable, value));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new TypedFutureTask<>(callable instanceof TypedTask ? ((TypedTask) callable).type()
+                : nameOf(callable.getClass()), callable);
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        // 暂停时在这里等，等待的时间也算排队时间
+        super.beforeExecute(t, r);
+        if (r instanceof TimedTask) {
+            TimedTask task = (TimedTask) r;
+            task.pooled = true;
+            long wait = recordStart(task);
+            windowWaitNanos.add(wait);
+            windowTasks.increment();
+        }
+        int a = active.incrementAndGet();
+        peakActive.accumulateAndGet(a, Math::max);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        active.decrementAndGet();
+        if (r instanceof TimedTask) {
+            recordEnd((TimedTask) r, t);
+        }
+    }
+
+    // 返回排队时间
+    private long recordStart(TimedTask task) {
+        long now = System.nanoTime();
+        long wait = now - task.enqueuedAt;
+        task.startedAt = now;
+        TypeStats s = statsOf(task.type);
+        s.waitNanos.add(wait);
+        s.maxWaitNanos.accumulate(wait);
+        return wait;
+    }
+
+    private void recordEnd(TimedTask task, Throwable t) {
+        long exec = System.nanoTime() - task.startedAt;
+        TypeStats s = statsOf(task.type);
+        s.execNanos.add(exec);
+        s.maxExecNanos.accumulate(exec);
+        if (t != null || task.failed) {
+            s.failed.increment();
+        } else {
+            s.completed.increment();
+        }
+    }
+
+    /**
+     * 拒绝策略在提交线程上直接调 run()，不经过 beforeExecute/afterExecute，在这里补上统计
+     * 排队时间只进按类型的统计：几乎是 0，算进调整周期会把"该加线程"的信号冲淡
+     */
+    private void runOnCaller(TimedTask task) {
+        recordStart(task);
+        Throwable thrown = null;
+        try {
+            task.runDelegate();
+        } catch (RuntimeException | Error e) {
+            thrown = e;
+            throw e;
+        } finally {
+            recordEnd(task, thrown);
+        }
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        if (tuner != null) {
+            tuner.shutdownNow();
+        }
+    }
+
+    /**
+     * 按上一个周期的平均排队时间调整核心线程数
+     */
+    private void tune() {
+        if (isPaused()) {
+            // 暂停时任务全堆在队列里、一个也不完成，这时候加线程没有用：丢掉这个周期
+            windowTasks.reset();
+            windowWaitNanos.reset();
+            return;
+        }
+        long tasks = windowTasks.sumThenReset();
+        long waitNanos = windowWaitNanos.sumThenReset();
+        int queued = getQueue().size();
+        long avg = tasks == 0 ? 0 : waitNanos / tasks;
+        lastWindowAvgWaitNanos = avg;
+        int core = getCorePoolSize();
+        if ((avg > targetQueueLatencyNanos || (tasks == 0 && queued > 0)) && core < getMaximumPoolSize()) {
+            // 排队太久：加线程，按当前的 1/4 加，至少 1 个
+            setCorePoolSize(Math.min(getMaximumPoolSize(), core + Math.max(1, core / 4)));
+        } else if (avg < targetQueueLatencyNanos / 4 && queued == 0 && core > minCore) {
+            setCorePoolSize(core - 1);
+        }
+    }
+
+    private String typeOf(Runnable command) {
+        if (command instanceof TypedTask) {
+            return ((TypedTask) command).type();
+        }
+        return nameOf(command.getClass());
+    }
+
+    // 匿名类和 lambda 的 simpleName 不好认，用全名
+    private static String nameOf(Class<?> clazz) {
+        String name = clazz.getSimpleName();
+        return name.isEmpty() || name.contains("$$Lambda") ? clazz.getName() : name;
+    }
+
+    private TypeStats statsOf(String type) {
+        return stats.computeIfAbsent(type, k -> new TypeStats());
+    }
+
+    public Snapshot snapshot() {
+        Map<String, TypeSnapshot> types = new LinkedHashMap<>();
+        for (Map.Entry<String, TypeStats> e : stats.entrySet()) {
+            types.put(e.getKey(), e.getValue().toSnapshot());
+        }
+        return new Snapshot(getPoolSize(), getCorePoolSize(), getMaximumPoolSize(), active.get(), peakActive.get(),
+                getLargestPoolSize(), getQueue().size(), getQueue().remainingCapacity(),
+                TimeUnit.NANOSECONDS.toMicros(lastWindowAvgWaitNanos), Collections.unmodifiableMap(types));
+    }
+
+    // 记录入队时间和类型；FutureTask 吞掉的异常靠 failed 标记
+    private final class TimedTask implements Runnable, TypedTask {
+        final Runnable delegate;
+        final String type;
+        final long enqueuedAt = System.nanoTime();
+        long startedAt;
+        boolean failed;
+        // beforeExecute 里置为 true；false 说明是拒绝策略在提交线程上直接执行
+        boolean pooled;
+
+        TimedTask(Runnable delegate, String type) {
+            this.delegate = delegate;
+            this.type = type;
+        }
+
+        @Override
+        public void run() {
+            if (pooled) {
+                runDelegate();
+            } else {
+                runOnCaller(this);
+            }
+        }
+
+        void runDelegate() {
+            delegate.run();
+            if (delegate instanceof TypedFutureTask) {
+                failed = ((TypedFutureTask<?>) delegate).failed;
+            }
+        }
+
+        @Override
+        public String type() {
+            return type;
+        }
+    }
+
+    private static final class TypedFutureTask<T> extends FutureTask<T> implements TypedTask {
+        final String type;
+        volatile boolean failed;
+
+        TypedFutureTask(String type, Callable<T> callable) {
+            super(callable);
+            this.type = type;
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed = true;
+            super.setException(t);
+        }
+
+        @Override
+        public String type() {
+            return type;
+        }
+    }
+
+    private static final class CountingRejectionHandler implements RejectedExecutionHandler {
+        final RejectedExecutionHandler policy;
+        volatile InstrumentedThreadpool pool;
+
+        CountingRejectionHandler(RejectedExecutionHandler policy) {
+            this.policy = policy;
+        }
+
+        /**
+         * 只有任务真的没被执行才算拒绝：策略抛了 RejectedExecutionException，或者把任务丢了；
+         * blockWithTimeout 等到了队列空位、CallerRuns 在提交线程上执行了，都不算
+         */
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            boolean shutdown = executor.isShutdown();
+            if (policy instanceof ThreadPoolExecutor.DiscardOldestPolicy && !shutdown) {
+                // 丢的是队头的老任务，算到它头上，新任务重新提交
+                countRejected(executor.getQueue().poll());
+                executor.execute(r);
+                return;
+            }
+            try {
+                policy.rejectedExecution(r, executor);
+            } catch (RejectedExecutionException e) {
+                countRejected(r);
+                throw e;
+            }
+            // Discard 直接丢；线程池已经关闭时 CallerRuns、DiscardOldest 也是直接丢
+            if (policy instanceof ThreadPoolExecutor.DiscardPolicy || shutdown) {
+                countRejected(r);
+            }
+        }
+
+        private void countRejected(Runnable r) {
+            if (pool != null && r instanceof TypedTask) {
+                pool.statsOf(((TypedTask) r).type()).rejected.increment();
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+        private final int poolSeq = POOL_SEQ.incrementAndGet();
+        private final AtomicInteger threadSeq = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "instrumented-pool-" + poolSeq + "-" + threadSeq.incrementAndGet());
+        }
+    }
+
+    private static final class TypeStats {
+        final LongAdder submitted = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+        final LongAdder execNanos = new LongAdder();
+        final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+        final LongAccumulator maxExecNanos = new LongAccumulator(Math::max, 0);
+
+        TypeSnapshot toSnapshot() {
+            long done = completed.sum() + failed.sum();
+            return new TypeSnapshot(submitted.sum(), completed.sum(), failed.sum(), rejected.sum(),
+                    done == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / done),
+                    TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()),
+                    done == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(execNanos.sum() / done),
+                    TimeUnit.NANOSECONDS.toMicros(maxExecNanos.get()));
+        }
+    }
+
+    /**
+     * 一种任务的统计，时间单位微秒
+     */
+    public static final class TypeSnapshot {
+        public final long submitted;
+        public final long completed;
+        public final long failed;
+        public final long rejected;
+        public final long avgWaitMicros;
+        public final long maxWaitMicros;
+        public final long avgExecMicros;
+        public final long maxExecMicros;
+
+        TypeSnapshot(long submitted, long completed, long failed, long rejected,
+                     long avgWaitMicros, long maxWaitMicros, long avgExecMicros, long maxExecMicros) {
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.avgWaitMicros = avgWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+            this.avgExecMicros = avgExecMicros;
+            this.maxExecMicros = maxExecMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "submitted=" + submitted + " completed=" + completed + " failed=" + failed + " rejected=" + rejected
+                    + " wait(avg/max)=" + avgWaitMicros + "/" + maxWaitMicros + "us"
+                    + " exec(avg/max)=" + avgExecMicros + "/" + maxExecMicros + "us";
+        }
+    }
+
+    /**
+     * 整个线程池的统计
+     */
+    public static final class Snapshot {
+        public final int poolSize;
+        public final int corePoolSize;
+        public final int maximumPoolSize;
+        public final int activeThreads;
+        public final int peakActiveThreads;
+        public final int largestPoolSize;
+        public final int queueSize;
+        public final int queueRemaining;
+        public final long lastWindowAvgWaitMicros;
+        public final Map<String, TypeSnapshot> types;
+
+        Snapshot(int poolSize, int corePoolSize, int maximumPoolSize, int activeThreads, int peakActiveThreads,
+                 int largestPoolSize, int queueSize, int queueRemaining, long lastWindowAvgWaitMicros,
+                 Map<String, TypeSnapshot> types) {
+            this.poolSize = poolSize;
+            this.corePoolSize = corePoolSize;
+            this.maximumPoolSize = maximumPoolSize;
+            this.activeThreads = activeThreads;
+            this.peakActiveThreads = peakActiveThreads;
+            this.largestPoolSize = largestPoolSize;
+            this.queueSize = queueSize;
+            this.queueRemaining = queueRemaining;
+            this.lastWindowAvgWaitMicros = lastWindowAvgWaitMicros;
+            this.types = types;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("pool=").append(poolSize).append(" core=").append(corePoolSize).append(" max=").append(maximumPoolSize)
+                    .append(" active=").append(activeThreads).append(" peak=").append(peakActiveThreads)
+                    .append(" queue=").append(queueSize).append(" windowWait=").append(lastWindowAvgWaitMicros).append("us");
+            for (Map.Entry<String, TypeSnapshot> e : types.entrySet()) {
+                sb.append("\n  ").append(e.getKey()).append(": ").append(e.getValue());
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class WriteTask implements Runnable {
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            demo();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void demo() throws InterruptedException {
+        // FixThreadpoolOOM 的场景：提交远快于处理；这里队列有界，满了由提交线程自己执行
+        InstrumentedThreadpool pool = new InstrumentedThreadpool(2, 32, 200, OverloadPolicies.callerRuns(), 20, 200);
+        for (int i = 0; i < 3000; i++) {
+            if (i % 3 == 0) {
+                pool.submit("query", () -> {
+                    Thread.sleep(10);
+                    return 1;
+                });
+            } else {
+                pool.execute(new WriteTask());
+            }
+            if (i == 1000) {
+                pool.pause();
+                System.out.println("paused\n" + pool.snapshot());
+                Thread.sleep(500);
+                pool.resume();
+            }
+            if (i % 500 == 0) {
+                System.out.println(pool.snapshot());
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.println("final\n" + pool.snapshot());
+    }
+}
@@ -0,0 +1,54 @@
+package tool.threadpool;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 队列满了怎么办（有界队列 + 拒绝策略，代替 FixThreadpoolOOM 里的无界队列）
+ */
+public final class OverloadPolicies {
+
+    private OverloadPolicies() {
+    }
+
+    // 抛 RejectedExecutionException
+    public static RejectedExecutionHandler abort() {
+        return new ThreadPoolExecutor.AbortPolicy();
+    }
+
+    // 提交任务的线程自己执行，天然的背压
+    public static RejectedExecutionHandler callerRuns() {
+        return new ThreadPoolExecutor.CallerRunsPolicy();
+    }
+
+    // 直接丢掉新任务
+    public static RejectedExecutionHandler discard() {
+        return new ThreadPoolExecutor.DiscardPolicy();
+    }
+
+    // 丢掉队头最老的任务，再提交新任务
+    public static RejectedExecutionHandler discardOldest() {
+        return new ThreadPoolExecutor.DiscardOldestPolicy();
+    }
+
+    /**
+     * 提交方最多等 timeout 把任务放进队列，超时再拒绝
+     */
+    public static RejectedExecutionHandler blockWithTimeout(long timeout, TimeUnit unit) {
+        return (r, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("executor has been shut down");
+            }
+            try {
+                if (!executor.getQueue().offer(r, timeout, unit)) {
+                    throw new RejectedExecutionException("queue still full after " + timeout + " " + unit);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for queue space", e);
+            }
+        };
+    }
+}
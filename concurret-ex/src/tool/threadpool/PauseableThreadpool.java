@@ -19,6 +19,11 @@ public class PauseableThreadpool extends ThreadPoolExecutor {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
     }
 
+    public PauseableThreadpool(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                               ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+    }
+
     //钩子方法
     @Override
     protected void beforeExecute(Thread t, Runnable r) {
@@ -61,6 +66,15 @@ public class PauseableThreadpool extends ThreadPoolExecutor {
 
     }
 
+    public boolean isPaused() {
+        lock.lock();
+        try {
+            return paused;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public static void main(String[] args) {
         PauseableThreadpool threadpool = new PauseableThreadpool(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
 
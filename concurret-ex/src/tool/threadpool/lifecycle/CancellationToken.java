@@ -0,0 +1,188 @@
+package tool.threadpool.lifecycle;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 协作式取消（stopthread 包里几种中断写法的合体）：
+ * 1. cancel 只是打个标记，任务在合适的地方检查 isCancelled / throwIfCancelled 自己退出，不会停在半路
+ * 2. 父子关系：父取消了子也取消（关闭整个线程池 -> 取消每个任务）
+ * 3. 阻塞等待：sleep / take / poll 期间取消会把等待的线程中断唤醒，返回后把这次中断清掉，
+ * 不会把中断标记漏给后面的代码（RightWayStopThreadInProd2 的问题：标记留着，循环却不看）；
+ * 不是取消引起的中断照样抛 InterruptedException
+ * 4. onCancel 注册回调，取消时调用（已经取消了就马上调用）
+ */
+public class CancellationToken {
+
+    private static final int WAITING = 0;
+    private static final int DONE = 1;
+    private static final int INTERRUPTING = 2;
+    private static final int INTERRUPTED = 3;
+
+    /**
+     * 一个正在等待的线程
+     */
+    private static final class Waiter {
+        final Thread thread = Thread.currentThread();
+        final AtomicInteger state = new AtomicInteger(WAITING);
+    }
+
+    private volatile String reason;
+
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+
+    // 子令牌不放 callbacks：线程池每个任务一个子令牌，CopyOnWriteArrayList 的增删是 O(n)，总共就是 O(n²)
+    private final Set<CancellationToken> children = ConcurrentHashMap.newKeySet();
+
+    private volatile CancellationToken parent;
+
+    /**
+     * 子令牌：自己可以单独取消，父取消时也跟着取消；用完 detach，不然父令牌上的子令牌越积越多
+     */
+    public CancellationToken child() {
+        CancellationToken child = new CancellationToken();
+        child.parent = this;
+        children.add(child);
+        // 和 onCancel 一样：先挂上再看标记，cancel 那边先改标记再遍历，两边总有一边看得到
+        if (reason != null) {
+            child.cancel(reason);
+        }
+        return child;
+    }
+
+    public void detach() {
+        CancellationToken p = parent;
+        if (p != null) {
+            p.children.remove(this);
+            parent = null;
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    public String reason() {
+        return reason;
+    }
+
+    /**
+     * 只有第一次生效，返回是不是这次取消的
+     */
+    public boolean cancel(String why) {
+        synchronized (this) {
+            if (reason != null) {
+                return false;
+            }
+            reason = why == null ? "cancelled" : why;
+        }
+        for (Waiter w; (w = waiters.poll()) != null; ) {
+            if (w.state.compareAndSet(WAITING, INTERRUPTING)) {
+                w.thread.interrupt();
+                w.state.set(INTERRUPTED);
+            }
+        }
+        for (CancellationToken child : children) {
+            child.cancel(reason);
+        }
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+        return true;
+    }
+
+    public void throwIfCancelled() {
+        if (reason != null) {
+            throw new CancellationException(reason);
+        }
+    }
+
+    public void onCancel(Runnable callback) {
+        callbacks.add(callback);
+        // 注册和取消同时发生时，回调可能被调两次，所以回调要幂等；但不会一次都没调
+        if (reason != null) {
+            callback.run();
+        }
+    }
+
+    /**
+     * 睡 duration，取消了提前返回 false
+     */
+    public boolean sleep(long duration, TimeUnit unit) throws InterruptedException {
+        return await(() -> {
+            unit.sleep(duration);
+            return Boolean.TRUE;
+        }) != null;
+    }
+
+    /**
+     * 取消了返回 null
+     */
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        return await(queue::take);
+    }
+
+    /**
+     * 超时或者取消了返回 null
+     */
+    public <E> E poll(BlockingQueue<E> queue, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(() -> queue.poll(timeout, unit));
+    }
+
+    public interface Wait<T> {
+        T await() throws InterruptedException;
+    }
+
+    /**
+     * 执行一个会响应中断的等待；取消引起的中断返回 null 并清掉中断标记，别的中断原样抛出
+     */
+    public <T> T await(Wait<T> wait) throws InterruptedException {
+        if (reason != null) {
+            return null;
+        }
+        Waiter w = new Waiter();
+        waiters.add(w);
+        if (reason != null) {
+            // 入队之前刚好被取消，cancel 可能没看到我们
+            waiters.remove(w);
+            return null;
+        }
+        try {
+            return wait.await();
+        } catch (InterruptedException e) {
+            if (w.state.get() != WAITING) {
+                awaitInterrupted(w);
+                return null;
+            }
+            throw e;
+        } finally {
+            if (!w.state.compareAndSet(WAITING, DONE)) {
+                // 取消那边已经决定中断我们：等它真的中断完，再把中断标记清掉
+                awaitInterrupted(w);
+                Thread.interrupted();
+            }
+            waiters.remove(w);
+        }
+    }
+
+    private static void awaitInterrupted(Waiter w) {
+        while (w.state.get() == INTERRUPTING) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return reason == null ? "active" : "cancelled(" + reason + ")";
+    }
+}
@@ -0,0 +1,273 @@
+package tool.threadpool.lifecycle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可以优雅关闭的线程池（Shutdown / ShutdownNow 两种关法的组合）：
+ * 1. shutdown(drain, grace)：先 shutdown() 不收新任务，等排队的和正在跑的做完，最多等 drain
+ * 2. 到时间还没做完：队列里没开始的任务拿出来不再执行；正在跑的任务通过 CancellationToken 通知它们收尾，再等 grace
+ * 3. 还不结束才 shutdownNow() 中断线程
+ * 4. 每个任务的状态只变一次（CAS），报告里：做完的、失败的、收到取消后退出的、没开始的分开列出；
+ * 后两种可以重新投递，已经做完的不会出现在里面，所以重新投递不会重复执行，也不会丢
+ */
+public class GracefulExecutor {
+
+    /**
+     * 任务在循环里看 token，或者用 token 的 sleep / take / poll 等待；
+     * 收到取消后抛 CancellationException（token.throwIfCancelled()）表示没做完，正常返回表示做完了
+     */
+    public interface Task {
+        void run(CancellationToken token) throws Exception;
+    }
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED, NOT_STARTED, STUCK
+    }
+
+    private final class Tracked implements Runnable {
+        final Task task;
+        final CancellationToken token = root.child();
+        final AtomicInteger state = new AtomicInteger(State.QUEUED.ordinal());
+
+        Tracked(Task task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(State.QUEUED.ordinal(), State.RUNNING.ordinal())) {
+                // 关闭时已经从队列里拿走了
+                token.detach();
+                return;
+            }
+            running.put(this, Boolean.TRUE);
+            State result;
+            try {
+                task.run(token);
+                result = State.COMPLETED;
+            } catch (CancellationException e) {
+                result = State.CANCELLED;
+            } catch (InterruptedException e) {
+                // shutdownNow 中断的，也算没做完
+                result = token.isCancelled() ? State.CANCELLED : State.FAILED;
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                result = State.FAILED;
+            }
+            // 先记结果再离开 running：关闭时在 running 里看不到的任务，结果一定已经记上了；
+            // CAS 失败说明关闭时已经按卡住的报告过了，不能再记一次
+            if (state.compareAndSet(State.RUNNING.ordinal(), result.ordinal())) {
+                counter(result).increment();
+                if (result == State.CANCELLED) {
+                    unfinished.add(task);
+                }
+            }
+            running.remove(this);
+            token.detach();
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+
+    private final CancellationToken root = new CancellationToken();
+
+    private final Map<Tracked, Boolean> running = new ConcurrentHashMap<>();
+
+    private final List<Task> unfinished = Collections.synchronizedList(new ArrayList<>());
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    public GracefulExecutor(int threads, String name) {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory factory = r -> new Thread(r, name + "-" + seq.incrementAndGet());
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                factory);
+    }
+
+    /**
+     * 关闭开始后提交会抛 RejectedExecutionException
+     */
+    public void submit(Task task) {
+        if (root.isCancelled() || pool.isShutdown()) {
+            throw new RejectedExecutionException("shutting down");
+        }
+        // 先计提交数：任务可能在 execute 返回前就做完了，不能先有完成数后有提交数
+        submitted.increment();
+        Tracked tracked = new Tracked(task);
+        try {
+            pool.execute(tracked);
+        } catch (RejectedExecutionException e) {
+            // 检查之后才开始关闭：这个任务没进线程池，子 token 要从 root 上摘掉，提交数也退回去
+            tracked.token.detach();
+            submitted.decrement();
+            throw e;
+        }
+    }
+
+    private LongAdder counter(State state) {
+        switch (state) {
+            case COMPLETED:
+                return completed;
+            case FAILED:
+                return failed;
+            default:
+                return cancelled;
+        }
+    }
+
+    public Report shutdown(long drain, long grace, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        int inFlightAtStart = running.size();
+        int queuedAtStart = pool.getQueue().size();
+        pool.shutdown();
+        boolean drained = pool.awaitTermination(drain, unit);
+        long drainNanos = System.nanoTime() - start;
+
+        List<Task> notStarted = new ArrayList<>();
+        boolean forced = false;
+        int interrupted = 0;
+        if (!drained) {
+            // 没开始的不再开始：从队列里拿走，CAS 成 NOT_STARTED，万一被线程抢先拿到了 CAS 会失败
+            List<Runnable> queued = new ArrayList<>();
+            pool.getQueue().drainTo(queued);
+            for (Runnable r : queued) {
+                Tracked t = (Tracked) r;
+                if (t.state.compareAndSet(State.QUEUED.ordinal(), State.NOT_STARTED.ordinal())) {
+                    notStarted.add(t.task);
+                    t.token.detach();
+                }
+            }
+            root.cancel("shutdown: drain deadline passed");
+            if (!pool.awaitTermination(grace, unit)) {
+                forced = true;
+                interrupted = running.size();
+                pool.shutdownNow();
+                pool.awaitTermination(grace, unit);
+            }
+        }
+        // 中断后还不退出的任务：CAS 成 STUCK，之后它再结束也不会重复记；
+        // CAS 失败的刚好在记结果，等它离开 running（只差几步，不会再跑任务代码）
+        List<Task> stuck = new ArrayList<>();
+        for (Tracked t : running.keySet()) {
+            if (t.state.compareAndSet(State.RUNNING.ordinal(), State.STUCK.ordinal())) {
+                stuck.add(t.task);
+            } else {
+                while (running.containsKey(t)) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+        List<Task> retry = new ArrayList<>(notStarted);
+        synchronized (unfinished) {
+            retry.addAll(unfinished);
+        }
+        return new Report(submitted.sum(), completed.sum(), failed.sum(), cancelled.sum(), notStarted.size(),
+                inFlightAtStart, queuedAtStart, drained, forced, interrupted, drainNanos, System.nanoTime() - start,
+                retry, stuck);
+    }
+
+    public int inFlight() {
+        return running.size();
+    }
+
+    /**
+     * 关闭的统计
+     */
+    public static final class Report {
+        private final long submitted;
+        private final long completed;
+        private final long failed;
+        private final long cancelled;
+        private final long notStarted;
+        private final int inFlightAtStart;
+        private final int queuedAtStart;
+        private final boolean drained;
+        private final boolean forced;
+        private final int interrupted;
+        private final long drainNanos;
+        private final long totalNanos;
+        private final List<Task> retry;
+        private final List<Task> stuck;
+
+        Report(long submitted, long completed, long failed, long cancelled, long notStarted, int inFlightAtStart,
+               int queuedAtStart, boolean drained, boolean forced, int interrupted, long drainNanos, long totalNanos,
+               List<Task> retry, List<Task> stuck) {
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.notStarted = notStarted;
+            this.inFlightAtStart = inFlightAtStart;
+            this.queuedAtStart = queuedAtStart;
+            this.drained = drained;
+            this.forced = forced;
+            this.interrupted = interrupted;
+            this.drainNanos = drainNanos;
+            this.totalNanos = totalNanos;
+            this.retry = Collections.unmodifiableList(retry);
+            this.stuck = Collections.unmodifiableList(stuck);
+        }
+
+        /**
+         * 没做完、可以重新投递的任务：没开始的 + 收到取消后退出的
+         */
+        public List<Task> getRetry() {
+            return retry;
+        }
+
+        /**
+         * 中断后还在跑的任务，线程池没能真正停下来
+         */
+        public List<Task> getStuck() {
+            return stuck;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * 每个提交的任务都有去处：做完、失败、可重投或者卡住
+         */
+        public boolean isAccounted() {
+            return completed + failed + retry.size() + stuck.size() == submitted;
+        }
+
+        public boolean isDrained() {
+            return drained;
+        }
+
+        public boolean isForced() {
+            return forced;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("submitted=%d completed=%d failed=%d cancelled=%d notStarted=%d stuck=%d "
+                            + "(at shutdown: inFlight=%d queued=%d) drained=%b forced=%b interrupted=%d "
+                            + "drain=%dms total=%dms",
+                    submitted, completed, failed, cancelled, notStarted, stuck.size(), inFlightAtStart, queuedAtStart,
+                    drained, forced, interrupted, TimeUnit.NANOSECONDS.toMillis(drainNanos),
+                    TimeUnit.NANOSECONDS.toMillis(totalNanos));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package tool.threadpool.lifecycle;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟发布时关闭：4 个线程，40 个任务，每个分 10 步、每步 40ms，每一步做完算一个检查点
+ * 1. 给足时间：全部做完
+ * 2. 跑 500ms 就关，drain 200ms：没开始的拿回来，正在跑的在下一个检查点退出；
+ * 做完的 + 可重投的正好是全部任务，没有丢也没有重复
+ * 3. 有一个任务不理会取消（忙等）：grace 之后 shutdownNow 中断它也不退，报告里算 stuck
+ * 4. CancellationToken 的等待：取消后 take 返回 null，中断标记不会漏出来
+ */
+public class GracefulShutdownDemo {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("1. " + run(4500, false));
+        System.out.println("2. " + run(500, false));
+        System.out.println("3. " + run(500, true));
+        tokenWait();
+    }
+
+    private static GracefulExecutor.Report run(long runMillis, boolean stubborn) throws InterruptedException {
+        GracefulExecutor executor = new GracefulExecutor(4, "worker");
+        Set<Integer> done = ConcurrentHashMap.newKeySet();
+        if (stubborn) {
+            executor.submit(token -> {
+                long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+            });
+        }
+        for (int i = 0; i < 40; i++) {
+            int id = i;
+            executor.submit(token -> {
+                for (int step = 0; step < 10; step++) {
+                    token.throwIfCancelled();
+                    if (!token.sleep(40, TimeUnit.MILLISECONDS)) {
+                        token.throwIfCancelled();
+                    }
+                }
+                if (!done.add(id)) {
+                    throw new IllegalStateException("task " + id + " ran twice");
+                }
+            });
+        }
+        Thread.sleep(runMillis);
+        GracefulExecutor.Report report = executor.shutdown(200, 200, TimeUnit.MILLISECONDS);
+        System.out.println("   accounted=" + report.isAccounted() + " retry=" + report.getRetry().size()
+                + " completed tasks seen=" + done.size());
+        return report;
+    }
+
+    private static void tokenWait() throws InterruptedException {
+        CancellationToken token = new CancellationToken();
+        LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                String job;
+                while ((job = token.take(queue)) != null) {
+                    System.out.println("   got " + job);
+                }
+                System.out.println("   consumer stopped: " + token + ", interrupted flag="
+                        + Thread.currentThread().isInterrupted());
+            } catch (InterruptedException e) {
+                System.out.println("   unexpected interrupt");
+            }
+        });
+        consumer.start();
+        queue.add("job-1");
+        queue.add("job-2");
+        Thread.sleep(100);
+        token.cancel("deploy");
+        consumer.join();
+    }
+}
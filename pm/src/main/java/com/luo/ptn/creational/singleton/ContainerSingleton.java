@@ -2,22 +2,27 @@ package com.luo.ptn.creational.singleton;
 
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * 原来是 HashMap + containsKey 再 put：多线程下先检查后放不是原子的，HashMap 本身也不是线程安全的
+ * 现在交给 SingletonRegistry：putIfAbsent 语义，也可以注册工厂懒加载
+ */
 public class ContainerSingleton {
-    private static Map<String, Object> singletonMap = new HashMap<>();
+    private static final SingletonRegistry registry = new SingletonRegistry();
 
     public static void putInstance(String key, Object instance) {
         if (StringUtils.isNotBlank(key) && instance != null) {
-            if (!singletonMap.containsKey(key)) {
-
-                singletonMap.put(key, instance);
-            }
+            registry.putInstance(key, instance);
         }
     }
 
     public static Object getInstance(String key) {
-        return singletonMap.get(key);
+        return registry.get(key);
+    }
+
+    /**
+     * 注册工厂，第一次 getInstance 时才创建
+     */
+    public static void register(String key, SingletonRegistry.Factory<?> factory) {
+        registry.register(key, factory);
     }
 }
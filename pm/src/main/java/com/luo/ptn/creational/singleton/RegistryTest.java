@@ -0,0 +1,173 @@
+package com.luo.ptn.creational.singleton;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SingletonRegistry：
+ * 1. 2000 个插件 key，8 个线程同时随机 get，每个 key 的工厂只执行一次；插件依赖前一个插件
+ * 2. 建好之后的查找速度
+ * 3. 同一线程的循环依赖、两个线程互相等的循环依赖都会报错而不是死锁
+ * 4. 工厂抛异常后可以重试
+ */
+public class RegistryTest {
+
+    private static final int PLUGINS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        final SingletonRegistry registry = new SingletonRegistry();
+        final AtomicInteger created = new AtomicInteger();
+        for (int i = 0; i < PLUGINS; i++) {
+            final int n = i;
+            registry.register("plugin-" + i, new SingletonRegistry.Factory<Object>() {
+                @Override
+                public Object create(SingletonRegistry r) throws Exception {
+                    created.incrementAndGet();
+                    // 每 10 个依赖前一个
+                    if (n % 10 != 0) {
+                        r.get("plugin-" + (n - 1));
+                    }
+                    TimeUnit.MICROSECONDS.sleep(200);
+                    return "plugin#" + n;
+                }
+            });
+        }
+        runThreads(8, new Runnable() {
+            @Override
+            public void run() {
+                for (int k = 0; k < PLUGINS; k++) {
+                    registry.get("plugin-" + (int) (Math.random() * PLUGINS));
+                }
+                for (int k = 0; k < PLUGINS; k++) {
+                    registry.get("plugin-" + k);
+                }
+            }
+        });
+        List<SingletonRegistry.Stat> stats = registry.stats();
+        int waited = 0;
+        for (SingletonRegistry.Stat s : stats) {
+            waited += s.getWaiters() > 0 ? 1 : 0;
+        }
+        System.out.println("created " + created.get() + " of " + PLUGINS + " keys, " + waited
+                + " keys had waiting threads, slowest: " + stats.get(0));
+
+        String[] keys = new String[1024];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "plugin-" + i;
+        }
+        int lookups = 10_000_000;
+        long sink = 0;
+        for (int round = 0; round < 2; round++) {
+            long st = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink += registry.get(keys[i & 1023]).hashCode();
+            }
+            if (round == 1) {
+                System.out.printf("warm lookups: %.1f ns/op%n", (System.nanoTime() - st) / (double) lookups);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+
+        cycles();
+    }
+
+    private static void cycles() throws InterruptedException {
+        final SingletonRegistry registry = new SingletonRegistry();
+        registry.register("a", new SingletonRegistry.Factory<Object>() {
+            @Override
+            public Object create(SingletonRegistry r) {
+                return r.get("b");
+            }
+        });
+        registry.register("b", new SingletonRegistry.Factory<Object>() {
+            @Override
+            public Object create(SingletonRegistry r) {
+                return r.get("a");
+            }
+        });
+        try {
+            registry.get("a");
+        } catch (IllegalStateException e) {
+            System.out.println("same thread: " + e.getMessage());
+        }
+
+        // x 等 y，y 等 x，两个线程各建一个
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final SingletonRegistry cross = new SingletonRegistry();
+        SingletonRegistry.Factory<Object> x = new SingletonRegistry.Factory<Object>() {
+            @Override
+            public Object create(SingletonRegistry r) throws Exception {
+                bothStarted.countDown();
+                bothStarted.await();
+                return r.get("y");
+            }
+        };
+        SingletonRegistry.Factory<Object> y = new SingletonRegistry.Factory<Object>() {
+            @Override
+            public Object create(SingletonRegistry r) throws Exception {
+                bothStarted.countDown();
+                bothStarted.await();
+                return r.get("x");
+            }
+        };
+        cross.register("x", x);
+        cross.register("y", y);
+        Thread t1 = new Thread(getter(cross, "x"));
+        Thread t2 = new Thread(getter(cross, "y"));
+        t1.start();
+        t2.start();
+        t1.join(2000);
+        t2.join(2000);
+        System.out.println("cross thread: no deadlock=" + (!t1.isAlive() && !t2.isAlive()));
+
+        final AtomicInteger attempts = new AtomicInteger();
+        registry.register("flaky", new SingletonRegistry.Factory<Object>() {
+            @Override
+            public Object create(SingletonRegistry r) {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("first attempt fails");
+                }
+                return "ok";
+            }
+        });
+        try {
+            registry.get("flaky");
+        } catch (IllegalStateException e) {
+            System.out.println("flaky: " + e.getMessage() + ", retry -> " + registry.get("flaky"));
+        }
+    }
+
+    private static Runnable getter(final SingletonRegistry registry, final String key) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    System.out.println("  get " + key + " = " + registry.get(key));
+                } catch (IllegalStateException e) {
+                    System.out.println("  get " + key + " failed: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    private static void runThreads(int threads, final Runnable body) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        body.run();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,271 @@
+package com.luo.ptn.creational.singleton;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按 key 的懒加载单例容器（ContainerSingleton 的线程安全版本，也是 Lazy2CheckSingleton 这类写法推广到任意多个 key）：
+ * 1. 已经创建好的：一次 ConcurrentHashMap.get + 一次 volatile 读，不加锁
+ * 2. 第一次用：putIfAbsent 一个 FutureTask 占位，抢到的线程自己执行创建，其他线程在这个 FutureTask 上等；
+ * 没有全局锁，不同 key 同时创建互不影响，同一个 key 只创建一次
+ * 3. 创建失败：把占位删掉并抛出异常，下次 get 会重试
+ * 4. 循环依赖：工厂里可以 get 别的 key。同一线程里 a -> b -> a 用线程自己的创建栈发现；
+ * 两个线程互相等（线程 1 建 a 要等 b，线程 2 建 b 要等 a）沿着"谁在等谁"往下找，绕回自己就报错，而不是死锁
+ * 5. 统计：每个 key 的创建耗时、创建线程、有几个线程等过它
+ */
+public class SingletonRegistry {
+
+    /**
+     * 创建实例；可以通过 registry 拿依赖的单例
+     */
+    public interface Factory<T> {
+        T create(SingletonRegistry registry) throws Exception;
+    }
+
+    private final class Holder {
+        final String key;
+        final FutureTask<Object> task;
+        final AtomicInteger waiters = new AtomicInteger();
+        volatile Object instance;
+        volatile Thread creator;
+        volatile long createNanos;
+
+        // 占位的线程就是创建的线程；在构造时就设好，等待的线程查循环依赖时不会看到 null
+        Holder(final String key, final Factory<?> factory) {
+            this.key = key;
+            this.creator = Thread.currentThread();
+            this.task = new FutureTask<Object>(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return factory.create(SingletonRegistry.this);
+                }
+            });
+        }
+
+        Holder(String key, Object instance) {
+            this.key = key;
+            this.task = null;
+            this.instance = instance;
+        }
+    }
+
+    private final ConcurrentMap<String, Factory<?>> factories = new ConcurrentHashMap<String, Factory<?>>();
+
+    private final ConcurrentMap<String, Holder> holders = new ConcurrentHashMap<String, Holder>();
+
+    // 线程正在等哪个 key 的创建，查跨线程的循环依赖用
+    private final ConcurrentMap<Thread, Holder> waitingOn = new ConcurrentHashMap<Thread, Holder>();
+
+    // 当前线程正在创建的 key，按顺序
+    private final ThreadLocal<LinkedHashSet<String>> creating = new ThreadLocal<LinkedHashSet<String>>() {
+        @Override
+        protected LinkedHashSet<String> initialValue() {
+            return new LinkedHashSet<String>();
+        }
+    };
+
+    /**
+     * 注册工厂，第一次 get 时才创建；已经注册过返回 false
+     */
+    public boolean register(String key, Factory<?> factory) {
+        if (key == null || factory == null) {
+            throw new IllegalArgumentException("key and factory must not be null");
+        }
+        return factories.putIfAbsent(key, factory) == null;
+    }
+
+    /**
+     * 直接放一个已经建好的实例（ContainerSingleton.putInstance），已经有了返回 false
+     */
+    public boolean putInstance(String key, Object instance) {
+        if (key == null || instance == null) {
+            throw new IllegalArgumentException("key and instance must not be null");
+        }
+        return holders.putIfAbsent(key, new Holder(key, instance)) == null;
+    }
+
+    public <T> T get(String key, Class<T> type) {
+        return type.cast(get(key));
+    }
+
+    /**
+     * 没注册过的 key 返回 null
+     */
+    public Object get(String key) {
+        Holder h = holders.get(key);
+        if (h != null) {
+            Object instance = h.instance;
+            if (instance != null) {
+                return instance;
+            }
+        } else {
+            Factory<?> factory = factories.get(key);
+            if (factory == null) {
+                return null;
+            }
+            Holder mine = new Holder(key, factory);
+            h = holders.putIfAbsent(key, mine);
+            if (h == null) {
+                return create(mine);
+            }
+        }
+        return await(h);
+    }
+
+    private Object create(Holder h) {
+        LinkedHashSet<String> stack = creating.get();
+        if (!stack.add(h.key)) {
+            holders.remove(h.key, h);
+            throw new IllegalStateException("circular dependency: " + path(stack, h.key));
+        }
+        long start = System.nanoTime();
+        try {
+            h.task.run();
+            h.createNanos = System.nanoTime() - start;
+            h.instance = h.task.get();
+            return h.instance;
+        } catch (ExecutionException e) {
+            holders.remove(h.key, h);
+            throw failure(h.key, e.getCause());
+        } catch (InterruptedException e) {
+            // task 已经跑完了，get 不会阻塞
+            Thread.currentThread().interrupt();
+            holders.remove(h.key, h);
+            throw new IllegalStateException("interrupted creating " + h.key, e);
+        } finally {
+            stack.remove(h.key);
+            h.creator = null;
+        }
+    }
+
+    // 等别的线程（或者自己，那就是循环依赖）创建完
+    private Object await(Holder h) {
+        Thread me = Thread.currentThread();
+        if (creating.get().contains(h.key)) {
+            throw new IllegalStateException("circular dependency: " + path(creating.get(), h.key));
+        }
+        waitingOn.put(me, h);
+        try {
+            checkDeadlock(me, h);
+            h.waiters.incrementAndGet();
+            return h.task.get();
+        } catch (ExecutionException e) {
+            throw failure(h.key, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for " + h.key, e);
+        } finally {
+            waitingOn.remove(me);
+        }
+    }
+
+    // 沿着 等的 key -> 创建它的线程 -> 那个线程在等的 key 往下走，绕回自己就是跨线程的循环依赖
+    private void checkDeadlock(Thread me, Holder h) {
+        List<String> chain = new ArrayList<String>();
+        chain.add(h.key);
+        Holder next = h;
+        for (int depth = 0; next != null && depth < 1000; depth++) {
+            Thread creator = next.creator;
+            if (creator == null) {
+                return;
+            }
+            if (creator == me) {
+                waitingOn.remove(me);
+                throw new IllegalStateException("circular dependency across threads: " + chain);
+            }
+            next = waitingOn.get(creator);
+            if (next != null) {
+                chain.add(next.key);
+            }
+        }
+    }
+
+    private static String path(Set<String> stack, String key) {
+        StringBuilder sb = new StringBuilder();
+        for (String k : stack) {
+            sb.append(k).append(" -> ");
+        }
+        return sb.append(key).toString();
+    }
+
+    private static RuntimeException failure(String key, Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException("failed to create " + key, cause);
+    }
+
+    public boolean isCreated(String key) {
+        Holder h = holders.get(key);
+        return h != null && h.instance != null;
+    }
+
+    /**
+     * 已经创建好的 key 的统计
+     */
+    public List<Stat> stats() {
+        List<Stat> stats = new ArrayList<Stat>();
+        for (Map.Entry<String, Holder> e : holders.entrySet()) {
+            Holder h = e.getValue();
+            if (h.instance != null) {
+                stats.add(new Stat(h.key, h.createNanos, h.waiters.get()));
+            }
+        }
+        Collections.sort(stats, new Comparator<Stat>() {
+            @Override
+            public int compare(Stat a, Stat b) {
+                return Long.compare(b.createNanos, a.createNanos);
+            }
+        });
+        return stats;
+    }
+
+    public static final class Stat {
+        private final String key;
+        private final long createNanos;
+        private final int waiters;
+
+        Stat(String key, long createNanos, int waiters) {
+            this.key = key;
+            this.createNanos = createNanos;
+            this.waiters = waiters;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 创建耗时（含创建依赖的时间），putInstance 放进来的是 0
+         */
+        public long getCreateNanos() {
+            return createNanos;
+        }
+
+        /**
+         * 创建过程中有几个线程在等它
+         */
+        public int getWaiters() {
+            return waiters;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.2fms, waiters=%d", key, createNanos / 1e6, waiters);
+        }
+    }
+}
@@ -7,6 +7,10 @@ import java.io.PrintStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 
+/**
+ * 一个客户端一个线程的阻塞版本，连接一多线程就撑不住
+ * 同样的按行 + "bye" 协议，用 Selector 的版本见 nio.ReactorServer，压测用 nio.LoadClient
+ */
 public class Server {
     public static void main(String[] args) throws Exception {
         ServerSocket serverSocket = new ServerSocket(2000);
@@ -0,0 +1,59 @@
+package com.luo.base.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 直接内存 ByteBuffer 池：
+ * allocateDirect 很慢，还要等 GC 才能释放堆外内存，所以写队列用的缓冲区用完放回来复用
+ * 每个 Reactor 线程一个池，只有这个线程用，不需要同步
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+
+    private final int maxPooled;
+
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    private long allocated;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer b = free.pollFirst();
+        if (b == null) {
+            allocated++;
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        return b;
+    }
+
+    /**
+     * 池满了就不要了，交给 GC
+     */
+    public void release(ByteBuffer b) {
+        if (free.size() < maxPooled) {
+            b.clear();
+            free.offerFirst(b);
+        }
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 一共 allocateDirect 过几次
+     */
+    public long allocated() {
+        return allocated;
+    }
+
+    public int pooled() {
+        return free.size();
+    }
+}
@@ -0,0 +1,162 @@
+package com.luo.base.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * 一个客户端连接，所有方法都只在它所属的 Reactor 线程里调用
+ * 写：编码后放进写队列（池里的直接内存缓冲区），马上尝试写一次，写不完的注册 OP_WRITE 等可写再写
+ * 背压：写队列里积压超过 highWater 字节（对方不读），就不再读这个连接（去掉 OP_READ），
+ * 不读就不会产生新的回复；积压降到 lowWater 以下再恢复读。慢客户端只会把自己卡住，不会把服务端内存撑爆
+ */
+public class Connection {
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Reactor reactor;
+    private final LineCodec codec;
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean readPaused;
+    private boolean closeAfterFlush;
+    private boolean closed;
+
+    Connection(SocketChannel channel, SelectionKey key, Reactor reactor, int maxLineLength) {
+        this.channel = channel;
+        this.key = key;
+        this.reactor = reactor;
+        this.codec = new LineCodec(maxLineLength);
+    }
+
+    void onReadable(ByteBuffer readBuffer, LineHandler handler) throws IOException {
+        readBuffer.clear();
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            // 对方发完最后一行就半关闭了：还在队列里的回复要发完再关，直接 close 就丢了
+            closeAfterFlush();
+            return;
+        }
+        readBuffer.flip();
+        codec.decode(readBuffer, line -> {
+            if (!closeAfterFlush && !closed) {
+                reactor.stats.linesIn.increment();
+                handler.onLine(this, line);
+            }
+        });
+    }
+
+    /**
+     * 发一行，会自动加换行
+     */
+    public void write(String line) throws IOException {
+        if (closed || closeAfterFlush) {
+            return;
+        }
+        byte[] bytes = LineCodec.encode(line);
+        BufferPool pool = reactor.pool;
+        // 接在队尾那个缓冲区后面，放不下再拿新的
+        ByteBuffer tail = writeQueue.peekLast();
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (tail == null || !tail.hasRemaining()) {
+                tail = pool.acquire();
+                writeQueue.addLast(tail);
+            }
+            int n = Math.min(tail.remaining(), bytes.length - offset);
+            tail.put(bytes, offset, n);
+            offset += n;
+        }
+        queuedBytes += bytes.length;
+        reactor.stats.linesOut.increment();
+        flush();
+    }
+
+    /**
+     * 队列里的都写出去之后关闭（"bye"）
+     */
+    public void closeAfterFlush() throws IOException {
+        closeAfterFlush = true;
+        if (writeQueue.isEmpty()) {
+            close();
+            return;
+        }
+        // 不再读：之后的行反正不处理，读到 EOF 以后还会一直可读
+        interest(SelectionKey.OP_READ, false);
+    }
+
+    // 队列里的缓冲区都是"写模式"（position 是写到哪里）；发送时临时 flip，没发完的 compact 回写模式
+    void flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer head = writeQueue.peekFirst();
+            head.flip();
+            int written = channel.write(head);
+            queuedBytes -= written;
+            if (head.hasRemaining()) {
+                head.compact();
+                break;
+            }
+            writeQueue.pollFirst();
+            reactor.pool.release(head);
+        }
+        if (writeQueue.isEmpty()) {
+            if (closeAfterFlush) {
+                close();
+                return;
+            }
+            interest(SelectionKey.OP_WRITE, false);
+        } else {
+            interest(SelectionKey.OP_WRITE, true);
+        }
+        Reactor.Config config = reactor.config;
+        if (!readPaused && queuedBytes > config.highWater) {
+            readPaused = true;
+            reactor.stats.pauses.increment();
+            interest(SelectionKey.OP_READ, false);
+        } else if (readPaused && queuedBytes <= config.lowWater) {
+            readPaused = false;
+            if (!closeAfterFlush) {
+                interest(SelectionKey.OP_READ, true);
+            }
+        }
+    }
+
+    private void interest(int op, boolean on) {
+        if (!key.isValid()) {
+            return;
+        }
+        int ops = key.interestOps();
+        int next = on ? ops | op : ops & ~op;
+        if (next != ops) {
+            key.interestOps(next);
+        }
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 关闭时的异常没有可做的
+        }
+        for (ByteBuffer b : writeQueue) {
+            reactor.pool.release(b);
+        }
+        writeQueue.clear();
+        reactor.stats.open.decrement();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public long queuedBytes() {
+        return queuedBytes;
+    }
+}
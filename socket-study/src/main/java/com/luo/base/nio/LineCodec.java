@@ -0,0 +1,57 @@
+package com.luo.base.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按行切分（代替 BufferedReader.readLine）：
+ * 一次 read 可能读到半行，也可能读到好几行；没凑成一行的字节留在 pending 里等下一次
+ * 行尾是 \n，前面的 \r 去掉；一行超过 maxLineLength 字节就抛异常，防止对方不发换行把内存撑爆
+ * 每个连接一个，不是线程安全的
+ */
+public class LineCodec {
+
+    public interface LineConsumer {
+        void onLine(String line) throws IOException;
+    }
+
+    private final int maxLineLength;
+
+    private byte[] pending = new byte[128];
+
+    private int length;
+
+    public LineCodec(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * 把 in 里剩下的字节都消费掉，每凑成一行调一次 consumer
+     */
+    public void decode(ByteBuffer in, LineConsumer consumer) throws IOException {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b == '\n') {
+                int end = length > 0 && pending[length - 1] == '\r' ? length - 1 : length;
+                String line = new String(pending, 0, end, StandardCharsets.UTF_8);
+                length = 0;
+                consumer.onLine(line);
+            } else {
+                if (length == maxLineLength) {
+                    throw new IOException("line longer than " + maxLineLength + " bytes");
+                }
+                if (length == pending.length) {
+                    byte[] bigger = new byte[Math.min(maxLineLength, pending.length * 2)];
+                    System.arraycopy(pending, 0, bigger, 0, length);
+                    pending = bigger;
+                }
+                pending[length++] = b;
+            }
+        }
+    }
+
+    public static byte[] encode(String line) {
+        return (line + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,23 @@
+package com.luo.base.nio;
+
+import java.io.IOException;
+
+/**
+ * 收到一行时调用，在连接所属的 Reactor 线程里执行，不能做阻塞的事
+ */
+public interface LineHandler {
+
+    void onLine(Connection connection, String line) throws IOException;
+
+    /**
+     * 原来 Server / Client 的协议：收到什么回什么，收到 "bye" 回 "bye" 然后关闭
+     */
+    LineHandler ECHO = (connection, line) -> {
+        if ("bye".equalsIgnoreCase(line)) {
+            connection.write("bye");
+            connection.closeAfterFlush();
+        } else {
+            connection.write(line);
+        }
+    };
+}
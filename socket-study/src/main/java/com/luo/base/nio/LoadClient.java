@@ -0,0 +1,321 @@
+package com.luo.base.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测客户端：少数几个线程用 Selector 维持上万个连接（原来的 Client 一个连接要一个线程阻塞读）
+ * 1. 建连：非阻塞 connect，同时在建的最多 500 个，不把服务端的 accept 队列挤爆
+ * 2. 全部连上后，每个连接不停地发 "ping 时间戳"、等回显，统计往返次数和延迟
+ * 3. 最后每个连接发 "bye"，收到 "bye" 并且服务端关闭连接才算正常结束
+ * args: [host，默认 127.0.0.1] [端口，默认 2000] [连接数，默认 10000] [ping 秒数，默认 10] [线程数，默认 4]
+ */
+public class LoadClient {
+
+    private static final int MAX_CONNECTING = 500;
+
+    private enum Phase {
+        CONNECTING, PING, BYE, DONE
+    }
+
+    private static final class Conn {
+        final SocketChannel channel;
+        final LineCodec codec = new LineCodec(1024);
+        SelectionKey key;
+        ByteBuffer out;
+        // 发出去的 ping 还没收到回复；out == null 只说明写完了，不说明回复回来了
+        boolean pingInFlight;
+        boolean byeSent;
+        boolean byeReceived;
+
+        Conn(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final InetSocketAddress address;
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder connectFailed = new LongAdder();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger peakOpen = new AtomicInteger();
+    private final LongAdder roundTrips = new LongAdder();
+    private final LongAdder rttNanos = new LongAdder();
+    private final LongAccumulator maxRtt = new LongAccumulator(Math::max, 0);
+    private final LongAdder cleanBye = new LongAdder();
+    private volatile Phase phase = Phase.CONNECTING;
+
+    private LoadClient(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        new LoadClient(new InetSocketAddress(host, port)).run(connections, seconds, threads);
+    }
+
+    private void run(int connections, int seconds, int threads) throws Exception {
+        CountDownLatch allConnected = new CountDownLatch(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int share = connections / threads + (i < connections % threads ? 1 : 0);
+            Worker w = new Worker(share, allConnected, done);
+            workers.add(w);
+            new Thread(w, "load-" + i).start();
+        }
+        long st = System.nanoTime();
+        allConnected.await();
+        System.out.printf("connected %d (failed %d) in %dms, open=%d%n", connected.sum(), connectFailed.sum(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - st), open.get());
+
+        phase = Phase.PING;
+        for (Worker w : workers) {
+            w.selector.wakeup();
+        }
+        for (int s = 0; s < seconds; s++) {
+            long before = roundTrips.sum();
+            TimeUnit.SECONDS.sleep(1);
+            System.out.printf("  round trips/s=%d open=%d%n", roundTrips.sum() - before, open.get());
+        }
+        phase = Phase.BYE;
+        for (Worker w : workers) {
+            w.selector.wakeup();
+        }
+        done.await(30, TimeUnit.SECONDS);
+        long trips = roundTrips.sum();
+        System.out.printf("peak open=%d, round trips=%d (%.0f/s), rtt avg=%.2fms max=%.2fms, clean bye=%d, open=%d%n",
+                peakOpen.get(), trips, trips / (double) seconds, trips == 0 ? 0 : rttNanos.sum() / 1e6 / trips,
+                maxRtt.get() / 1e6, cleanBye.sum(), open.get());
+        phase = Phase.DONE;
+    }
+
+    private final class Worker implements Runnable {
+        final Selector selector;
+        final int total;
+        final CountDownLatch allConnected;
+        final CountDownLatch done;
+        final List<Conn> conns = new ArrayList<>();
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(4096);
+        int started;
+        int connecting;
+        int finished;
+        boolean reportedConnected;
+        Phase seen = Phase.CONNECTING;
+
+        Worker(int total, CountDownLatch allConnected, CountDownLatch done) throws IOException {
+            this.selector = Selector.open();
+            this.total = total;
+            this.allConnected = allConnected;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (finished < total) {
+                    while (started < total && connecting < MAX_CONNECTING) {
+                        startConnect();
+                    }
+                    if (!reportedConnected && started == total && connecting == 0) {
+                        reportedConnected = true;
+                        allConnected.countDown();
+                    }
+                    Phase p = phase;
+                    if (p != seen) {
+                        seen = p;
+                        onPhase(p);
+                    }
+                    selector.select(100);
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Conn c = (Conn) key.attachment();
+                        try {
+                            if (key.isConnectable()) {
+                                onConnect(c);
+                            } else {
+                                if (key.isReadable()) {
+                                    onReadable(c);
+                                }
+                                if (key.isValid() && key.isWritable()) {
+                                    flush(c);
+                                }
+                            }
+                        } catch (IOException e) {
+                            close(c);
+                        }
+                    }
+                    if (phase == Phase.DONE) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                if (!reportedConnected) {
+                    allConnected.countDown();
+                }
+                done.countDown();
+            }
+        }
+
+        private void startConnect() {
+            started++;
+            try {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Conn c = new Conn(channel);
+                c.key = channel.register(selector, 0, c);
+                if (channel.connect(address)) {
+                    connected(c);
+                } else {
+                    connecting++;
+                    c.key.interestOps(SelectionKey.OP_CONNECT);
+                }
+            } catch (IOException e) {
+                connectFailed.increment();
+                finished++;
+            }
+        }
+
+        private void onConnect(Conn c) throws IOException {
+            connecting--;
+            try {
+                c.channel.finishConnect();
+            } catch (IOException e) {
+                connectFailed.increment();
+                c.key.cancel();
+                c.channel.close();
+                finished++;
+                return;
+            }
+            connected(c);
+        }
+
+        private void connected(Conn c) {
+            connected.increment();
+            peakOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+            conns.add(c);
+            c.key.interestOps(SelectionKey.OP_READ);
+            if (phase == Phase.PING) {
+                ping(c);
+            } else if (phase == Phase.BYE) {
+                bye(c);
+            }
+        }
+
+        private void onPhase(Phase p) {
+            for (Conn c : conns) {
+                if (!c.channel.isOpen()) {
+                    continue;
+                }
+                if (p == Phase.PING) {
+                    ping(c);
+                } else if (p == Phase.BYE && !c.pingInFlight) {
+                    // 还有 ping 在路上的连接，收到回复后再发 bye
+                    bye(c);
+                }
+            }
+        }
+
+        private void ping(Conn c) {
+            if (!c.pingInFlight) {
+                c.pingInFlight = true;
+                send(c, "ping " + System.nanoTime());
+            }
+        }
+
+        private void bye(Conn c) {
+            if (!c.byeSent) {
+                c.byeSent = true;
+                send(c, "bye");
+            }
+        }
+
+        private void onReadable(Conn c) throws IOException {
+            readBuffer.clear();
+            int n = c.channel.read(readBuffer);
+            if (n < 0) {
+                if (c.byeReceived) {
+                    cleanBye.increment();
+                }
+                close(c);
+                return;
+            }
+            readBuffer.flip();
+            c.codec.decode(readBuffer, line -> {
+                if (line.startsWith("ping ")) {
+                    long rtt = System.nanoTime() - Long.parseLong(line.substring(5));
+                    roundTrips.increment();
+                    rttNanos.add(rtt);
+                    maxRtt.accumulate(rtt);
+                    c.pingInFlight = false;
+                    if (phase == Phase.PING) {
+                        ping(c);
+                    } else if (phase == Phase.BYE) {
+                        bye(c);
+                    }
+                } else if ("bye".equalsIgnoreCase(line)) {
+                    c.byeReceived = true;
+                }
+            });
+        }
+
+        private void send(Conn c, String line) {
+            if (c.out != null) {
+                // 上一行还没写完：这个压测里每个连接同一时间只有一行在发
+                return;
+            }
+            c.out = ByteBuffer.wrap(LineCodec.encode(line));
+            try {
+                flush(c);
+            } catch (IOException e) {
+                close(c);
+            }
+        }
+
+        private void flush(Conn c) throws IOException {
+            c.channel.write(c.out);
+            if (c.out.hasRemaining()) {
+                c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                c.out = null;
+                if (c.key.isValid()) {
+                    c.key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        }
+
+        private void close(Conn c) {
+            if (!c.channel.isOpen()) {
+                return;
+            }
+            c.key.cancel();
+            try {
+                c.channel.close();
+            } catch (IOException ignored) {
+                // 压测客户端关不掉就算了
+            }
+            open.decrementAndGet();
+            finished++;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.luo.base.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个 Selector 一个线程，管很多连接：
+ * 1. Acceptor 把新连接放进 pending 队列再 wakeup，由 Reactor 线程自己注册（在别的线程里 register 会和 select 互相卡住）
+ * 2. 所有连接共用一个直接内存的读缓冲区：读出来马上按行切分，切不完的留在连接自己的 LineCodec 里
+ * 3. 写队列的缓冲区从这个线程自己的 BufferPool 里拿
+ */
+public class Reactor extends Thread {
+
+    /**
+     * 参数
+     */
+    public static final class Config {
+        public int bufferSize = 4096;
+        public int maxPooledBuffers = 1024;
+        public int maxLineLength = 8192;
+        // 一个连接写队列积压超过这么多字节就暂停读它
+        public long highWater = 64 * 1024;
+        public long lowWater = 16 * 1024;
+    }
+
+    /**
+     * 所有 Reactor 共用的计数
+     */
+    public static final class Stats {
+        public final LongAdder accepted = new LongAdder();
+        public final LongAdder open = new LongAdder();
+        public final LongAdder linesIn = new LongAdder();
+        public final LongAdder linesOut = new LongAdder();
+        public final LongAdder pauses = new LongAdder();
+    }
+
+    final Config config;
+    final Stats stats;
+    final BufferPool pool;
+    private final LineHandler handler;
+    private final Selector selector;
+    private final ByteBuffer readBuffer;
+    private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    Reactor(String name, Config config, Stats stats, LineHandler handler) throws IOException {
+        super(name);
+        this.config = config;
+        this.stats = stats;
+        this.handler = handler;
+        this.pool = new BufferPool(config.bufferSize, config.maxPooledBuffers);
+        this.selector = Selector.open();
+        this.readBuffer = ByteBuffer.allocateDirect(config.bufferSize);
+    }
+
+    /**
+     * Acceptor 线程调用
+     */
+    void register(SocketChannel channel) {
+        pending.add(channel);
+        if (!running) {
+            // 已经在退出了，Reactor 线程可能不会再来取
+            closePending();
+            return;
+        }
+        selector.wakeup();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPending();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            c.onReadable(readBuffer, handler);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            c.flush();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // 对方重置连接、行太长、handler 出错：只关这一个连接
+                        c.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            // select 出错退出的也一样：之后 register 进来的由 register 自己关
+            running = false;
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            // 放进了 pending 还没注册的连接也要关，不然就漏了
+            closePending();
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // 退出时关不掉也没关系
+            }
+        }
+    }
+
+    private void registerPending() {
+        for (SocketChannel channel; (channel = pending.poll()) != null; ) {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key, this, config.maxLineLength));
+                stats.open.increment();
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 注册失败的连接直接丢掉
+                }
+            }
+        }
+    }
+
+    private void closePending() {
+        for (SocketChannel channel; (channel = pending.poll()) != null; ) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // 退出时关不掉也没关系
+            }
+        }
+    }
+
+    public BufferPool pool() {
+        return pool;
+    }
+}
@@ -0,0 +1,108 @@
+package com.luo.base.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 非阻塞的行协议服务器（代替 Server 的一个连接一个线程）：
+ * 1. 一个 Acceptor 线程阻塞在 accept 上，接到的连接轮流交给 N 个 Reactor
+ * 2. 每个 Reactor 一个 Selector 一个线程，管几千个连接；线程数和连接数无关
+ * 3. 协议和原来一样：按行收发，收到什么回什么，"bye" 回 "bye" 后关闭，所以原来的 Client 可以直接连
+ * args: [端口，默认 2000] [Reactor 个数，默认 CPU 核数]
+ */
+public class ReactorServer {
+
+    private final ServerSocketChannel serverChannel;
+    private final Reactor[] reactors;
+    private final Reactor.Stats stats = new Reactor.Stats();
+    private final Thread acceptor;
+
+    public ReactorServer(int port, int reactorCount, Reactor.Config config, LineHandler handler) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        // backlog 大一点：压测时一下子来几千个连接
+        serverChannel.bind(new InetSocketAddress(port), 4096);
+        this.reactors = new Reactor[reactorCount];
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor("reactor-" + i, config, stats, handler);
+        }
+        this.acceptor = new Thread(this::acceptLoop, "acceptor");
+    }
+
+    public void start() {
+        for (Reactor r : reactors) {
+            r.start();
+        }
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.socket().setTcpNoDelay(true);
+                stats.accepted.increment();
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // 比如文件描述符用完了：等一下再接，不要空转
+                System.out.println("accept failed: " + e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public void stop() throws IOException, InterruptedException {
+        serverChannel.close();
+        acceptor.join();
+        for (Reactor r : reactors) {
+            r.shutdown();
+            r.join();
+        }
+    }
+
+    public Reactor.Stats stats() {
+        return stats;
+    }
+
+    public int port() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    public String describe() {
+        long pooled = 0;
+        long allocated = 0;
+        for (Reactor r : reactors) {
+            pooled += r.pool().pooled();
+            allocated += r.pool().allocated();
+        }
+        return String.format("open=%d accepted=%d linesIn=%d linesOut=%d readPauses=%d directBuffers=%d(pooled %d)",
+                stats.open.sum(), stats.accepted.sum(), stats.linesIn.sum(), stats.linesOut.sum(),
+                stats.pauses.sum(), allocated, pooled);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int reactors = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ReactorServer server = new ReactorServer(port, reactors, new Reactor.Config(), LineHandler.ECHO);
+        server.start();
+        System.out.println("服务器ok, port:" + server.port() + " reactors:" + reactors);
+        long lastIn = 0;
+        for (; ; ) {
+            TimeUnit.SECONDS.sleep(5);
+            long in = server.stats().linesIn.sum();
+            System.out.println(server.describe() + String.format(" lines/s=%d", (in - lastIn) / 5));
+            lastIn = in;
+        }
+    }
+}
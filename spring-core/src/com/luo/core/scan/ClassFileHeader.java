@@ -0,0 +1,174 @@
+package com.luo.core.scan;
+
+import com.luo.lang.Nullable;
+import com.luo.util.ClassUtils;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+
+/**
+ * the few facts of a class file the scanner needs: name, super name and access flags
+ * read straight from the class file bytes(magic, constant pool, access flags, this/super),
+ * the class is never loaded
+ */
+public final class ClassFileHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_ENUM = 0x4000;
+
+    //constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final String className;
+
+    @Nullable
+    private final String superClassName;
+
+    private final int accessFlags;
+
+    public ClassFileHeader(String className, @Nullable String superClassName, int accessFlags) {
+        this.className = className;
+        this.superClassName = superClassName;
+        this.accessFlags = accessFlags;
+    }
+
+    /**
+     * read the header of a class file, the stream is read only up to the super class index
+     *
+     * @param in class file content, not closed here
+     * @return the header
+     * @throws IOException if it is not a class file
+     */
+    public static ClassFileHeader read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        //-1 magic and version
+        if (data.readInt() != MAGIC) {
+            throw new IOException("not a class file: bad magic number");
+        }
+        data.readUnsignedShort();//minor
+        data.readUnsignedShort();//major
+
+        //-2 constant pool: keep the utf8 strings and the class -> name index
+        int count = data.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNameIndex = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = data.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndex[i] = data.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    skip(data, 2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    skip(data, 3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    skip(data, 4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    skip(data, 8);
+                    //8-byte constants take two slots
+                    i++;
+                    break;
+                default:
+                    throw new IOException("unknown constant pool tag " + tag + " at index " + i);
+            }
+        }
+
+        //-3 access flags, this class and super class
+        int accessFlags = data.readUnsignedShort();
+        int thisClass = data.readUnsignedShort();
+        int superClass = data.readUnsignedShort();
+        String className = ClassUtils.convertResourcePathToClassName(utf8[classNameIndex[thisClass]]);
+        String superClassName = (superClass != 0 ?
+                ClassUtils.convertResourcePathToClassName(utf8[classNameIndex[superClass]]) : null);
+        return new ClassFileHeader(className, superClassName, accessFlags);
+    }
+
+    private static void skip(DataInputStream data, int n) throws IOException {
+        if (data.skipBytes(n) != n) {
+            throw new IOException("truncated class file");
+        }
+    }
+
+    public String getClassName() {
+        return this.className;
+    }
+
+    @Nullable
+    public String getSuperClassName() {
+        return this.superClassName;
+    }
+
+    public int getAccessFlags() {
+        return this.accessFlags;
+    }
+
+    public boolean isInterface() {
+        return (this.accessFlags & ACC_INTERFACE) != 0;
+    }
+
+    public boolean isAnnotation() {
+        return (this.accessFlags & ACC_ANNOTATION) != 0;
+    }
+
+    public boolean isEnum() {
+        return (this.accessFlags & ACC_ENUM) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (this.accessFlags & ACC_ABSTRACT) != 0;
+    }
+
+    //a class that can be instantiated: not interface, not abstract
+    public boolean isConcrete() {
+        return !isInterface() && !isAbstract();
+    }
+
+    public boolean isPublic() {
+        return Modifier.isPublic(this.accessFlags);
+    }
+
+    @Override
+    public String toString() {
+        return this.className + " extends " + this.superClassName + " [0x" + Integer.toHexString(this.accessFlags) + "]";
+    }
+}
@@ -0,0 +1,489 @@
+package com.luo.core.scan;
+
+import com.luo.lang.Nullable;
+import com.luo.util.Assert;
+import com.luo.util.ClassUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Queue;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * scan class path roots(directories and jar files) for class files of a package pattern
+ * <p>
+ * - every directory and every slice of jar entries is a fork/join task
+ * - class files are matched by resource path and read with {@link ClassFileHeader}, no class loading
+ * - results are streamed: a header is handed to the caller as soon as a task has read it
+ * - with an index dir, every jar is indexed once per path, size and last-modified time,
+ * an unchanged jar is read from its index and never rescanned
+ * <p>
+ * package patterns: "com.luo" or "com.luo.*" for the package itself, "com.luo.**" for sub packages too
+ */
+public class ClassPathScanner {
+
+    private static final String CLASS_FILE_SUFFIX = ClassUtils.CLASS_FILE_SUFFIX;
+
+    private static final String JAR_FILE_EXTENSION = ".jar";
+
+    private static final String INDEX_FILE_SUFFIX = ".idx";
+
+    //jar entries read by one task
+    private static final int JAR_ENTRY_GRAIN = 64;
+
+    private final List<Path> roots;
+
+    private final ForkJoinPool pool;
+
+    @Nullable
+    private final Path indexDir;
+
+    public ClassPathScanner(Collection<Path> roots) {
+        this(roots, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * @param roots    directories and jar files
+     * @param pool     pool the scan tasks run on
+     * @param indexDir where jar indexes are kept, null for no index
+     */
+    public ClassPathScanner(Collection<Path> roots, ForkJoinPool pool, @Nullable Path indexDir) {
+        Assert.notNull(roots, "roots must not be null");
+        Assert.notNull(pool, "pool must not be null");
+        this.roots = new ArrayList<>(roots);
+        this.pool = pool;
+        this.indexDir = indexDir;
+    }
+
+    //roots from the java.class.path system property
+    public static ClassPathScanner forClassPath(@Nullable Path indexDir) {
+        List<Path> roots = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                roots.add(Paths.get(entry));
+            }
+        }
+        return new ClassPathScanner(roots, ForkJoinPool.commonPool(), indexDir);
+    }
+
+    /**
+     * scan all roots in parallel, the returned stream is fed while the scan is still running
+     * <p>
+     * a failure of the scan is thrown(as {@link UncheckedIOException}) once the headers read before it are consumed,
+     * closing the stream early stops the tasks that haven't started yet
+     *
+     * @param packagePattern e.g. "com.luo.**"
+     * @return the headers of all matching class files, in no particular order
+     */
+    public Stream<ClassFileHeader> scan(String packagePattern) {
+        PackageMatcher matcher = new PackageMatcher(packagePattern);
+        ScanResults results = new ScanResults();
+        List<RecursiveAction> tasks = new ArrayList<>(this.roots.size());
+        for (Path root : this.roots) {
+            if (Files.isDirectory(root)) {
+                Path start = root.resolve(matcher.baseDir);
+                if (Files.isDirectory(start)) {
+                    tasks.add(new DirectoryTask(start, matcher, results));
+                }
+            } else if (Files.isRegularFile(root) && root.toString().endsWith(JAR_FILE_EXTENSION)) {
+                tasks.add(new JarTask(root, matcher, results));
+            }
+        }
+        ForkJoinTask<?> scan = this.pool.submit(new ScanTask(tasks, results));
+        return StreamSupport.stream(results, false).onClose(() -> {
+            results.close();
+            scan.cancel(false);
+        });
+    }
+
+    //names of candidate classes: concrete, non-inner classes of the pattern
+    public Stream<String> scanCandidateClassNames(String packagePattern) {
+        return scan(packagePattern)
+                .filter(ClassFileHeader::isConcrete)
+                .map(ClassFileHeader::getClassName)
+                .filter(name -> name.indexOf('$') == -1);
+    }
+
+
+    //---------- directories
+
+    private static final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        private final PackageMatcher matcher;
+
+        private final ScanResults results;
+
+        DirectoryTask(Path dir, PackageMatcher matcher, ScanResults results) {
+            this.dir = dir;
+            this.matcher = matcher;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.results.isClosed()) {
+                return;
+            }
+            List<DirectoryTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(this.dir)) {
+                for (Path child : children) {
+                    if (Files.isDirectory(child)) {
+                        if (this.matcher.recursive) {
+                            subTasks.add(new DirectoryTask(child, this.matcher, this.results));
+                        }
+                    } else if (isClassFile(child.getFileName().toString())) {
+                        try (InputStream in = new BufferedInputStream(Files.newInputStream(child))) {
+                            this.results.add(ClassFileHeader.read(in));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to scan " + this.dir, e);
+            }
+            invokeAll(subTasks);
+        }
+    }
+
+
+    //---------- jar files
+
+    private final class JarTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path jar;
+
+        private final PackageMatcher matcher;
+
+        private final ScanResults results;
+
+        JarTask(Path jar, PackageMatcher matcher, ScanResults results) {
+            this.jar = jar;
+            this.matcher = matcher;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.results.isClosed()) {
+                return;
+            }
+            try {
+                if (indexDir == null) {
+                    scanJar(this.matcher, this.results::add);
+                    return;
+                }
+                //-1 index hit: the jar has not changed since it was indexed
+                Path index = indexDir.resolve(indexName(this.jar));
+                if (Files.isRegularFile(index)) {
+                    for (ClassFileHeader header : readIndex(index)) {
+                        if (this.matcher.matches(ClassUtils.convertClassNameToResourcePath(header.getClassName()))) {
+                            this.results.add(header);
+                        }
+                    }
+                    return;
+                }
+                //-2 index miss: read every class once, keep all of them in the index
+                Queue<ClassFileHeader> all = new ConcurrentLinkedQueue<>();
+                scanJar(null, all::add);
+                writeIndex(index, all);
+                for (ClassFileHeader header : all) {
+                    if (this.matcher.matches(ClassUtils.convertClassNameToResourcePath(header.getClassName()))) {
+                        this.results.add(header);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to scan " + this.jar, e);
+            }
+        }
+
+        //matcher null: all class files
+        private void scanJar(@Nullable PackageMatcher matcher, Consumer<ClassFileHeader> out) throws IOException {
+            try (ZipFile zip = new ZipFile(this.jar.toFile())) {
+                List<ZipEntry> entries = new ArrayList<>();
+                Enumeration<? extends ZipEntry> e = zip.entries();
+                while (e.hasMoreElements()) {
+                    ZipEntry entry = e.nextElement();
+                    String name = entry.getName();
+                    if (!entry.isDirectory() && isClassFile(name) && !name.startsWith("META-INF/")
+                            && (matcher == null || matcher.matches(name))) {
+                        entries.add(entry);
+                    }
+                }
+                //ZipFile is safe for concurrent reads: inflate the entries in slices
+                List<JarSliceTask> slices = new ArrayList<>();
+                for (int from = 0; from < entries.size(); from += JAR_ENTRY_GRAIN) {
+                    slices.add(new JarSliceTask(zip, entries.subList(from, Math.min(from + JAR_ENTRY_GRAIN, entries.size())), out));
+                }
+                invokeAll(slices);
+            }
+        }
+    }
+
+    private static final class JarSliceTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ZipFile zip;
+
+        private final List<ZipEntry> entries;
+
+        private final Consumer<ClassFileHeader> out;
+
+        JarSliceTask(ZipFile zip, List<ZipEntry> entries, Consumer<ClassFileHeader> out) {
+            this.zip = zip;
+            this.entries = entries;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            for (ZipEntry entry : this.entries) {
+                try (InputStream in = new BufferedInputStream(this.zip.getInputStream(entry))) {
+                    this.out.accept(ClassFileHeader.read(in));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("failed to read " + entry.getName() + " of " + this.zip.getName(), e);
+                }
+            }
+        }
+    }
+
+
+    //---------- results
+
+    /**
+     * the root task: runs all root tasks, then marks the end of the results
+     */
+    private static final class ScanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<RecursiveAction> tasks;
+
+        private final ScanResults results;
+
+        ScanTask(List<RecursiveAction> tasks, ScanResults results) {
+            this.tasks = tasks;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                invokeAll(this.tasks);
+            } catch (RuntimeException | Error e) {
+                this.results.fail(e);
+            } finally {
+                this.results.end();
+            }
+        }
+    }
+
+    /**
+     * headers handed from the scan tasks to the stream consumer
+     * the consumer blocks(as a {@link ForkJoinPool.ManagedBlocker}, so a pool thread consuming can't starve the scan)
+     * until the next header or the end marker arrives
+     */
+    private static final class ScanResults extends Spliterators.AbstractSpliterator<ClassFileHeader>
+            implements ForkJoinPool.ManagedBlocker {
+
+        private static final ClassFileHeader END = new ClassFileHeader("", null, 0);
+
+        private final BlockingQueue<ClassFileHeader> queue = new LinkedBlockingQueue<>();
+
+        @Nullable
+        private volatile Throwable failure;
+
+        private volatile boolean closed;
+
+        //consumer side only
+        @Nullable
+        private ClassFileHeader next;
+
+        private boolean done;
+
+        ScanResults() {
+            super(Long.MAX_VALUE, NONNULL);
+        }
+
+        void add(ClassFileHeader header) {
+            if (!this.closed) {
+                this.queue.add(header);
+            }
+        }
+
+        void fail(Throwable e) {
+            this.failure = e;
+        }
+
+        void end() {
+            this.queue.add(END);
+        }
+
+        void close() {
+            this.closed = true;
+            this.queue.clear();
+        }
+
+        boolean isClosed() {
+            return this.closed;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ClassFileHeader> action) {
+            if (this.done) {
+                return false;
+            }
+            try {
+                ForkJoinPool.managedBlock(this);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for scan results", e);
+            }
+            ClassFileHeader header = this.next;
+            this.next = null;
+            if (header == END) {
+                this.done = true;
+                Throwable e = this.failure;
+                if (e instanceof RuntimeException) {
+                    throw (RuntimeException) e;
+                }
+                if (e != null) {
+                    throw (Error) e;
+                }
+                return false;
+            }
+            action.accept(header);
+            return true;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (this.next == null) {
+                this.next = this.queue.take();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return this.next != null || (this.next = this.queue.poll()) != null;
+        }
+    }
+
+
+    //---------- index
+
+    //the index is keyed by the jar's path, size and last-modified time, the jar is never read to compute the key
+    private static String indexName(Path jar) throws IOException {
+        return jar.getFileName() + "-" + Integer.toHexString(jar.toAbsolutePath().normalize().toString().hashCode())
+                + "-" + Long.toHexString(Files.size(jar))
+                + "-" + Long.toHexString(Files.getLastModifiedTime(jar).toMillis()) + INDEX_FILE_SUFFIX;
+    }
+
+    //one line per class: access flags, class name, super class name(empty if none)
+    private static List<ClassFileHeader> readIndex(Path index) throws IOException {
+        List<ClassFileHeader> headers = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 3) {
+                    continue;
+                }
+                headers.add(new ClassFileHeader(parts[1], parts[2].isEmpty() ? null : parts[2],
+                        Integer.parseInt(parts[0], 16)));
+            }
+        }
+        return headers;
+    }
+
+    private static void writeIndex(Path index, Collection<ClassFileHeader> headers) throws IOException {
+        Files.createDirectories(index.getParent());
+        //write aside, then move: a concurrent reader never sees half an index
+        Path tmp = Files.createTempFile(index.getParent(), index.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (ClassFileHeader header : headers) {
+                writer.write(Integer.toHexString(header.getAccessFlags()));
+                writer.write('\t');
+                writer.write(header.getClassName());
+                writer.write('\t');
+                writer.write(header.getSuperClassName() != null ? header.getSuperClassName() : "");
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private static boolean isClassFile(String name) {
+        return name.endsWith(CLASS_FILE_SUFFIX) && !name.endsWith("module-info.class")
+                && !name.endsWith("package-info.class");
+    }
+
+    /**
+     * package pattern matched against resource paths: "com/luo/Foo.class"
+     */
+    private static final class PackageMatcher {
+
+        //"com/luo/"
+        private final String basePath;
+
+        //"com/luo", relative to a directory root
+        private final String baseDir;
+
+        private final boolean recursive;
+
+        PackageMatcher(String packagePattern) {
+            Assert.notNull(packagePattern, "package pattern must not be null");
+            String pkg = packagePattern;
+            boolean recursive = false;
+            if (pkg.endsWith(".**")) {
+                pkg = pkg.substring(0, pkg.length() - 3);
+                recursive = true;
+            } else if (pkg.endsWith(".*")) {
+                pkg = pkg.substring(0, pkg.length() - 2);
+            }
+            this.baseDir = ClassUtils.convertClassNameToResourcePath(pkg);
+            this.basePath = (this.baseDir.isEmpty() ? "" : this.baseDir + "/");
+            this.recursive = recursive;
+        }
+
+        boolean matches(String resourcePath) {
+            if (!resourcePath.startsWith(this.basePath)) {
+                return false;
+            }
+            return this.recursive || resourcePath.indexOf('/', this.basePath.length()) == -1;
+        }
+    }
+}
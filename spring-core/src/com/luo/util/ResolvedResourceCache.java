@@ -0,0 +1,447 @@
+package com.luo.util;
+
+import com.luo.lang.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * cache of resolved resource locations, keyed by the location string
+ * it keeps existence, last-modified time and the resolved url/path,
+ * so the location is parsed and the file system or jar is hit only once
+ * entries are dropped by a {@link WatchService} when the file(or the jar) changes
+ * a location whose dir can't be watched(e.g. doesn't exist yet) is resolved again on every call instead
+ * jar entries are read through a zip {@link FileSystem} that stays open per jar
+ *
+ * @see ResourceUtils#resolve(String)
+ */
+public class ResolvedResourceCache implements AutoCloseable {
+
+    private static final String JAR_URL_SEPARATOR = "!/";
+
+    private static final String URL_PROTOCOL_FILE = "file";
+
+    //location -> resolved resource
+    private final Map<String, ResolvedResource> cache = new ConcurrentHashMap<>(256);
+
+    //watched dir -> locations whose file(or jar) lives in that dir
+    private final Map<Path, WatchedDir> locationsByDir = new ConcurrentHashMap<>(64);
+
+    //jar file -> opened zip file system
+    private final Map<Path, FileSystem> jarFileSystems = new ConcurrentHashMap<>(16);
+
+    @Nullable
+    private final WatchService watchService;
+
+    @Nullable
+    private final Thread watchThread;
+
+    private volatile boolean closed;
+
+    public ResolvedResourceCache() {
+        this(true);
+    }
+
+    /**
+     * @param watch whether to start a daemon thread that invalidates entries on file changes
+     */
+    public ResolvedResourceCache(boolean watch) {
+        WatchService ws = null;
+        if (watch) {
+            try {
+                ws = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                //no watch support: entries live until invalidate() is called
+                ws = null;
+            }
+        }
+        this.watchService = ws;
+        if (ws != null) {
+            this.watchThread = new Thread(this::watchLoop, "resolved-resource-watcher");
+            this.watchThread.setDaemon(true);
+            this.watchThread.start();
+        } else {
+            this.watchThread = null;
+        }
+    }
+
+    /**
+     * resolve the location once, later calls are served from the cache
+     *
+     * @param resourceLocation classpath:, file:, jar: or plain file path
+     * @return the resolved resource, never null
+     * @throws FileNotFoundException if the location can't be resolved to a url
+     */
+    public ResolvedResource resolve(String resourceLocation) throws FileNotFoundException {
+        Assert.notNull(resourceLocation, "resource location must not be null");
+        if (this.closed) {
+            throw new IllegalStateException("ResolvedResourceCache has been closed");
+        }
+        //-1 warm path: no parsing, no io
+        ResolvedResource resource = this.cache.get(resourceLocation);
+        if (resource != null) {
+            return resource;
+        }
+        //-2 cold path: resolve and remember
+        resource = doResolve(resourceLocation);
+        Path watched = resource.getWatchedFile();
+        if (watched == null || this.watchService == null) {
+            ResolvedResource existing = this.cache.putIfAbsent(resourceLocation, resource);
+            return (existing != null ? existing : resource);
+        }
+        WatchedDir dir = watch(watched, resourceLocation);
+        if (dir == null) {
+            //no watch on its dir(e.g. the dir doesn't exist yet): don't cache, the next call retries
+            return resource;
+        }
+        //-3 the first read happened before the dir was watched, a change in between was never reported:
+        //read again now that it is, and only keep the entry if no event of the dir came in meanwhile
+        long generation = dir.generation.get();
+        resource = doResolve(resourceLocation);
+        if (!watched.equals(resource.getWatchedFile())) {
+            return resource;
+        }
+        ResolvedResource existing = this.cache.putIfAbsent(resourceLocation, resource);
+        if (existing != null) {
+            return existing;
+        }
+        if (dir.generation.get() != generation || this.locationsByDir.get(dir.path) != dir) {
+            //changed while resolving, or the dir went away: the event may have missed this entry
+            this.cache.remove(resourceLocation, resource);
+        }
+        return resource;
+    }
+
+    //drop one location
+    public void invalidate(String resourceLocation) {
+        this.cache.remove(resourceLocation);
+    }
+
+    //drop everything, keep the jar file systems open
+    public void invalidateAll() {
+        this.cache.clear();
+    }
+
+    public int size() {
+        return this.cache.size();
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.cache.clear();
+        if (this.watchService != null) {
+            try {
+                this.watchService.close();
+            } catch (IOException e) {
+                //ignore
+            }
+        }
+        for (Path jar : this.jarFileSystems.keySet()) {
+            closeJarFileSystem(jar);
+        }
+    }
+
+
+    private ResolvedResource doResolve(String resourceLocation) throws FileNotFoundException {
+        URL url = ResourceUtils.getURL(resourceLocation);
+        //-1 plain file in the file system
+        if (URL_PROTOCOL_FILE.equals(url.getProtocol())) {
+            Path path = toPath(url);
+            return ResolvedResource.of(resourceLocation, url, path, path);
+        }
+        //-2 entry inside a jar: jar:file:/a/b.jar!/c/d.class
+        if (ResourceUtils.isJarURL(url)) {
+            String urlFile = url.getPath();
+            int separatorIndex = urlFile.indexOf(JAR_URL_SEPARATOR);
+            if (separatorIndex != -1) {
+                String jarFile = urlFile.substring(0, separatorIndex);
+                String entryName = decodeEntryName(urlFile.substring(separatorIndex + JAR_URL_SEPARATOR.length()));
+                try {
+                    URL jarUrl = new URL(jarFile);
+                    if (URL_PROTOCOL_FILE.equals(jarUrl.getProtocol())) {
+                        Path jarPath = toPath(jarUrl);
+                        FileSystem fs = getJarFileSystem(jarPath);
+                        if (fs != null) {
+                            return ResolvedResource.of(resourceLocation, url, fs.getPath(entryName), jarPath);
+                        }
+                    }
+                } catch (IOException e) {
+                    //fall through: keep the url only
+                }
+            }
+        }
+        //-3 anything else (http, vfs...): only the url is known
+        return new ResolvedResource(resourceLocation, url, null, null, true, 0L);
+    }
+
+    private static Path toPath(URL url) {
+        try {
+            return Paths.get(ResourceUtils.toURI(url));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return Paths.get(url.getFile());
+        }
+    }
+
+    /**
+     * the entry name in a jar url is url-encoded(%20, %C3%A9...), the zip file system wants it decoded
+     * decode it the way {@link ResourceUtils#toURI(String)} does, the leading "/" keeps a ':' from being read as a scheme
+     *
+     * @return "/" + decoded entry name
+     */
+    private static String decodeEntryName(String entryName) {
+        String path = "/" + entryName;
+        try {
+            String decoded = ResourceUtils.toURI(path).getPath();
+            return (decoded != null ? decoded : path);
+        } catch (URISyntaxException e) {
+            //not a valid uri path(e.g. a raw '%'): take it as it is
+            return path;
+        }
+    }
+
+    @Nullable
+    private FileSystem getJarFileSystem(Path jarPath) {
+        FileSystem fs = this.jarFileSystems.get(jarPath);
+        if (fs != null && fs.isOpen()) {
+            return fs;
+        }
+        if (!Files.isRegularFile(jarPath)) {
+            return null;
+        }
+        try {
+            FileSystem created = FileSystems.newFileSystem(jarPath, (ClassLoader) null);
+            FileSystem existing = this.jarFileSystems.putIfAbsent(jarPath, created);
+            if (existing != null) {
+                created.close();
+                return existing;
+            }
+            return created;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void closeJarFileSystem(Path jarPath) {
+        FileSystem fs = this.jarFileSystems.remove(jarPath);
+        if (fs != null) {
+            try {
+                fs.close();
+            } catch (IOException e) {
+                //ignore
+            }
+        }
+    }
+
+    /**
+     * @return the watched dir of the file, null if it can't be watched,
+     * the resolved entry must not be cached then, nothing would ever drop it
+     */
+    @Nullable
+    private WatchedDir watch(Path file, String resourceLocation) {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir == null) {
+            return null;
+        }
+        //register inside computeIfAbsent: a dir is only published once it is really watched
+        WatchedDir watched = this.locationsByDir.computeIfAbsent(dir, this::register);
+        if (watched != null) {
+            watched.locations.add(resourceLocation);
+        }
+        return watched;
+    }
+
+    @Nullable
+    private WatchedDir register(Path dir) {
+        try {
+            dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return new WatchedDir(dir);
+        } catch (IOException | ClosedWatchServiceException e) {
+            //dir missing or can't be watched: no mapping, retried on the next resolve
+            return null;
+        }
+    }
+
+    private void watchLoop() {
+        WatchService ws = this.watchService;
+        while (!this.closed) {
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    invalidateDir(this.locationsByDir.get(dir));
+                    continue;
+                }
+                invalidateFile(dir.resolve((Path) event.context()));
+            }
+            if (!key.reset()) {
+                //unpublish first: a resolve that still holds it sees the dir gone and drops its entry
+                invalidateDir(this.locationsByDir.remove(dir));
+            }
+        }
+    }
+
+    //locations stay in the dir once added: removing one could race with a resolve that just added it again
+    private void invalidateFile(Path changed) {
+        WatchedDir dir = this.locationsByDir.get(changed.getParent());
+        if (dir == null) {
+            return;
+        }
+        //bump before dropping: a resolve in progress either sees the bump or has published already
+        dir.generation.incrementAndGet();
+        if (this.jarFileSystems.containsKey(changed)) {
+            closeJarFileSystem(changed);
+        }
+        for (String location : dir.locations) {
+            ResolvedResource resource = this.cache.get(location);
+            if (resource != null && changed.equals(resource.getWatchedFile())) {
+                this.cache.remove(location, resource);
+            }
+        }
+    }
+
+    private void invalidateDir(@Nullable WatchedDir dir) {
+        if (dir == null) {
+            return;
+        }
+        dir.generation.incrementAndGet();
+        for (String location : dir.locations) {
+            ResolvedResource resource = this.cache.remove(location);
+            if (resource != null && resource.getWatchedFile() != null
+                    && this.jarFileSystems.containsKey(resource.getWatchedFile())) {
+                closeJarFileSystem(resource.getWatchedFile());
+            }
+        }
+    }
+
+    /**
+     * a watched dir: the locations living in it and a counter bumped on every event of it
+     */
+    private static final class WatchedDir {
+
+        final Path path;
+
+        final Set<String> locations = ConcurrentHashMap.newKeySet();
+
+        final AtomicLong generation = new AtomicLong();
+
+        WatchedDir(Path path) {
+            this.path = path;
+        }
+    }
+
+
+    /**
+     * immutable snapshot of a resolved location
+     */
+    public static final class ResolvedResource {
+
+        private final String location;
+
+        private final URL url;
+
+        //file system path, or the entry path inside a jar file system
+        @Nullable
+        private final Path path;
+
+        //the file whose change invalidates this entry: the file itself or its jar
+        @Nullable
+        private final Path watchedFile;
+
+        private final boolean exists;
+
+        private final long lastModified;
+
+        ResolvedResource(String location, URL url, @Nullable Path path, @Nullable Path watchedFile,
+                         boolean exists, long lastModified) {
+            this.location = location;
+            this.url = url;
+            this.path = path;
+            this.watchedFile = watchedFile;
+            this.exists = exists;
+            this.lastModified = lastModified;
+        }
+
+        static ResolvedResource of(String location, URL url, Path path, Path watchedFile) {
+            boolean exists = Files.exists(path);
+            long lastModified = 0L;
+            if (exists) {
+                try {
+                    lastModified = Files.getLastModifiedTime(path).toMillis();
+                } catch (IOException e) {
+                    //keep 0
+                }
+            }
+            return new ResolvedResource(location, url, path, watchedFile, exists, lastModified);
+        }
+
+        public String getLocation() {
+            return this.location;
+        }
+
+        public URL getURL() {
+            return this.url;
+        }
+
+        public URI getURI() throws URISyntaxException {
+            return ResourceUtils.toURI(this.url);
+        }
+
+        /**
+         * @return the path in the default file system, or the entry path inside the jar file system,
+         * null for other protocols
+         */
+        @Nullable
+        public Path getPath() {
+            return this.path;
+        }
+
+        @Nullable
+        Path getWatchedFile() {
+            return this.watchedFile;
+        }
+
+        public boolean isJarEntry() {
+            return this.path != null && this.path.getFileSystem() != FileSystems.getDefault();
+        }
+
+        public boolean exists() {
+            return this.exists;
+        }
+
+        public long lastModified() {
+            return this.lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return "ResolvedResource[" + this.location + " -> " + this.url + ", exists=" + this.exists + "]";
+        }
+    }
+}
@@ -38,6 +38,10 @@ public abstract class ResourceUtils {
 
     private static final String WAR_URL_SEPARATOR = "*/";
 
+    //shared cache of resolved locations, created on first use
+    @Nullable
+    private static volatile ResolvedResourceCache resolvedResourceCache;
+
 
     //---
     public static boolean isUrl(@Nullable String resourceLocation) {
@@ -60,6 +64,33 @@ public abstract class ResourceUtils {
     }
 
 
+    /**
+     * resolve the location through the shared {@link ResolvedResourceCache}:
+     * the location is parsed and checked in the file system(or jar) only once,
+     * until the underlying file changes
+     *
+     * @param resourceLocation resource location
+     * @return the cached resolved resource
+     * @throws FileNotFoundException if the location can't be resolved to a url
+     */
+    public static ResolvedResourceCache.ResolvedResource resolve(String resourceLocation) throws FileNotFoundException {
+        return getResolvedResourceCache().resolve(resourceLocation);
+    }
+
+    public static ResolvedResourceCache getResolvedResourceCache() {
+        ResolvedResourceCache cache = resolvedResourceCache;
+        if (cache == null) {
+            synchronized (ResourceUtils.class) {
+                cache = resolvedResourceCache;
+                if (cache == null) {
+                    cache = new ResolvedResourceCache();
+                    resolvedResourceCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
     public static URL getURL(String resourceLocation) throws FileNotFoundException {
         //-1 prefix
         Assert.notNull(resourceLocation, "resource location must not be null");
@@ -0,0 +1,170 @@
+package test.com.luo.spring.core;
+
+import com.luo.util.ResolvedResourceCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ResolvedResourceCache Tester.
+ */
+public class ResolvedResourceCacheTest {
+
+    private Path dir;
+
+    private Path jar;
+
+    private ResolvedResourceCache cache;
+
+    @Before
+    public void before() throws Exception {
+        //space in the jar path, space and non-ascii in the entry name
+        dir = Files.createTempDirectory("resolved cache");
+        jar = dir.resolve("lib x.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("conf dir/é.txt"));
+            out.write("hello".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        Files.write(dir.resolve("plain file.txt"), "hi".getBytes(StandardCharsets.UTF_8));
+        cache = new ResolvedResourceCache(false);
+    }
+
+    @After
+    public void after() throws Exception {
+        cache.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Method: resolve(String resourceLocation) for a file in the file system
+     */
+    @Test
+    public void testResolveFile() throws Exception {
+        String location = dir.resolve("plain file.txt").toString();
+        ResolvedResourceCache.ResolvedResource resource = cache.resolve(location);
+        assertTrue(resource.exists());
+        assertFalse(resource.isJarEntry());
+        assertEquals(dir.resolve("plain file.txt"), resource.getPath());
+
+        assertFalse(cache.resolve(dir.resolve("missing.txt").toString()).exists());
+    }
+
+    /**
+     * Method: resolve(String resourceLocation) for an encoded jar entry
+     */
+    @Test
+    public void testResolveEncodedJarEntry() throws Exception {
+        String location = "jar:" + jar.toUri() + "!/conf%20dir/%C3%A9.txt";
+        ResolvedResourceCache.ResolvedResource resource = cache.resolve(location);
+        assertTrue(resource.isJarEntry());
+        assertTrue(resource.exists());
+        assertEquals("/conf dir/é.txt", resource.getPath().toString());
+        assertEquals("hello", new String(Files.readAllBytes(resource.getPath()), StandardCharsets.UTF_8));
+
+        //unencoded space, as written by hand
+        assertTrue(cache.resolve("jar:" + jar.toUri() + "!/conf dir/é.txt").exists());
+        assertFalse(cache.resolve("jar:" + jar.toUri() + "!/conf%20dir/missing.txt").exists());
+    }
+
+    /**
+     * Method: resolve(String resourceLocation) warm path, invalidate(String resourceLocation)
+     */
+    @Test
+    public void testCachedUntilInvalidated() throws Exception {
+        String location = "jar:" + jar.toUri() + "!/conf%20dir/%C3%A9.txt";
+        ResolvedResourceCache.ResolvedResource first = cache.resolve(location);
+        assertSame(first, cache.resolve(location));
+        assertEquals(2, sizeAfterResolving(dir.resolve("plain file.txt").toString()));
+
+        cache.invalidate(location);
+        assertNotSame(first, cache.resolve(location));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingClassPathResource() throws Exception {
+        cache.resolve("classpath:no/such/resource.txt");
+    }
+
+    /**
+     * Method: resolve(String resourceLocation) with the watcher on: create, modify, delete
+     */
+    @Test
+    public void testWatcherInvalidatesOnChange() throws Exception {
+        try (ResolvedResourceCache watching = new ResolvedResourceCache(true)) {
+            Path file = dir.resolve("watched.txt");
+            String location = file.toString();
+            assertFalse(watching.resolve(location).exists());
+
+            Files.write(file, "v1".getBytes(StandardCharsets.UTF_8));
+            assertTrue(awaitResolved(watching, location, r -> r.exists()));
+
+            long modified = Files.getLastModifiedTime(file).toMillis() + TimeUnit.HOURS.toMillis(1);
+            Files.write(file, "v2".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+            assertTrue(awaitResolved(watching, location, r -> r.lastModified() == modified));
+
+            Files.delete(file);
+            assertTrue(awaitResolved(watching, location, r -> !r.exists()));
+        }
+    }
+
+    /**
+     * Method: resolve(String resourceLocation) with the watcher on, for a dir that doesn't exist yet
+     */
+    @Test
+    public void testWatcherRetriesMissingDir() throws Exception {
+        try (ResolvedResourceCache watching = new ResolvedResourceCache(true)) {
+            Path file = dir.resolve("later").resolve("file.txt");
+            String location = file.toString();
+            assertFalse(watching.resolve(location).exists());
+            assertEquals(0, watching.size());
+
+            Files.createDirectories(file.getParent());
+            Files.write(file, "hi".getBytes(StandardCharsets.UTF_8));
+            assertTrue(watching.resolve(location).exists());
+            assertEquals(1, watching.size());
+        }
+    }
+
+    //the watcher thread drops entries asynchronously
+    private static boolean awaitResolved(ResolvedResourceCache cache, String location,
+                                         Predicate<ResolvedResourceCache.ResolvedResource> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() - deadline < 0) {
+            if (condition.test(cache.resolve(location))) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    private int sizeAfterResolving(String location) throws Exception {
+        cache.resolve(location);
+        return cache.size();
+    }
+}